@@ -1,6 +1,7 @@
 plugins {
     java
     id("io.papermc.paperweight.userdev") version "2.0.0-beta.19"
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 group = "com.xpoptimizer"
@@ -23,6 +24,54 @@ dependencies {
     compileOnly("com.google.code.gson:gson:2.11.0")
 }
 
+// Benchmarks run outside a server, so they need the server API on their runtime classpath too
+configurations.named("jmhImplementation") {
+    extendsFrom(configurations.compileOnly.get())
+}
+
+dependencies {
+    testImplementation(platform("org.junit:junit-bom:5.13.4"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+// Unit tests also run outside a server
+configurations.named("testImplementation") {
+    extendsFrom(configurations.compileOnly.get())
+}
+
+tasks.test {
+    useJUnitPlatform()
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    profilers.add("gc")
+    resultFormat.set("JSON")
+}
+
+// Headless load simulator: the plugin in a MockBukkit server under generated or recorded orb storms.
+// MockBukkit brings its own server API, so the dev bundle stays off this classpath.
+val sim by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+dependencies {
+    "simImplementation"("org.mockbukkit.mockbukkit:mockbukkit-v1.21:4.101.0")
+}
+
+tasks.register<JavaExec>("simulate") {
+    description = "Runs the orb-storm load simulator; pass options with --args=\"--help\""
+    classpath = sim.runtimeClasspath
+    mainClass.set("com.xpoptimizer.sim.OrbStormSimulator")
+    // A fixed heap keeps GC figures comparable between runs
+    jvmArgs("-Xms2g", "-Xmx2g")
+}
+
 tasks {
     compileJava {
         options.encoding = "UTF-8"
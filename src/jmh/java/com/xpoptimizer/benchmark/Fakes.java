@@ -0,0 +1,68 @@
+package com.xpoptimizer.benchmark;
+
+import org.bukkit.GameMode;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.UUID;
+
+/**
+ * Minimal {@link Player} and {@link World} stand-ins built from dynamic proxies, so benchmarks can
+ * drive plugin code without a running server. Only the getters the plugin reads are answered;
+ * everything else returns a zero value.
+ */
+final class Fakes {
+
+    private Fakes() {}
+
+    static World world(String name) {
+        UUID id = UUID.nameUUIDFromBytes(name.getBytes());
+        return proxy(World.class, (self, method, args) -> switch (method.getName()) {
+            case "getName" -> name;
+            case "getUID" -> id;
+            case "hashCode" -> System.identityHashCode(self);
+            case "equals" -> self == args[0];
+            case "toString" -> "FakeWorld[" + name + "]";
+            default -> zero(method.getReturnType());
+        });
+    }
+
+    static Player player(int entityId, World world, double x, double y, double z, GameMode mode) {
+        UUID id = new UUID(0x5850L, entityId);
+        String name = "player" + entityId;
+        return proxy(Player.class, (self, method, args) -> switch (method.getName()) {
+            case "getEntityId" -> entityId;
+            case "getUniqueId" -> id;
+            case "getName" -> name;
+            case "getWorld" -> world;
+            case "getX" -> x;
+            case "getY" -> y;
+            case "getZ" -> z;
+            case "getGameMode" -> mode;
+            case "isOnline", "isValid" -> true;
+            case "hashCode" -> entityId;
+            case "equals" -> self == args[0];
+            case "toString" -> "FakePlayer[" + name + "]";
+            default -> zero(method.getReturnType());
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(Fakes.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object zero(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) return null;
+        if (type == boolean.class) return false;
+        if (type == double.class) return 0.0;
+        if (type == float.class) return 0f;
+        if (type == long.class) return 0L;
+        if (type == char.class) return '\0';
+        if (type == byte.class) return (byte) 0;
+        if (type == short.class) return (short) 0;
+        return 0;
+    }
+}
@@ -0,0 +1,60 @@
+package com.xpoptimizer.benchmark;
+
+import com.xpoptimizer.stats.XPLeaderboard;
+import com.xpoptimizer.stats.XPStatsStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code /xpstats top 10}: {@code fullSort} is the old stream-and-sort over every entry,
+ * {@code leaderboard} reads the incrementally maintained index, and {@code rankOf} is the
+ * "what rank am I" query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LeaderboardTopBenchmark {
+
+    @Param({"10000", "1000000"})
+    int entries;
+
+    private XPStatsStore store;
+    private XPLeaderboard board;
+    private UUID[] ids;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        board = new XPLeaderboard();
+        store = new XPStatsStore(board);
+        SplittableRandom random = new SplittableRandom(5);
+        ids = new UUID[entries];
+        for (int i = 0; i < entries; i++) {
+            ids[i] = new UUID(random.nextLong(), random.nextLong());
+            store.add(ids[i], 1 + random.nextInt(1_000_000));
+        }
+    }
+
+    @Benchmark
+    public List<Map.Entry<UUID, Long>> fullSort() {
+        List<Map.Entry<UUID, Long>> all = new ArrayList<>(entries);
+        store.forEach((msb, lsb, total) -> all.add(Map.entry(new UUID(msb, lsb), total)));
+        return all.stream()
+                .sorted(Map.Entry.<UUID, Long>comparingByValue().reversed())
+                .limit(10)
+                .toList();
+    }
+
+    @Benchmark
+    public List<XPLeaderboard.Ranked> leaderboard() {
+        return board.top(10);
+    }
+
+    @Benchmark
+    public int rankOf() {
+        UUID id = ids[cursor++ % entries];
+        return board.rankOf(id, store.get(id));
+    }
+}
@@ -0,0 +1,100 @@
+package com.xpoptimizer.benchmark;
+
+import com.xpoptimizer.XPConfig;
+import com.xpoptimizer.message.MessageArgs;
+import com.xpoptimizer.message.MessageTemplate;
+import com.xpoptimizer.message.Placeholder;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Message rendering with the default messages. The {@code legacy*} benchmarks are the previous
+ * per-call path (varargs map, token scan, {@code %,d}, colour pass), kept here as the baseline;
+ * the others go through the compiled {@link MessageTemplate}s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessageFormatBenchmark {
+
+    private static final String TOP_ENTRY = "&6%rank%. &f%player% &7- &a%xp%";
+    private static final String NO_PERMISSION = "&c[XPOptimizer] You do not have permission.";
+
+    private MessageTemplate topEntry;
+    private MessageTemplate noPermission;
+    private long xp = 1_234_567L;
+
+    @Setup
+    public void setup() {
+        XPConfig cfg = XPConfig.fromBukkitConfig(new YamlConfiguration(), Logger.getLogger("benchmark"));
+        topEntry = cfg.message("top-entry");
+        noPermission = cfg.message("no-permission");
+    }
+
+    @Benchmark
+    public String constant() {
+        return noPermission.render();
+    }
+
+    @Benchmark
+    public String topEntry() {
+        return topEntry.render(MessageArgs.get()
+                .number(Placeholder.RANK, 3)
+                .text(Placeholder.PLAYER, "Notch")
+                .number(Placeholder.XP, xp));
+    }
+
+    @Benchmark
+    public String legacyConstant() {
+        return legacyFormat(NO_PERMISSION);
+    }
+
+    @Benchmark
+    public String legacyTopEntry() {
+        return legacyFormat(TOP_ENTRY,
+                "%rank%", "3",
+                "%player%", "Notch",
+                "%xp%", String.format("%,d", xp));
+    }
+
+    private static String legacyFormat(String msg, String... replacements) {
+        if (replacements.length >= 2) {
+            Map<String, String> replacementMap = new HashMap<>(replacements.length / 2 + 1, 1.0f);
+            for (int i = 0; i + 1 < replacements.length; i += 2) {
+                replacementMap.put(replacements[i], replacements[i + 1]);
+            }
+            StringBuilder sb = new StringBuilder(msg.length());
+            int len = msg.length();
+            int i = 0;
+            while (i < len) {
+                char c = msg.charAt(i);
+                if (c == '%') {
+                    int close = msg.indexOf('%', i + 1);
+                    if (close != -1) {
+                        String replacement = replacementMap.get(msg.substring(i, close + 1));
+                        if (replacement != null) {
+                            sb.append(replacement);
+                            i = close + 1;
+                            continue;
+                        }
+                    }
+                }
+                sb.append(c);
+                i++;
+            }
+            msg = sb.toString();
+        }
+        char[] chars = msg.toCharArray();
+        for (int i = 0; i < chars.length - 1; i++) {
+            if (chars[i] == '&' && "0123456789abcdefklmnorABCDEFKLMNOR".indexOf(chars[i + 1]) >= 0) {
+                chars[i] = '§';
+            }
+        }
+        return new String(chars);
+    }
+}
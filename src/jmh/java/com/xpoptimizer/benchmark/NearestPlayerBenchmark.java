@@ -0,0 +1,95 @@
+package com.xpoptimizer.benchmark;
+
+import com.xpoptimizer.spatial.PlayerSpatialIndex;
+import org.bukkit.GameMode;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nearest-player selection for one orb, as done in {@code XPOrbSpawnListener.onXPOrbSpawn}.
+ * <p>
+ * {@code entityScan} mirrors the old path: collect every player inside the range box into a new
+ * collection, then a second pass skipping spectators. It walks a flat player list where the server
+ * walks entity sections, so it understates the real scan. {@code index} is the cell index.
+ * A quarter of the players stand at the farm; the rest are spread over 1024x1024 blocks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NearestPlayerBenchmark {
+
+    private static final double RANGE = 16.0;
+    private static final double RANGE_SQ = RANGE * RANGE;
+    private static final int ORBS = 1024;
+
+    @Param({"10", "50", "200", "1000"})
+    int players;
+
+    private World world;
+    private PlayerSpatialIndex index;
+    private Player[] all;
+    private final double[] orbX = new double[ORBS];
+    private final double[] orbZ = new double[ORBS];
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(42);
+        world = Fakes.world("world");
+        index = new PlayerSpatialIndex();
+        all = new Player[players];
+        for (int i = 0; i < players; i++) {
+            boolean atFarm = i % 4 == 0;
+            double x = atFarm ? random.nextDouble(-8, 8) : random.nextDouble(-512, 512);
+            double z = atFarm ? random.nextDouble(-8, 8) : random.nextDouble(-512, 512);
+            GameMode mode = i % 20 == 19 ? GameMode.SPECTATOR : GameMode.SURVIVAL;
+            all[i] = Fakes.player(i + 1, world, x, 64, z, mode);
+            index.track(all[i]);
+        }
+        for (int i = 0; i < ORBS; i++) {
+            orbX[i] = random.nextDouble(-6, 6);
+            orbZ[i] = random.nextDouble(-6, 6);
+        }
+    }
+
+    @Benchmark
+    public Player index() {
+        int i = cursor++ & (ORBS - 1);
+        return index.nearest(world, orbX[i], 64, orbZ[i], RANGE, RANGE_SQ);
+    }
+
+    @Benchmark
+    public Player entityScan() {
+        int i = cursor++ & (ORBS - 1);
+        double ox = orbX[i], oy = 64, oz = orbZ[i];
+
+        List<Player> nearby = new ArrayList<>();
+        for (Player p : all) {
+            if (Math.abs(p.getX() - ox) <= RANGE && Math.abs(p.getY() - oy) <= RANGE && Math.abs(p.getZ() - oz) <= RANGE) {
+                nearby.add(p);
+            }
+        }
+        if (nearby.isEmpty()) return null;
+
+        Player closest = null;
+        double minDistSq = RANGE_SQ;
+        for (Player player : nearby) {
+            if (player.getGameMode() == GameMode.SPECTATOR) continue;
+            double dx = player.getX() - ox;
+            double dy = player.getY() - oy;
+            double dz = player.getZ() - oz;
+            double distSq = dx * dx + dy * dy + dz * dz;
+            if (distSq < minDistSq) {
+                minDistSq = distSq;
+                closest = player;
+            }
+        }
+        return closest;
+    }
+}
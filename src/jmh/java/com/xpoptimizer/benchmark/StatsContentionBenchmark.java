@@ -0,0 +1,55 @@
+package com.xpoptimizer.benchmark;
+
+import com.xpoptimizer.stats.XPLeaderboard;
+import com.xpoptimizer.stats.XPStatsStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code addXpStat} from four threads at once, the worst case on region-threaded servers.
+ * With {@code leaderboard} set, every add also records the change for the leaderboard, as in
+ * the plugin; repositioning happens later, on read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class StatsContentionBenchmark {
+
+    @Param({"1000", "100000"})
+    int players;
+
+    @Param({"false", "true"})
+    boolean leaderboard;
+
+    private XPStatsStore store;
+    private UUID[] ids;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private final SplittableRandom random = new SplittableRandom();
+
+        int next(int bound) {
+            return random.nextInt(bound);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        store = leaderboard ? new XPStatsStore(new XPLeaderboard()) : new XPStatsStore();
+        SplittableRandom random = new SplittableRandom(7);
+        ids = new UUID[players];
+        for (int i = 0; i < players; i++) {
+            ids[i] = new UUID(random.nextLong(), random.nextLong());
+            store.add(ids[i], random.nextInt(10_000));
+        }
+    }
+
+    @Benchmark
+    public long addXpStat(Cursor cursor) {
+        return store.add(ids[cursor.next(players)], 7);
+    }
+}
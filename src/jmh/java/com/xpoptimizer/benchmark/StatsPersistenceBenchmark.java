@@ -0,0 +1,101 @@
+package com.xpoptimizer.benchmark;
+
+import com.xpoptimizer.stats.StatsJournal;
+import com.xpoptimizer.stats.XPStatsStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * {@code saveStats} and {@code loadStats} against a real temp directory.
+ * <p>
+ * {@code AllDirty} is the first save after startup or a migration, with every entry changed.
+ * {@code OnePercent} is a typical auto-save. {@code Load} replays what a save left behind. Each
+ * sets up its files in a per-invocation setup, so only the measured save or load is timed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public abstract class StatsPersistenceBenchmark {
+
+    private static final Logger LOGGER = Logger.getLogger("benchmark");
+
+    @Param({"10000", "1000000"})
+    int entries;
+
+    UUID[] ids;
+    File dir;
+    XPStatsStore store;
+    StatsJournal journal;
+    final SplittableRandom random = new SplittableRandom(11);
+
+    @Setup(Level.Trial)
+    public void createIds() {
+        ids = new UUID[entries];
+        for (int i = 0; i < entries; i++) ids[i] = new UUID(random.nextLong(), random.nextLong());
+    }
+
+    @Setup(Level.Iteration)
+    public void fill() throws IOException {
+        dir = Files.createTempDirectory("xpoptimizer-bench").toFile();
+        store = new XPStatsStore();
+        journal = new StatsJournal(dir, LOGGER);
+        for (UUID id : ids) store.add(id, 1 + random.nextInt(100_000));
+    }
+
+    @TearDown(Level.Iteration)
+    public void cleanup() throws IOException {
+        try (Stream<Path> files = Files.walk(dir.toPath())) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    public static class AllDirty extends StatsPersistenceBenchmark {
+
+        @Benchmark
+        public boolean saveAllDirty() {
+            return journal.save(store);
+        }
+    }
+
+    public static class OnePercent extends StatsPersistenceBenchmark {
+
+        @Setup(Level.Invocation)
+        public void dirtyOnePercent() {
+            journal.save(store);
+            for (int i = 0; i < entries / 100; i++) store.add(ids[random.nextInt(entries)], 5);
+        }
+
+        @Benchmark
+        public boolean saveOnePercent() {
+            return journal.save(store);
+        }
+    }
+
+    public static class Load extends StatsPersistenceBenchmark {
+
+        @Setup(Level.Invocation)
+        public void persist() {
+            // fill() only fills memory; persist once so there is something to replay
+            journal.save(store);
+        }
+
+        @Benchmark
+        public XPStatsStore load() {
+            XPStatsStore loaded = new XPStatsStore();
+            new StatsJournal(dir, LOGGER).load(loaded);
+            return loaded;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.xpoptimizer;
+
+import org.bukkit.NamespacedKey;
+import org.bukkit.Particle;
+import org.bukkit.Registry;
+import org.bukkit.Sound;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.logging.Logger;
+
+/**
+ * Every setting that may differ between worlds, compiled once per world. The top-level keys form
+ * the default profile; a {@code worlds.<name>} section overrides any of them for that world, and
+ * the world filter decides {@link #allowed}.
+ */
+public record WorldProfile(
+        boolean allowed,
+        double range,
+        double rangeSq,
+        double multiplier,
+        boolean soundEnabled,
+        Sound sound,
+        float soundVolume,
+        float soundPitch,
+        boolean particlesEnabled,
+        Particle particle,
+        int particleCount
+) {
+
+    private static final String DEFAULT_SOUND = "entity.experience_orb.pickup";
+    private static final String DEFAULT_PARTICLE = "HAPPY_VILLAGER";
+
+    /** The built-in defaults every profile starts from. */
+    static final WorldProfile BUILT_IN = new WorldProfile(true, 16.0, 256.0, 1.0,
+            false, null, 0.5f, 1.0f, false, null, 5);
+
+    public boolean effectsEnabled() {
+        return soundEnabled || particlesEnabled;
+    }
+
+    WorldProfile withAllowed(boolean allowed) {
+        return allowed == this.allowed ? this : new WorldProfile(allowed, range, rangeSq, multiplier,
+                soundEnabled, sound, soundVolume, soundPitch, particlesEnabled, particle, particleCount);
+    }
+
+    /**
+     * Reads the keys present in {@code section} over {@code base}. {@code path} prefixes warnings
+     * ("" for the top level, {@code "worlds.<name>."} for an override).
+     */
+    static WorldProfile parse(ConfigurationSection section, WorldProfile base, String path, Logger logger) {
+        double range = section.getDouble("range", base.range);
+        if (range <= 0) {
+            logger.warning("Invalid " + path + "range '" + range + "', using " + base.range);
+            range = base.range;
+        }
+
+        double multiplier = section.getDouble("xp-multiplier", base.multiplier);
+        if (multiplier < 0) {
+            logger.warning("Invalid " + path + "xp-multiplier '" + multiplier + "', using " + base.multiplier);
+            multiplier = base.multiplier;
+        }
+
+        // Sound
+        boolean soundEnabled = section.getBoolean("sound.enabled", base.soundEnabled);
+        Sound sound = base.sound;
+        float soundVolume = base.soundVolume;
+        float soundPitch = base.soundPitch;
+        if (soundEnabled) {
+            if (sound == null || section.contains("sound.type")) {
+                String name = section.getString("sound.type", DEFAULT_SOUND);
+                sound = name != null ? Registry.SOUNDS.get(NamespacedKey.minecraft(name.toLowerCase())) : null;
+                if (sound == null) {
+                    logger.warning("Invalid " + path + "sound.type '" + name + "', disabling sound effects");
+                    soundEnabled = false;
+                }
+            }
+            soundVolume = (float) section.getDouble("sound.volume", base.soundVolume);
+            if (soundVolume < 0 || soundVolume > 2.0f) {
+                logger.warning(path + "sound.volume '" + soundVolume + "' out of range [0, 2.0], clamping");
+                soundVolume = Math.clamp(soundVolume, 0f, 2.0f);
+            }
+            soundPitch = (float) section.getDouble("sound.pitch", base.soundPitch);
+            if (soundPitch < 0.5f || soundPitch > 2.0f) {
+                logger.warning(path + "sound.pitch '" + soundPitch + "' out of range [0.5, 2.0], clamping");
+                soundPitch = Math.clamp(soundPitch, 0.5f, 2.0f);
+            }
+        }
+
+        // Particles
+        boolean particlesEnabled = section.getBoolean("particles.enabled", base.particlesEnabled);
+        Particle particle = base.particle;
+        int particleCount = base.particleCount;
+        if (particlesEnabled) {
+            if (particle == null || section.contains("particles.type")) {
+                String particleName = section.getString("particles.type", DEFAULT_PARTICLE);
+                try {
+                    particle = Particle.valueOf(particleName);
+                } catch (IllegalArgumentException | NullPointerException e) {
+                    logger.warning("Invalid " + path + "particles.type '" + particleName + "', disabling particles");
+                    particlesEnabled = false;
+                }
+            }
+            particleCount = section.getInt("particles.count", base.particleCount);
+            if (particleCount <= 0) {
+                logger.warning(path + "particles.count must be > 0, using " + base.particleCount);
+                particleCount = base.particleCount;
+            }
+        }
+
+        return new WorldProfile(base.allowed, range, range * range, multiplier,
+                soundEnabled, sound, soundVolume, soundPitch, particlesEnabled, particle, particleCount);
+    }
+}
@@ -0,0 +1,56 @@
+package com.xpoptimizer;
+
+import org.bukkit.World;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The {@link WorldProfile} of every loaded world, keyed by the {@link World} instance, so the hot
+ * path resolves its world's settings with one identity lookup instead of hashing the world name.
+ * <p>
+ * Readers see an immutable map through a volatile field and never lock. The map is rebuilt on a
+ * config reload and when a world loads or unloads; a world seen before its load event (or on
+ * another region thread) is compiled on first use and added the same way.
+ */
+public final class WorldProfiles {
+
+    private volatile XPConfig config;
+    private volatile Map<World, WorldProfile> profiles = Map.of();
+
+    public WorldProfiles(XPConfig config) {
+        this.config = config;
+    }
+
+    /** Returns the world's compiled settings. */
+    public WorldProfile get(World world) {
+        WorldProfile profile = profiles.get(world);
+        return profile != null ? profile : add(world);
+    }
+
+    /** Recompiles every loaded world against a new config. */
+    public synchronized void reload(XPConfig config, Collection<World> worlds) {
+        this.config = config;
+        Map<World, WorldProfile> next = new IdentityHashMap<>(worlds.size() * 2);
+        for (World world : worlds) next.put(world, config.profile(world.getName()));
+        profiles = next;
+    }
+
+    public synchronized WorldProfile add(World world) {
+        WorldProfile profile = profiles.get(world);
+        if (profile != null) return profile;
+        profile = config.profile(world.getName());
+        Map<World, WorldProfile> next = new IdentityHashMap<>(profiles);
+        next.put(world, profile);
+        profiles = next;
+        return profile;
+    }
+
+    public synchronized void remove(World world) {
+        if (!profiles.containsKey(world)) return;
+        Map<World, WorldProfile> next = new IdentityHashMap<>(profiles);
+        next.remove(world);
+        profiles = next;
+    }
+}
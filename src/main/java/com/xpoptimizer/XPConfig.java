@@ -1,9 +1,8 @@
 package com.xpoptimizer;
 
-import org.bukkit.NamespacedKey;
-import org.bukkit.Particle;
-import org.bukkit.Registry;
-import org.bukkit.Sound;
+import com.xpoptimizer.message.MessageTemplate;
+import com.xpoptimizer.stats.StatsStore;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 
 import java.util.*;
@@ -11,50 +10,84 @@ import java.util.logging.Logger;
 
 public record XPConfig(
         boolean enabled,
-        double range,
-        double rangeSq,
-        double multiplier,
+        WorldProfile defaultProfile,
+        Map<String, WorldProfile> worldProfiles,
+        DepositMode depositMode,
+        CaptureMode captureMode,
+        boolean playerIndex,
+        boolean mendingEngine,
+        boolean orbMergeEnabled,
+        int orbMergeCellSize,
+        int orbMergeMaxPerTick,
+        int orbMergeBudgetMicros,
+        boolean ledgerEnabled,
+        int ledgerMaxChunks,
         boolean statsEnabled,
         int autoSaveIntervalSeconds,
-        boolean soundEnabled,
-        Sound sound,
-        float soundVolume,
-        float soundPitch,
-        boolean particlesEnabled,
-        Particle particle,
-        int particleCount,
-        long effectCooldownMs,
+        int statsShutdownTimeoutSeconds,
+        int nameCacheSize,
+        StatsStore.Backend statsBackend,
+        int statsFlushIntervalMillis,
+        int statsResidentCacheSize,
+        boolean clusterEnabled,
+        String clusterNodeId,
+        ClusterTransportType clusterTransport,
+        int clusterSyncIntervalMillis,
+        String clusterBind,
+        List<String> clusterPeers,
+        String clusterSecret,
+        int effectWindowTicks,
+        int effectChunkBudget,
+        boolean loadSheddingEnabled,
+        double[] loadTierMspt,
+        double loadRecoverMarginMspt,
+        int loadRecoverTicks,
         WorldFilterMode worldFilterMode,
         Set<String> worldFilterList,
         boolean debug,
-        Map<String, String> messages
+        boolean metricsEnabled,
+        boolean metricsExport,
+        Map<String, MessageTemplate> messages
 ) {
 
     public enum WorldFilterMode { DISABLED, WHITELIST, BLACKLIST }
 
+    public enum DepositMode { IMMEDIATE, BATCHED }
+
+    public enum CaptureMode { SPAWN, SOURCE }
+
+    public enum ClusterTransportType { SOCKET, LOOPBACK }
+
     private static final Map<String, String> DEFAULT_MESSAGES = Map.ofEntries(
             Map.entry("reload-success", "&a[XPOptimizer] Config reloaded."),
             Map.entry("no-permission", "&c[XPOptimizer] You do not have permission."),
-            Map.entry("stats-self", "&6[XPOptimizer] &fTotal XP collected: &a%xp%"),
-            Map.entry("stats-other", "&6[XPOptimizer] &f%player%'s total XP: &a%xp%"),
+            Map.entry("stats-self", "&6[XPOptimizer] &fTotal XP collected: &a%xp% &7(rank #%rank%)"),
+            Map.entry("stats-other", "&6[XPOptimizer] &f%player%'s total XP: &a%xp% &7(rank #%rank%)"),
             Map.entry("stats-player-not-found", "&c[XPOptimizer] Player not found."),
             Map.entry("console-stats-denied", "&c[XPOptimizer] Specify a player: /xpstats <player>"),
             Map.entry("console-reset-denied", "&c[XPOptimizer] Specify a player: /xpstats reset <player>"),
             Map.entry("top-header", "&6[XPOptimizer] &f--- Top %count% XP Collectors ---"),
+            Map.entry("top-header-window", "&6[XPOptimizer] &f--- Top %count% XP Collectors (%window%) ---"),
+            Map.entry("top-header-global", "&6[XPOptimizer] &f--- Top %count% XP Collectors (all %nodes% servers) ---"),
+            Map.entry("cluster-disabled", "&c[XPOptimizer] Cluster mode is disabled in the config."),
             Map.entry("top-entry", "&6%rank%. &f%player% &7- &a%xp%"),
+            Map.entry("window-day", "today"),
+            Map.entry("window-week", "last 7 days"),
+            Map.entry("window-month", "last 30 days"),
             Map.entry("reset-self", "&a[XPOptimizer] Your XP stats have been reset."),
             Map.entry("reset-other", "&a[XPOptimizer] Reset XP stats for %player%."),
             Map.entry("reset-no-permission", "&c[XPOptimizer] You cannot reset other players' stats."),
-            Map.entry("usage", "&6Usage: /xpstats [reload|top|reset|<player>]")
+            Map.entry("metrics-header", "&6[XPOptimizer] &f--- Metrics ---"),
+            Map.entry("metrics-entry", "&7%name%: &f%value%"),
+            Map.entry("metrics-disabled", "&c[XPOptimizer] Metrics are disabled in the config."),
+            Map.entry("trace-started", "&a[XPOptimizer] Recording orb trace %name% for %value%s."),
+            Map.entry("trace-stopped", "&a[XPOptimizer] Trace finished with %count% orbs."),
+            Map.entry("trace-running", "&c[XPOptimizer] A trace is already recording."),
+            Map.entry("trace-not-running", "&c[XPOptimizer] No trace is recording."),
+            Map.entry("usage", "&6Usage: /xpstats [reload|top [day|week|month|global]|reset|metrics|trace [start [seconds]|stop]|<player>]")
     );
 
-    /** O(1) lookup table for valid color/formatting codes after '&'. */
-    private static final boolean[] VALID_COLOR_CODES = new boolean[128];
-    static {
-        for (char c : "0123456789abcdefklmnorABCDEFKLMNOR".toCharArray()) {
-            VALID_COLOR_CODES[c] = true;
-        }
-    }
+    private static final Map<String, MessageTemplate> DEFAULT_TEMPLATES = compileAll(DEFAULT_MESSAGES);
 
     public boolean isWorldAllowed(String worldName) {
         return switch (worldFilterMode) {
@@ -64,70 +97,90 @@ public record XPConfig(
         };
     }
 
-    public String formatMessage(String key, String... replacements) {
-        String msg = messages.getOrDefault(key, DEFAULT_MESSAGES.getOrDefault(key, key));
+    /**
+     * Compiles the settings for the named world: its {@code worlds.<name>} overrides, or the
+     * defaults, with the world filter applied. Resolved once per world by {@link WorldProfiles}.
+     */
+    public WorldProfile profile(String worldName) {
+        return worldProfiles.getOrDefault(worldName, defaultProfile).withAllowed(isWorldAllowed(worldName));
+    }
 
-        if (replacements.length >= 2) {
-            // Build a map from the varargs pairs
-            Map<String, String> replacementMap = new HashMap<>(replacements.length / 2 + 1, 1.0f);
-            for (int i = 0; i + 1 < replacements.length; i += 2) {
-                replacementMap.put(replacements[i], replacements[i + 1]);
-            }
+    /** Returns the parsed message for {@code key}, falling back to the built-in default. */
+    public MessageTemplate message(String key) {
+        MessageTemplate template = messages.get(key);
+        if (template == null) template = DEFAULT_TEMPLATES.get(key);
+        return template != null ? template : MessageTemplate.compile(key);
+    }
 
-            // Single-pass replacement: scan for %token% patterns
-            StringBuilder sb = new StringBuilder(msg.length());
-            int len = msg.length();
-            int i = 0;
-            while (i < len) {
-                char c = msg.charAt(i);
-                if (c == '%') {
-                    // Look ahead for closing %
-                    int close = msg.indexOf('%', i + 1);
-                    if (close != -1) {
-                        String token = msg.substring(i, close + 1); // includes both % delimiters
-                        String replacement = replacementMap.get(token);
-                        if (replacement != null) {
-                            sb.append(replacement);
-                            i = close + 1;
-                            continue;
-                        }
-                    }
-                }
-                sb.append(c);
-                i++;
-            }
-            msg = sb.toString();
+    private static Map<String, MessageTemplate> compileAll(Map<String, String> raw) {
+        Map<String, MessageTemplate> compiled = new HashMap<>(raw.size() * 2);
+        for (Map.Entry<String, String> e : raw.entrySet()) {
+            compiled.put(e.getKey(), MessageTemplate.compile(e.getValue()));
         }
-
-        return translateColors(msg);
+        return Map.copyOf(compiled);
     }
 
-    private static String translateColors(String msg) {
-        char[] chars = msg.toCharArray();
-        for (int i = 0; i < chars.length - 1; i++) {
-            if (chars[i] == '&') {
-                char next = chars[i + 1];
-                if (next < 128 && VALID_COLOR_CODES[next]) {
-                    chars[i] = '\u00A7';
+    public static XPConfig fromBukkitConfig(FileConfiguration config, Logger logger) {
+        boolean enabled = config.getBoolean("enabled", true);
+
+        // Range, multiplier and effects, with per-world overrides on top
+        WorldProfile defaultProfile = WorldProfile.parse(config, WorldProfile.BUILT_IN, "", logger);
+        Map<String, WorldProfile> worldProfiles = new HashMap<>();
+        ConfigurationSection worlds = config.getConfigurationSection("worlds");
+        if (worlds != null) {
+            for (String name : worlds.getKeys(false)) {
+                ConfigurationSection section = worlds.getConfigurationSection(name);
+                if (section == null) {
+                    logger.warning("worlds." + name + " is not a section, ignoring");
+                    continue;
                 }
+                worldProfiles.put(name, WorldProfile.parse(section, defaultProfile, "worlds." + name + ".", logger));
             }
         }
-        return new String(chars);
-    }
 
-    public static XPConfig fromBukkitConfig(FileConfiguration config, Logger logger) {
-        boolean enabled = config.getBoolean("enabled", true);
+        DepositMode depositMode = DepositMode.IMMEDIATE;
+        String depositModeStr = config.getString("deposit-mode", "IMMEDIATE");
+        try {
+            depositMode = DepositMode.valueOf(depositModeStr.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.warning("Invalid deposit-mode '" + depositModeStr + "', using IMMEDIATE");
+        }
+
+        CaptureMode captureMode = CaptureMode.SPAWN;
+        String captureModeStr = config.getString("capture-mode", "SPAWN");
+        try {
+            captureMode = CaptureMode.valueOf(captureModeStr.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.warning("Invalid capture-mode '" + captureModeStr + "', using SPAWN");
+        }
+
+        boolean playerIndex = config.getBoolean("player-index", true);
+        boolean mendingEngine = config.getBoolean("mending-engine", false);
 
-        double range = config.getDouble("range", 16.0);
-        if (range <= 0) {
-            logger.warning("Invalid range '" + range + "', using default 16.0");
-            range = 16.0;
+        // Orb merging
+        boolean orbMergeEnabled = config.getBoolean("orb-merge.enabled", false);
+        int orbMergeCellSize = config.getInt("orb-merge.cell-size", 4);
+        if (orbMergeCellSize < 1 || orbMergeCellSize > 64) {
+            logger.warning("orb-merge.cell-size '" + orbMergeCellSize + "' out of range [1, 64], clamping");
+            orbMergeCellSize = Math.clamp(orbMergeCellSize, 1, 64);
+        }
+        int orbMergeMaxPerTick = config.getInt("orb-merge.max-cells-per-tick", 256);
+        if (orbMergeMaxPerTick <= 0) {
+            logger.warning("orb-merge.max-cells-per-tick must be > 0, using default 256");
+            orbMergeMaxPerTick = 256;
+        }
+        int orbMergeBudgetMicros = config.getInt("orb-merge.time-budget-us", 500);
+        if (orbMergeBudgetMicros <= 0) {
+            logger.warning("orb-merge.time-budget-us must be > 0, using default 500");
+            orbMergeBudgetMicros = 500;
         }
 
-        double multiplier = config.getDouble("xp-multiplier", 1.0);
-        if (multiplier < 0) {
-            logger.warning("Invalid xp-multiplier '" + multiplier + "', using default 1.0");
-            multiplier = 1.0;
+        // Pending-XP ledger
+        boolean ledgerEnabled = config.getBoolean("xp-ledger.enabled", false);
+        int ledgerMaxChunks = config.getInt("xp-ledger.max-chunks", 4096);
+        if (ledgerMaxChunks < 16) {
+            logger.warning("xp-ledger.max-chunks too low (" + ledgerMaxChunks + "), clamping to 16");
+            ledgerMaxChunks = 16;
         }
 
         boolean statsEnabled = config.getBoolean("stats.enabled", true);
@@ -138,61 +191,110 @@ public record XPConfig(
             autoSaveInterval = 10;
         }
 
-        // Sound
-        boolean soundEnabled = config.getBoolean("sound.enabled", false);
-        Sound sound = null;
-        float soundVolume = 0.5f;
-        float soundPitch = 1.0f;
-        if (soundEnabled) {
-            String name = config.getString("sound.type", "entity.experience_orb.pickup");
-            if (name != null) {
-                sound = Registry.SOUNDS.get(NamespacedKey.minecraft(name.toLowerCase()));
-            }
-            if (sound == null) {
-                logger.warning("Invalid sound type '" + name + "', disabling sound effects");
-                soundEnabled = false;
-            }
-            soundVolume = (float) config.getDouble("sound.volume", 0.5);
-            if (soundVolume < 0 || soundVolume > 2.0f) {
-                logger.warning("sound.volume '" + soundVolume + "' out of range [0, 2.0], clamping");
-                soundVolume = Math.clamp(soundVolume, 0f, 2.0f);
-            }
-            soundPitch = (float) config.getDouble("sound.pitch", 1.0);
-            if (soundPitch < 0.5f || soundPitch > 2.0f) {
-                logger.warning("sound.pitch '" + soundPitch + "' out of range [0.5, 2.0], clamping");
-                soundPitch = Math.clamp(soundPitch, 0.5f, 2.0f);
-            }
+        int statsShutdownTimeoutSeconds = config.getInt("stats.shutdown-timeout-seconds", 30);
+        if (statsShutdownTimeoutSeconds < 1) {
+            logger.warning("stats.shutdown-timeout-seconds must be > 0, using 1");
+            statsShutdownTimeoutSeconds = 1;
         }
 
-        // Particles
-        boolean particlesEnabled = config.getBoolean("particles.enabled", false);
-        Particle particle = null;
-        int particleCount = 5;
-        if (particlesEnabled) {
-            String particleName = config.getString("particles.type", "HAPPY_VILLAGER");
-            try {
-                particle = Particle.valueOf(particleName);
-            } catch (IllegalArgumentException e) {
-                logger.warning("Invalid particle type '" + particleName + "', disabling particles");
-                particlesEnabled = false;
-            }
-            particleCount = config.getInt("particles.count", 5);
-            if (particleCount <= 0) {
-                logger.warning("particles.count must be > 0, using default 5");
-                particleCount = 5;
-            }
+        int nameCacheSize = config.getInt("stats.name-cache-size", 100_000);
+        if (nameCacheSize < 100) {
+            logger.warning("stats.name-cache-size too low (" + nameCacheSize + "), clamping to 100");
+            nameCacheSize = 100;
+        }
+
+        StatsStore.Backend statsBackend = StatsStore.Backend.JOURNAL;
+        String statsBackendStr = config.getString("stats.backend", "JOURNAL");
+        try {
+            statsBackend = StatsStore.Backend.valueOf(statsBackendStr.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.warning("Invalid stats.backend '" + statsBackendStr + "', using JOURNAL");
+        }
+
+        int statsFlushIntervalMillis = config.getInt("stats.flush-interval-ms", 1000);
+        if (statsFlushIntervalMillis < 50 || statsFlushIntervalMillis > 60_000) {
+            logger.warning("stats.flush-interval-ms '" + statsFlushIntervalMillis + "' out of range [50, 60000], clamping");
+            statsFlushIntervalMillis = Math.clamp(statsFlushIntervalMillis, 50, 60_000);
         }
 
-        // Effect cooldown
+        int statsResidentCacheSize = config.getInt("stats.resident-cache-size", 10_000);
+        if (statsResidentCacheSize < 100) {
+            logger.warning("stats.resident-cache-size too low (" + statsResidentCacheSize + "), clamping to 100");
+            statsResidentCacheSize = 100;
+        }
+
+        // Cluster -- only read at startup
+        boolean clusterEnabled = config.getBoolean("cluster.enabled", false);
+        String clusterNodeId = config.getString("cluster.node-id", "").trim();
+        if (clusterEnabled && clusterNodeId.length() > 64) {
+            logger.warning("cluster.node-id is longer than 64 characters, disabling cluster mode");
+            clusterEnabled = false;
+        }
+        ClusterTransportType clusterTransport = ClusterTransportType.SOCKET;
+        String clusterTransportStr = config.getString("cluster.transport", "SOCKET");
+        try {
+            clusterTransport = ClusterTransportType.valueOf(clusterTransportStr.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.warning("Invalid cluster.transport '" + clusterTransportStr + "', using SOCKET");
+        }
+        int clusterSyncIntervalMillis = config.getInt("cluster.sync-interval-ms", 1000);
+        if (clusterSyncIntervalMillis < 50 || clusterSyncIntervalMillis > 60_000) {
+            logger.warning("cluster.sync-interval-ms '" + clusterSyncIntervalMillis + "' out of range [50, 60000], clamping");
+            clusterSyncIntervalMillis = Math.clamp(clusterSyncIntervalMillis, 50, 60_000);
+        }
+        String clusterBind = config.getString("cluster.bind", "127.0.0.1:25580").trim();
+        List<String> clusterPeers = List.copyOf(config.getStringList("cluster.peers"));
+        String clusterSecret = config.getString("cluster.secret", "");
+        if (clusterEnabled && clusterTransport == ClusterTransportType.SOCKET && clusterSecret.isBlank()) {
+            logger.warning("cluster.secret is empty; the socket transport needs a shared secret, disabling cluster mode");
+            clusterEnabled = false;
+        }
+
+        // Effect bursts: the cooldown becomes a window of whole ticks, at least one
         long effectCooldownMs = config.getLong("effect-cooldown-ms", 200);
         if (effectCooldownMs < 0) {
             logger.warning("effect-cooldown-ms cannot be negative, using 0");
             effectCooldownMs = 0;
         }
+        int effectWindowTicks = Math.clamp((effectCooldownMs + 49) / 50, 1, 72_000);
+        int effectChunkBudget = config.getInt("effect-chunk-budget", 16);
+        if (effectChunkBudget < 0) {
+            logger.warning("effect-chunk-budget cannot be negative, using 0 (unlimited)");
+            effectChunkBudget = 0;
+        }
+
+        // Load shedding: one threshold per tier above NORMAL, strictly increasing
+        boolean loadSheddingEnabled = config.getBoolean("load-shedding.enabled", false);
+        double[] loadTierMspt = {40.0, 45.0, 50.0, 60.0};
+        if (config.contains("load-shedding.tiers-mspt")) {
+            List<Double> tiers = config.getDoubleList("load-shedding.tiers-mspt");
+            boolean valid = tiers.size() == loadTierMspt.length && tiers.get(0) > 0;
+            for (int i = 1; valid && i < tiers.size(); i++) valid = tiers.get(i) > tiers.get(i - 1);
+            if (valid) {
+                for (int i = 0; i < loadTierMspt.length; i++) loadTierMspt[i] = tiers.get(i);
+            } else {
+                logger.warning("load-shedding.tiers-mspt needs " + loadTierMspt.length
+                        + " increasing positive values, using " + Arrays.toString(loadTierMspt));
+            }
+        }
+        double loadRecoverMarginMspt = config.getDouble("load-shedding.recover-margin-mspt", 5.0);
+        if (loadRecoverMarginMspt < 0) {
+            logger.warning("load-shedding.recover-margin-mspt cannot be negative, using 0");
+            loadRecoverMarginMspt = 0;
+        }
+        int loadRecoverTicks = config.getInt("load-shedding.recover-ticks", 200);
+        if (loadRecoverTicks < 1) {
+            logger.warning("load-shedding.recover-ticks must be > 0, using 1");
+            loadRecoverTicks = 1;
+        }
 
         // Debug
         boolean debug = config.getBoolean("debug", false);
 
+        // Metrics
+        boolean metricsEnabled = config.getBoolean("metrics.enabled", true);
+        boolean metricsExport = config.getBoolean("metrics.export-file", false);
+
         // World filter
         WorldFilterMode worldFilterMode = WorldFilterMode.DISABLED;
         String modeStr = config.getString("world-filter.mode", "DISABLED");
@@ -203,8 +305,8 @@ public record XPConfig(
         }
         Set<String> worldFilterList = Set.copyOf(config.getStringList("world-filter.worlds"));
 
-        // Messages -- avoid allocation when no custom messages are defined
-        Map<String, String> messages;
+        // Messages -- parsed once here; reuse the defaults when no custom messages are defined
+        Map<String, MessageTemplate> messages;
         if (config.isConfigurationSection("messages")) {
             Map<String, String> merged = new HashMap<>(DEFAULT_MESSAGES);
             for (String key : config.getConfigurationSection("messages").getKeys(false)) {
@@ -213,19 +315,23 @@ public record XPConfig(
                     merged.put(key, value);
                 }
             }
-            messages = Map.copyOf(merged);
+            messages = compileAll(merged);
         } else {
-            messages = DEFAULT_MESSAGES;
+            messages = DEFAULT_TEMPLATES;
         }
 
         return new XPConfig(
-                enabled, range, range * range, multiplier,
-                statsEnabled, autoSaveInterval,
-                soundEnabled, sound, soundVolume, soundPitch,
-                particlesEnabled, particle, particleCount,
-                effectCooldownMs,
+                enabled, defaultProfile, Map.copyOf(worldProfiles), depositMode, captureMode, playerIndex, mendingEngine,
+                orbMergeEnabled, orbMergeCellSize, orbMergeMaxPerTick, orbMergeBudgetMicros,
+                ledgerEnabled, ledgerMaxChunks,
+                statsEnabled, autoSaveInterval, statsShutdownTimeoutSeconds, nameCacheSize, statsBackend, statsFlushIntervalMillis,
+                statsResidentCacheSize,
+                clusterEnabled, clusterNodeId, clusterTransport, clusterSyncIntervalMillis,
+                clusterBind, clusterPeers, clusterSecret,
+                effectWindowTicks, effectChunkBudget,
+                loadSheddingEnabled, loadTierMspt, loadRecoverMarginMspt, loadRecoverTicks,
                 worldFilterMode, worldFilterList,
-                debug, messages
+                debug, metricsEnabled, metricsExport, messages
         );
     }
 }
@@ -1,44 +1,163 @@
 package com.xpoptimizer;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
+import com.xpoptimizer.boost.BoostManager;
+import com.xpoptimizer.cache.PlayerNameCache;
+import com.xpoptimizer.cluster.ClusterStats;
+import com.xpoptimizer.cluster.ClusterTransport;
+import com.xpoptimizer.cluster.LoopbackTransport;
+import com.xpoptimizer.cluster.SocketTransport;
+import com.xpoptimizer.jfr.StatsIoEvent;
+import com.xpoptimizer.listener.MendingCacheListener;
+import com.xpoptimizer.listener.PlayerIndexListener;
+import com.xpoptimizer.listener.PlayerNameListener;
+import com.xpoptimizer.listener.StatsResidencyListener;
 import com.xpoptimizer.listener.XPOrbSpawnListener;
+import com.xpoptimizer.listener.XPSourceListener;
+import com.xpoptimizer.load.LoadShedder;
+import com.xpoptimizer.mending.MendingEngine;
+import com.xpoptimizer.metrics.PluginMetrics;
+import com.xpoptimizer.metrics.PrometheusExporter;
+import com.xpoptimizer.scheduler.IoExecutor;
+import com.xpoptimizer.scheduler.PluginScheduler;
+import com.xpoptimizer.spatial.PlayerSpatialIndex;
+import com.xpoptimizer.stats.MemoryStatsStore;
+import com.xpoptimizer.stats.ShardedStatsStore;
+import com.xpoptimizer.stats.SqlStatsStore;
+import com.xpoptimizer.stats.StatsStore;
+import com.xpoptimizer.stats.WindowStatsFile;
+import com.xpoptimizer.stats.XPLeaderboard;
+import com.xpoptimizer.stats.XPStatsStore;
+import com.xpoptimizer.stats.XPWindowStats;
+import com.xpoptimizer.trace.TraceRecorder;
 import org.bukkit.plugin.java.JavaPlugin;
-import org.bukkit.scheduler.BukkitTask;
 
-import java.io.*;
-import java.lang.reflect.Type;
-import java.nio.charset.StandardCharsets;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 public final class XPOptimizerPlugin extends JavaPlugin {
 
-    public record BoostData(double multiplier, long expiresAtTick) {}
-
     private volatile XPConfig config;
-    private final Map<UUID, Long> xpStats = new ConcurrentHashMap<>();
-    private final Map<UUID, BoostData> playerBoosts = new ConcurrentHashMap<>();
-    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
-    private static final Type STATS_TYPE = new TypeToken<Map<String, Long>>() {}.getType();
-    private BukkitTask autoSaveTask;
-    private BukkitTask boostCleanupTask;
+    private WorldProfiles worldProfiles;
+    private final XPWindowStats windowStats = new XPWindowStats(currentEpochDay());
+    private BoostManager playerBoosts;
+    private final PlayerSpatialIndex playerIndex = new PlayerSpatialIndex();
+    private final MendingEngine mending = new MendingEngine();
+    private StatsStore xpStats;
+    private ClusterStats cluster;
+    private WindowStatsFile windowStatsFile;
+    private PlayerNameCache nameCache;
+    private PluginScheduler scheduler;
+    private IoExecutor ioExecutor;
+    private TraceRecorder traceRecorder;
+    private PluginScheduler.Task traceTask;
+    private PluginMetrics metrics;
+    private LoadShedder loadShedder;
+    private PrometheusExporter metricsExporter;
+    private PluginScheduler.Task autoSaveTask;
+    private PluginScheduler.Task boostExpiryTask;
+    private PluginScheduler.Task dayRolloverTask;
+    private PluginScheduler.Task clusterSyncTask;
+    private PluginScheduler.Task playerIndexTask;
     private XPOrbSpawnListener listener;
 
     public XPConfig getXPConfig() {
         return config;
     }
 
+    public WorldProfiles getWorldProfiles() {
+        return worldProfiles;
+    }
+
+    public PluginScheduler getPluginScheduler() {
+        return scheduler;
+    }
+
+    public PlayerNameCache getNameCache() {
+        return nameCache;
+    }
+
+    public PlayerSpatialIndex getPlayerIndex() {
+        return playerIndex;
+    }
+
+    public MendingEngine getMendingEngine() {
+        return mending;
+    }
+
+    public TraceRecorder getTraceRecorder() {
+        return traceRecorder;
+    }
+
+    public LoadShedder getLoadShedder() {
+        return loadShedder;
+    }
+
+    public PluginMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** Current sizes of the plugin's maps, keyed by metric name, in display order. */
+    public Map<String, Long> getMetricGauges() {
+        Map<String, Long> gauges = new LinkedHashMap<>();
+        gauges.put("stats_entries", xpStats.size());
+        gauges.put("stats_unsaved", (long) xpStats.pendingWrites());
+        gauges.put("name_cache_entries", (long) nameCache.size());
+        gauges.put("active_boosts", (long) playerBoosts.size());
+        gauges.put("effect_slots", (long) listener.getEffectSlotCount());
+        gauges.put("mending_players", (long) mending.size());
+        gauges.put("load_tier", (long) loadShedder.tier().ordinal());
+        gauges.put("load_tier_changes", loadShedder.changes());
+        gauges.put("merge_cells", (long) listener.getMergeCellCount());
+        gauges.put("ledger_chunks", (long) listener.getLedgerChunkCount());
+        if (cluster != null) {
+            gauges.put("cluster_nodes", (long) cluster.nodeCount());
+            gauges.put("cluster_peers_connected", (long) cluster.connectedPeers());
+        }
+        return gauges;
+    }
+
     @Override
     public void onEnable() {
+        scheduler = PluginScheduler.create(this);
+        ioExecutor = new IoExecutor(() -> !config.statsEnabled() || saveStats(), getLogger());
+        traceRecorder = new TraceRecorder(getDataFolder(), ioExecutor, getLogger());
+        metrics = new PluginMetrics(scheduler::currentTick);
+        loadShedder = new LoadShedder(getLogger());
+        playerBoosts = new BoostManager(scheduler.currentTick());
+        metricsExporter = new PrometheusExporter(getDataFolder(), getLogger());
+        windowStatsFile = new WindowStatsFile(getDataFolder(), getLogger());
         saveDefaultConfig();
         reloadPluginConfig();
 
-        if (config.statsEnabled()) loadStats();
+        xpStats = createStatsStore();
+        if (config.statsEnabled()) ioExecutor.runAndWait(this::loadStats);
+
+        // Seed before any deposit can reach the cluster, so this node's contribution starts complete
+        if (config.clusterEnabled()) startCluster();
+
+        ioExecutor.runAndWait(nameCache::load);
+        getServer().getOnlinePlayers().forEach(p -> nameCache.learn(p.getUniqueId(), p.getName()));
+        getServer().getPluginManager().registerEvents(new PlayerNameListener(nameCache), this);
+        if (xpStats instanceof ShardedStatsStore sharded) {
+            getServer().getOnlinePlayers().forEach(p -> sharded.preload(p.getUniqueId()));
+            getServer().getPluginManager().registerEvents(new StatsResidencyListener(sharded, scheduler), this);
+        }
 
         listener = new XPOrbSpawnListener(this);
         getServer().getPluginManager().registerEvents(listener, this);
+        getServer().getPluginManager().registerEvents(new XPSourceListener(this, listener), this);
+        // Always registered, so the cache is current whenever mending-engine is switched on by a reload
+        getServer().getPluginManager().registerEvents(new MendingCacheListener(mending), this);
+
+        if (!scheduler.regionThreaded()) {
+            getServer().getPluginManager().registerEvents(new PlayerIndexListener(playerIndex), this);
+            getServer().getOnlinePlayers().forEach(playerIndex::track);
+        }
 
         if (getServer().getPluginManager().getPlugin("CrazyEnchantments") != null) {
             getLogger().info("CrazyEnchantments detected -- XP enchantment bonuses will be captured automatically.");
@@ -46,11 +165,16 @@ public final class XPOptimizerPlugin extends JavaPlugin {
 
         registerCommands();
 
-        // Cleanup expired boosts every second
-        boostCleanupTask = getServer().getScheduler().runTaskTimer(this, () -> {
-            long currentTick = getServer().getCurrentTick();
-            playerBoosts.entrySet().removeIf(e -> e.getValue().expiresAtTick() <= currentTick);
-        }, 20L, 20L);
+        // Expire boosts due this tick; the timing wheel only visits what is due
+        boostExpiryTask = scheduler.runGlobalTimer(() -> playerBoosts.advance(scheduler.currentTick()), 1L, 1L);
+
+        // Roll the windowed stats over to the next day at midnight
+        dayRolloverTask = scheduler.runGlobalTimer(() -> windowStats.setToday(currentEpochDay()), 20L, 20L);
+
+        // Pick up movement that fires no move event (vehicles, pistons, knockback)
+        if (!scheduler.regionThreaded()) {
+            playerIndexTask = scheduler.runGlobalTimer(playerIndex::resync, 10L, 10L);
+        }
     }
 
     @Override
@@ -59,54 +183,191 @@ public final class XPOptimizerPlugin extends JavaPlugin {
             autoSaveTask.cancel();
             autoSaveTask = null;
         }
-        if (boostCleanupTask != null) {
-            boostCleanupTask.cancel();
-            boostCleanupTask = null;
+        if (boostExpiryTask != null) {
+            boostExpiryTask.cancel();
+            boostExpiryTask = null;
+        }
+        if (dayRolloverTask != null) {
+            dayRolloverTask.cancel();
+            dayRolloverTask = null;
+        }
+        if (playerIndexTask != null) {
+            playerIndexTask.cancel();
+            playerIndexTask = null;
         }
-        if (config.statsEnabled()) saveStats();
+        if (clusterSyncTask != null) {
+            clusterSyncTask.cancel();
+            clusterSyncTask = null;
+        }
+        playerIndex.clear();
+        if (listener != null) {
+            listener.flushPending();
+            listener.drainMerges();
+            listener.flushDeferredStats();
+        }
+        if (cluster != null) {
+            cluster.sync();
+            cluster.close();
+            cluster = null;
+        }
+        if (ioExecutor == null) return;
+        stopTrace();
+        // Forced, so anything an earlier failed save left behind is written too
+        ioExecutor.requestFullSave();
+        ioExecutor.execute(() -> {
+            if (xpStats != null) xpStats.close();
+            nameCache.save();
+        });
+        ioExecutor.shutdown(config.statsShutdownTimeoutSeconds());
+    }
+
+    /**
+     * Re-reads config.yml on the I/O thread, behind any save in progress, then applies it and runs
+     * {@code done} on the main thread (the global region on Folia), which owns worlds and tasks.
+     */
+    public void reloadPluginConfigAsync(Runnable done) {
+        ioExecutor.execute(() -> {
+            XPConfig loaded = readPluginConfig();
+            if (!isEnabled()) return;
+            scheduler.runGlobal(() -> {
+                applyPluginConfig(loaded);
+                done.run();
+            });
+        });
     }
 
+    /** Reads and applies config.yml on the calling thread, which must be the main thread. */
     public void reloadPluginConfig() {
+        applyPluginConfig(readPluginConfig());
+    }
+
+    /** Only reads the file, so it may run on the I/O thread. */
+    private XPConfig readPluginConfig() {
         reloadConfig();
-        config = XPConfig.fromBukkitConfig(getConfig(), getLogger());
+        return XPConfig.fromBukkitConfig(getConfig(), getLogger());
+    }
+
+    private void applyPluginConfig(XPConfig loaded) {
+        config = loaded;
+        if (worldProfiles == null) worldProfiles = new WorldProfiles(config);
+        worldProfiles.reload(config, getServer().getWorlds());
+        if (nameCache == null) {
+            nameCache = new PlayerNameCache(getDataFolder(), config.nameCacheSize(), getLogger());
+        } else {
+            nameCache.setMaxEntries(config.nameCacheSize());
+        }
         scheduleAutoSave();
     }
 
     public void addXpStat(UUID playerId, int amount) {
-        xpStats.merge(playerId, (long) amount, Long::sum);
+        xpStats.add(playerId, amount);
+        windowStats.add(playerId, amount);
+        if (cluster != null) cluster.add(playerId, amount);
+        ioExecutor.markDirty();
     }
 
     public long getXpStat(UUID playerId) {
-        return xpStats.getOrDefault(playerId, 0L);
+        return xpStats.get(playerId);
+    }
+
+    /** XP the player collected within the rolling window (today, last 7 days or last 30 days). */
+    public long getXpStat(UUID playerId, XPWindowStats.Window window) {
+        return windowStats.get(playerId, window);
     }
 
     public void resetXpStat(UUID playerId) {
-        xpStats.remove(playerId);
+        xpStats.reset(playerId);
+        windowStats.remove(playerId);
+        if (cluster != null) cluster.reset(playerId);
+        ioExecutor.markDirty();
+    }
+
+    /** Players with stats; with the SQLITE backend, as of the last periodic count. */
+    public int getXpStatsSize() {
+        return (int) Math.min(xpStats.size(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * True when stats reads ({@link #getXpStat(UUID)}, {@link #getXpRank}, {@link #getTopXp(int)})
+     * go to the database, so callers must make them off the main thread.
+     */
+    public boolean statsReadsBlock() {
+        return xpStats.blockingReads();
     }
 
-    public Set<Map.Entry<UUID, Long>> getXpStatsEntries() {
-        return xpStats.entrySet();
+    /** Returns the {@code count} highest lifetime totals, best first. */
+    public List<XPLeaderboard.Ranked> getTopXp(int count) {
+        return xpStats.top(count);
+    }
+
+    /** True when cluster mode is running, so {@link #getGlobalTopXp} has totals from every server. */
+    public boolean isClusterEnabled() {
+        return cluster != null;
+    }
+
+    /** Servers whose totals the global leaderboard merges, this one included. */
+    public int getClusterNodeCount() {
+        return cluster != null ? cluster.nodeCount() : 1;
+    }
+
+    /** Returns the {@code count} highest lifetime totals across every server of the cluster. */
+    public List<XPLeaderboard.Ranked> getGlobalTopXp(int count) {
+        return cluster != null ? cluster.top(count) : List.of();
+    }
+
+    /** Returns the player's lifetime total across every server of the cluster. */
+    public long getGlobalXpStat(UUID playerId) {
+        return cluster != null ? cluster.get(playerId) : 0;
+    }
+
+    /**
+     * Returns the {@code count} highest totals within the window, best first. Scans every player
+     * active in the last 30 days, so call it off the main thread.
+     */
+    public List<XPLeaderboard.Ranked> getTopXp(XPWindowStats.Window window, int count) {
+        return windowStats.top(window, count);
+    }
+
+    /** Returns the player's 1-based leaderboard position, or 0 if it has no stats. */
+    public int getXpRank(UUID playerId) {
+        return xpStats.rankOf(playerId);
+    }
+
+    public void forEachXpStat(XPStatsStore.EntryVisitor visitor) {
+        xpStats.forEach(visitor);
     }
 
     // --- Per-Player Boost API ---
 
+    /** Sets the player's default boost, replacing the previous one. Other sources are kept. */
     public void setPlayerBoost(UUID playerId, double multiplier, long durationTicks) {
-        long expiresAt = getServer().getCurrentTick() + durationTicks;
-        playerBoosts.put(playerId, new BoostData(multiplier, expiresAt));
+        setPlayerBoost(playerId, BoostManager.DEFAULT_SOURCE, multiplier, durationTicks);
+    }
+
+    /**
+     * Sets the boost from {@code source} (for example an event or a plugin name), replacing any
+     * earlier boost from the same source. Boosts from different sources stack multiplicatively.
+     */
+    public void setPlayerBoost(UUID playerId, String source, double multiplier, long durationTicks) {
+        playerBoosts.set(playerId, source, multiplier, durationTicks, scheduler.currentTick());
     }
 
+    /** The player's combined boost multiplier, 1.0 without boosts. */
     public double getPlayerBoost(UUID playerId) {
-        BoostData boost = playerBoosts.get(playerId);
-        if (boost == null) return 1.0;
-        if (boost.expiresAtTick() <= getServer().getCurrentTick()) {
-            playerBoosts.remove(playerId);
-            return 1.0;
-        }
-        return boost.multiplier();
+        return playerBoosts.multiplier(playerId);
+    }
+
+    public List<BoostManager.ActiveBoost> getPlayerBoosts(UUID playerId) {
+        return playerBoosts.active(playerId);
     }
 
+    /** Removes every boost the player has. */
     public void clearPlayerBoost(UUID playerId) {
-        playerBoosts.remove(playerId);
+        playerBoosts.clearAll(playerId);
+    }
+
+    public void clearPlayerBoost(UUID playerId, String source) {
+        playerBoosts.clear(playerId, source);
     }
 
     @SuppressWarnings("UnstableApiUsage")
@@ -118,6 +379,29 @@ public final class XPOptimizerPlugin extends JavaPlugin {
         });
     }
 
+    // --- Traces ---
+
+    /** Starts recording an orb trace of {@code seconds}; returns its file, or null if one is running. */
+    public File startTrace(int seconds) {
+        File file = traceRecorder.start(scheduler.currentTick(), seconds);
+        if (file == null) return null;
+        traceTask = scheduler.runGlobalTimer(() -> {
+            if (!traceRecorder.sample(getServer().getOnlinePlayers(), scheduler.currentTick())) {
+                getLogger().info("Trace " + file.getName() + " finished (" + stopTrace() + " orbs)");
+            }
+        }, 1L, TraceRecorder.SAMPLE_TICKS);
+        return file;
+    }
+
+    /** Ends the running trace and returns the number of orbs recorded; 0 if none was running. */
+    public long stopTrace() {
+        if (traceTask != null) {
+            traceTask.cancel();
+            traceTask = null;
+        }
+        return traceRecorder.stop();
+    }
+
     // --- Auto Save ---
 
     private void scheduleAutoSave() {
@@ -125,52 +409,133 @@ public final class XPOptimizerPlugin extends JavaPlugin {
             autoSaveTask.cancel();
             autoSaveTask = null;
         }
-        if (!config.statsEnabled() || config.autoSaveIntervalSeconds() <= 0) return;
+        if ((!config.statsEnabled() && !config.metricsExport()) || config.autoSaveIntervalSeconds() <= 0) return;
 
         long intervalTicks = config.autoSaveIntervalSeconds() * 20L;
-        autoSaveTask = getServer().getScheduler().runTaskTimerAsynchronously(this, () -> {
-            saveStats();
-            listener.cleanupEffectTimes();
+        // Only queues work: the I/O thread skips a clean save and never stacks them up
+        autoSaveTask = scheduler.runAsyncTimer(() -> {
+            ioExecutor.requestSave();
+            ioExecutor.execute(nameCache::save);
+            if (config.metricsExport()) ioExecutor.execute(() -> metricsExporter.write(metrics.snapshot(), getMetricGauges()));
         }, intervalTicks, intervalTicks);
     }
 
     // --- Stats I/O ---
 
-    private void loadStats() {
-        File file = new File(getDataFolder(), "stats.json");
-        if (!file.exists()) return;
-
-        try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
-            Map<String, Long> raw = gson.fromJson(reader, STATS_TYPE);
-            if (raw != null) {
-                raw.forEach((key, value) -> {
-                    try {
-                        xpStats.put(UUID.fromString(key), value);
-                    } catch (IllegalArgumentException e) {
-                        getLogger().warning("Skipping invalid UUID in stats.json: " + key);
-                    }
-                });
-            }
-        } catch (Exception e) {
-            getLogger().warning("Failed to load XP stats: " + e.getMessage());
+    /** The backend is fixed at startup; stats stay in memory when they are disabled. */
+    private StatsStore createStatsStore() {
+        if (config.statsEnabled() && config.statsBackend() == StatsStore.Backend.SHARDED) {
+            return new ShardedStatsStore(getDataFolder(), config.statsResidentCacheSize(), getLogger());
         }
+        if (config.statsEnabled() && config.statsBackend() == StatsStore.Backend.SQLITE) {
+            SqlStatsStore sql = new SqlStatsStore(getDataFolder(), config.statsFlushIntervalMillis(), getLogger());
+            if (sql.open()) return sql;
+            getLogger().warning("Falling back to the JOURNAL stats backend");
+        }
+        return new MemoryStatsStore(getDataFolder(), getLogger());
     }
 
-    private void saveStats() {
-        Map<UUID, Long> snapshot = Map.copyOf(xpStats);
+    // --- Cluster ---
 
-        Map<String, Long> raw = new HashMap<>();
-        snapshot.forEach((uuid, value) -> raw.put(uuid.toString(), value));
+    /** Cluster settings are fixed at startup, like the stats backend. */
+    private void startCluster() {
+        // Every node keeps every other node's whole contribution in heap, so the cluster is only
+        // offered with the backend that keeps its own totals in heap too
+        if (xpStats.backend() != StatsStore.Backend.JOURNAL) {
+            getLogger().warning("Cluster mode needs the JOURNAL stats backend, not " + xpStats.backend()
+                    + "; disabling cluster mode");
+            return;
+        }
+        String nodeId = clusterNodeId();
+        if (nodeId == null) return;
+        ClusterTransport transport = createClusterTransport(nodeId);
+        if (transport == null) return;
+
+        cluster = new ClusterStats(nodeId, transport, getLogger());
+        cluster.seed(xpStats);
+        cluster.start();
+        long intervalTicks = Math.max(1, (config.clusterSyncIntervalMillis() + 49) / 50);
+        clusterSyncTask = scheduler.runAsyncTimer(cluster::sync, intervalTicks, intervalTicks);
+        getLogger().info("Cluster mode enabled as '" + nodeId + "'");
+    }
 
-        synchronized (this) {
-            File file = new File(getDataFolder(), "stats.json");
-            getDataFolder().mkdirs();
+    /**
+     * The configured node id, or one generated on first start and kept in the data folder. Servers
+     * on different hosts often share a port, so the port alone does not tell them apart.
+     */
+    private String clusterNodeId() {
+        if (!config.clusterNodeId().isEmpty()) return config.clusterNodeId();
+        Path file = getDataFolder().toPath().resolve("cluster-node-id");
+        try {
+            if (Files.exists(file)) {
+                String id = Files.readString(file).trim();
+                if (!id.isEmpty()) return id;
+            }
+            String id = "node-" + UUID.randomUUID().toString().substring(24);
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, id + "\n");
+            return id;
+        } catch (IOException e) {
+            getLogger().warning("Cannot read or write " + file + " (" + e.getMessage()
+                    + "); set cluster.node-id, disabling cluster mode");
+            return null;
+        }
+    }
 
-            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
-                gson.toJson(raw, writer);
-            } catch (Exception e) {
-                getLogger().warning("Failed to save XP stats: " + e.getMessage());
+    private ClusterTransport createClusterTransport(String nodeId) {
+        if (config.clusterTransport() == XPConfig.ClusterTransportType.LOOPBACK) {
+            return new LoopbackTransport("xpoptimizer", nodeId);
+        }
+        InetSocketAddress bind = SocketTransport.parseAddress(config.clusterBind());
+        if (bind == null) {
+            getLogger().warning("Invalid cluster.bind '" + config.clusterBind() + "', disabling cluster mode");
+            return null;
+        }
+        List<InetSocketAddress> peers = new ArrayList<>();
+        for (String peer : config.clusterPeers()) {
+            InetSocketAddress address = SocketTransport.parseAddress(peer);
+            if (address == null) {
+                getLogger().warning("Ignoring invalid cluster peer '" + peer + "'");
+            } else {
+                peers.add(address);
             }
         }
+        return new SocketTransport(nodeId, bind, peers, config.clusterSecret(), getLogger());
+    }
+
+    private void loadStats() {
+        StatsIoEvent event = new StatsIoEvent();
+        event.begin();
+        long bytes = xpStats.ioBytes();
+        xpStats.load();
+        windowStatsFile.load(windowStats);
+        commitStatsIo(event, "load", bytes);
+    }
+
+    /** Returns false if either store failed to write, so the I/O executor keeps the state dirty. */
+    private boolean saveStats() {
+        StatsIoEvent event = new StatsIoEvent();
+        event.begin();
+        long bytes = xpStats.ioBytes();
+        long start = System.nanoTime();
+        boolean saved = xpStats.save();
+        saved &= windowStatsFile.save(windowStats);
+        metrics.recordSave(System.nanoTime() - start);
+        commitStatsIo(event, "save", bytes);
+        return saved;
+    }
+
+    private void commitStatsIo(StatsIoEvent event, String operation, long bytesBefore) {
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.operation = operation;
+        event.backend = xpStats.backend().name();
+        event.entries = xpStats.size();
+        event.bytes = xpStats.ioBytes() - bytesBefore;
+        event.commit();
+    }
+
+    private static int currentEpochDay() {
+        return (int) LocalDate.now().toEpochDay();
     }
 }
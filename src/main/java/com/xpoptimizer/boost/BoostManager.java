@@ -0,0 +1,188 @@
+package com.xpoptimizer.boost;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-player XP boosts, stackable by source, expired through a hashed timing wheel.
+ * <p>
+ * Each player with boosts has one entry holding the product of its active multipliers, so the
+ * deposit path reads a cached {@code double} after one map lookup no matter how many boosts are
+ * stacked. Every boost is linked into the wheel slot of its expiry tick; {@link #advance} visits
+ * only the slots for ticks that passed, so expiry costs O(expired) rather than a scan of every
+ * boost. A slot also holds boosts due a whole wheel turn or more later; those are skipped, and
+ * {@link #WHEEL_SIZE} is chosen so that is rare for typical durations.
+ * <p>
+ * Mutations take the manager's lock; {@link #multiplier} never does.
+ */
+public final class BoostManager {
+
+    /** Source used by the single-boost API; setting it replaces the previous default boost. */
+    public static final String DEFAULT_SOURCE = "default";
+
+    /** Ticks per wheel turn (about 3.4 minutes). Must be a power of two. */
+    private static final int WHEEL_SIZE = 4096;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    public record ActiveBoost(String source, double multiplier, long expiresAtTick) {}
+
+    private static final class Boost {
+        final PlayerBoosts owner;
+        final String source;
+        final double multiplier;
+        final long expiresAt;
+        Boost prev, next;
+
+        Boost(PlayerBoosts owner, String source, double multiplier, long expiresAt) {
+            this.owner = owner;
+            this.source = source;
+            this.multiplier = multiplier;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class PlayerBoosts {
+        final UUID playerId;
+        /** Product of every active boost; the only field the deposit path reads. */
+        volatile double effective = 1.0;
+        /** Usually one or two entries, so a list beats a map here. */
+        final List<Boost> active = new ArrayList<>(2);
+
+        PlayerBoosts(UUID playerId) {
+            this.playerId = playerId;
+        }
+    }
+
+    private final Map<UUID, PlayerBoosts> players = new ConcurrentHashMap<>();
+    private final Boost[] wheel = new Boost[WHEEL_SIZE];
+    private long lastTick;
+    private int boostCount;
+
+    public BoostManager(long currentTick) {
+        this.lastTick = currentTick;
+    }
+
+    /** The player's combined multiplier, 1.0 without boosts. Lock-free. */
+    public double multiplier(UUID playerId) {
+        PlayerBoosts boosts = players.get(playerId);
+        return boosts != null ? boosts.effective : 1.0;
+    }
+
+    /**
+     * Adds a boost that lasts {@code durationTicks} from {@code currentTick}, replacing any boost
+     * from the same source. Boosts from different sources multiply.
+     */
+    public synchronized void set(UUID playerId, String source, double multiplier, long durationTicks, long currentTick) {
+        PlayerBoosts boosts = players.computeIfAbsent(playerId, PlayerBoosts::new);
+        Boost old = find(boosts, source);
+        if (old != null) unlink(old);
+        if (durationTicks <= 0) {
+            recompute(boosts);
+            return;
+        }
+        // Never schedule into a slot advance() has already passed
+        long expiresAt = Math.max(currentTick, lastTick) + durationTicks;
+        Boost boost = new Boost(boosts, source, multiplier, expiresAt);
+        boosts.active.add(boost);
+        link(boost);
+        recompute(boosts);
+    }
+
+    /** Removes the boost from {@code source}, if any. */
+    public synchronized void clear(UUID playerId, String source) {
+        PlayerBoosts boosts = players.get(playerId);
+        if (boosts == null) return;
+        Boost boost = find(boosts, source);
+        if (boost == null) return;
+        unlink(boost);
+        recompute(boosts);
+    }
+
+    /** Removes every boost the player has. */
+    public synchronized void clearAll(UUID playerId) {
+        PlayerBoosts boosts = players.get(playerId);
+        if (boosts == null) return;
+        for (int i = boosts.active.size() - 1; i >= 0; i--) unlink(boosts.active.get(i));
+        recompute(boosts);
+    }
+
+    public synchronized List<ActiveBoost> active(UUID playerId) {
+        PlayerBoosts boosts = players.get(playerId);
+        if (boosts == null) return List.of();
+        List<ActiveBoost> result = new ArrayList<>(boosts.active.size());
+        for (Boost b : boosts.active) result.add(new ActiveBoost(b.source, b.multiplier, b.expiresAt));
+        return result;
+    }
+
+    /** Total boosts across all players. */
+    public synchronized int size() {
+        return boostCount;
+    }
+
+    /**
+     * Expires every boost due at or before {@code currentTick}. Call once per tick; after a longer
+     * gap each slot is still visited at most once.
+     */
+    public synchronized void advance(long currentTick) {
+        long from = lastTick + 1;
+        if (currentTick < from) return;
+        long to = Math.min(currentTick, lastTick + WHEEL_SIZE);
+        for (long tick = from; tick <= to; tick++) {
+            Boost b = wheel[(int) (tick & WHEEL_MASK)];
+            while (b != null) {
+                Boost next = b.next;
+                if (b.expiresAt <= currentTick) {
+                    unlink(b);
+                    recompute(b.owner);
+                }
+                b = next;
+            }
+        }
+        lastTick = currentTick;
+    }
+
+    // --- Internals (caller holds the lock) ---
+
+    private static Boost find(PlayerBoosts boosts, String source) {
+        for (Boost b : boosts.active) {
+            if (b.source.equals(source)) return b;
+        }
+        return null;
+    }
+
+    private void link(Boost b) {
+        int slot = (int) (b.expiresAt & WHEEL_MASK);
+        b.prev = null;
+        b.next = wheel[slot];
+        if (b.next != null) b.next.prev = b;
+        wheel[slot] = b;
+        boostCount++;
+    }
+
+    /** Removes the boost from both its wheel slot and its player's list. */
+    private void unlink(Boost b) {
+        if (b.prev != null) {
+            b.prev.next = b.next;
+        } else {
+            wheel[(int) (b.expiresAt & WHEEL_MASK)] = b.next;
+        }
+        if (b.next != null) b.next.prev = b.prev;
+        b.prev = b.next = null;
+        b.owner.active.remove(b);
+        boostCount--;
+    }
+
+    private void recompute(PlayerBoosts boosts) {
+        if (boosts.active.isEmpty()) {
+            boosts.effective = 1.0;
+            players.remove(boosts.playerId, boosts);
+            return;
+        }
+        double product = 1.0;
+        for (Boost b : boosts.active) product *= b.multiplier;
+        boosts.effective = product;
+    }
+}
@@ -0,0 +1,128 @@
+package com.xpoptimizer.cache;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Bounded, persistent UUID <-> name cache shared by every command path.
+ * <p>
+ * Names are learned on join and from resolved offline lookups. The least recently used entries
+ * are evicted once {@code maxEntries} is reached. The cache is written to {@code names.dat} on
+ * auto-save only when something changed.
+ */
+public final class PlayerNameCache {
+
+    private static final int FILE_MAGIC = 0x58504E31; // "XPN1"
+
+    private final Path file;
+    private final Logger logger;
+    private final Map<String, UUID> idsByName = new HashMap<>();
+    private final LinkedHashMap<UUID, String> namesById = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, String> eldest) {
+            if (size() <= maxEntries) return false;
+            idsByName.remove(eldest.getValue().toLowerCase(Locale.ROOT), eldest.getKey());
+            return true;
+        }
+    };
+    private int maxEntries;
+    private boolean dirty;
+
+    public PlayerNameCache(File dataFolder, int maxEntries, Logger logger) {
+        this.file = dataFolder.toPath().resolve("names.dat");
+        this.maxEntries = maxEntries;
+        this.logger = logger;
+    }
+
+    public synchronized void learn(UUID id, String name) {
+        if (name == null || name.isEmpty()) return;
+        String old = namesById.put(id, name);
+        if (name.equals(old)) return;
+        if (old != null) idsByName.remove(old.toLowerCase(Locale.ROOT), id);
+        idsByName.put(name.toLowerCase(Locale.ROOT), id);
+        dirty = true;
+    }
+
+    /** Returns the last known name for the player, or null if it has never been seen. */
+    public synchronized String getName(UUID id) {
+        return namesById.get(id);
+    }
+
+    /** Case-insensitive reverse lookup; returns null if no cached player has this name. */
+    public synchronized UUID getId(String name) {
+        UUID id = idsByName.get(name.toLowerCase(Locale.ROOT));
+        if (id != null) namesById.get(id); // touch for LRU order
+        return id;
+    }
+
+    public synchronized int size() {
+        return namesById.size();
+    }
+
+    public synchronized void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        Iterator<Map.Entry<UUID, String>> it = namesById.entrySet().iterator();
+        while (namesById.size() > maxEntries && it.hasNext()) {
+            Map.Entry<UUID, String> eldest = it.next();
+            idsByName.remove(eldest.getValue().toLowerCase(Locale.ROOT), eldest.getKey());
+            it.remove();
+            dirty = true;
+        }
+    }
+
+    // --- Persistence ---
+
+    public void load() {
+        if (!Files.exists(file)) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC) {
+                logger.warning("Ignoring names.dat with an unknown format");
+                return;
+            }
+            int count = in.readInt();
+            synchronized (this) {
+                // Stored least recently used first, so replaying keeps the LRU order
+                for (int i = 0; i < count; i++) {
+                    UUID id = new UUID(in.readLong(), in.readLong());
+                    learn(id, in.readUTF());
+                }
+                dirty = false;
+            }
+        } catch (IOException e) {
+            logger.warning("Failed to load name cache: " + e.getMessage());
+        }
+    }
+
+    /** Writes the cache if it changed since the last save. Safe to call off the main thread. */
+    public void save() {
+        List<Map.Entry<UUID, String>> snapshot;
+        synchronized (this) {
+            if (!dirty) return;
+            snapshot = new ArrayList<>(namesById.entrySet().size());
+            for (Map.Entry<UUID, String> e : namesById.entrySet()) snapshot.add(Map.entry(e.getKey(), e.getValue()));
+            dirty = false;
+        }
+
+        Path tmp = file.resolveSibling("names.dat.tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<UUID, String> e : snapshot) {
+                    out.writeLong(e.getKey().getMostSignificantBits());
+                    out.writeLong(e.getKey().getLeastSignificantBits());
+                    out.writeUTF(e.getValue());
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            synchronized (this) {
+                dirty = true;
+            }
+            logger.warning("Failed to save name cache: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package com.xpoptimizer.cluster;
+
+import com.xpoptimizer.stats.StatsStore;
+import com.xpoptimizer.stats.XPLeaderboard;
+import com.xpoptimizer.stats.XPStatsStore;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+
+/**
+ * Cluster-wide lifetime totals, merged on every node from the increments of all the others.
+ * <p>
+ * Local deposits only add to a coalescing table. Every sync interval {@link #sync} drains it into
+ * one DELTA message per batch, so traffic follows the number of players who collected XP in the
+ * interval rather than the number of orbs. Each node keeps one contribution table per origin
+ * node and a merged table with a {@link XPLeaderboard} over it, so the global top list is a local
+ * read.
+ * <p>
+ * Every message from an origin carries that node's epoch (random per start) and a sequence
+ * number. A receiver that sees a new epoch or a gap asks the origin for a SNAPSHOT of its whole
+ * contribution, replaces its table with it, then replays the deltas that arrived meanwhile.
+ * Requests and snapshots in reply to a message go to its origin only. A starting node asks every
+ * peer for a snapshot, so nothing needs to be persisted.
+ * <p>
+ * Every node holds every origin's whole contribution, so cluster mode is only used with the
+ * JOURNAL backend, which holds its own totals in heap anyway.
+ *
+ * <pre>
+ * DELTA:    byte 1, origin, long epoch, long seq, int n, n * (long msb, long lsb, long delta)
+ * REQUEST:  byte 2, origin, target ("*" for every node)
+ * SNAPSHOT: byte 3, origin, long epoch, long seq, int part, byte last, int n, n * (msb, lsb, total)
+ * </pre>
+ * A DELTA entry whose delta is {@link #RESET} sets the origin's contribution for that player to 0.
+ */
+public final class ClusterStats {
+
+    private static final byte DELTA = 1;
+    private static final byte REQUEST = 2;
+    private static final byte SNAPSHOT = 3;
+    private static final long RESET = Long.MIN_VALUE;
+    private static final String EVERY_NODE = "*";
+    private static final int ENTRIES_PER_MESSAGE = 16_384;
+    private static final int MAX_BUFFERED_DELTAS = 256;
+    private static final long REQUEST_RETRY_NANOS = 5_000_000_000L;
+
+    /** What this node knows about one origin. */
+    private static final class Origin {
+        final XPStatsStore contribution = new XPStatsStore();
+        long epoch;
+        long nextSeq;
+        /** Set while waiting for a snapshot; deltas are buffered instead of applied. */
+        boolean syncing;
+        long requestedAt;
+        final ArrayDeque<long[]> buffered = new ArrayDeque<>();
+        /** Snapshot being assembled from its parts. */
+        XPStatsStore incoming;
+        int incomingPart;
+    }
+
+    private final String nodeId;
+    private final byte[] nodeIdBytes;
+    private final ClusterTransport transport;
+    private final Logger logger;
+    private final long epoch = ThreadLocalRandom.current().nextLong();
+    private volatile boolean sharedIdLogged;
+
+    /** Increments since the last sync. The only structure the deposit path touches. */
+    private final XPStatsStore outgoing = new XPStatsStore();
+    private final Object resetLock = new Object();
+    private long[] resets = new long[8];
+    private int resetCount;
+
+    // Guarded by this
+    private final Map<String, Origin> origins = new HashMap<>();
+    private final Origin self = new Origin();
+    private final XPLeaderboard leaderboard = new XPLeaderboard();
+    private final XPStatsStore merged = new XPStatsStore(leaderboard);
+    private long seq;
+
+    public ClusterStats(String nodeId, ClusterTransport transport, Logger logger) {
+        this.nodeId = nodeId;
+        this.nodeIdBytes = nodeId.getBytes(StandardCharsets.UTF_8);
+        this.transport = transport;
+        this.logger = logger;
+        self.epoch = epoch;
+    }
+
+    /**
+     * Seeds this node's own contribution from its lifetime stats. Reads every total, so
+     * {@code local} must be the in-heap JOURNAL store. Call before {@link #start}.
+     */
+    public synchronized void seed(StatsStore local) {
+        local.forEach((msb, lsb, total) -> {
+            self.contribution.add(msb, lsb, total);
+            merged.add(msb, lsb, total);
+        });
+    }
+
+    /** Connects and asks every peer for its contribution. */
+    public void start() {
+        transport.start(this::receive);
+        transport.publish(encodeRequest(EVERY_NODE));
+    }
+
+    public void close() {
+        transport.close();
+    }
+
+    public void add(UUID id, long amount) {
+        outgoing.add(id, amount);
+    }
+
+    /** Clears this node's contribution for the player, cluster-wide, at the next sync. */
+    public void reset(UUID id) {
+        synchronized (resetLock) {
+            outgoing.remove(id);
+            if (resetCount + 2 > resets.length) resets = Arrays.copyOf(resets, resets.length * 2);
+            resets[resetCount++] = id.getMostSignificantBits();
+            resets[resetCount++] = id.getLeastSignificantBits();
+        }
+    }
+
+    /** Applies this node's increments locally and publishes them. Runs on the async timer. */
+    public void sync() {
+        long[] entries;
+        synchronized (resetLock) {
+            if (resetCount == 0 && outgoing.size() == 0) return;
+            Batch batch = new Batch((resetCount / 2 + outgoing.size()) * 3 + 48);
+            for (int i = 0; i < resetCount; i += 2) batch.add(resets[i], resets[i + 1], RESET);
+            resetCount = 0;
+            // Deposits keep arriving while the stripes drain, so the batch may grow
+            outgoing.drainAll(batch::add);
+            entries = batch.toArray();
+        }
+
+        List<byte[]> messages = new ArrayList<>();
+        synchronized (this) {
+            apply(self, entries);
+            for (int from = 0; from < entries.length; from += ENTRIES_PER_MESSAGE * 3) {
+                int to = Math.min(entries.length, from + ENTRIES_PER_MESSAGE * 3);
+                messages.add(encodeDelta(++seq, entries, from, to));
+            }
+        }
+        for (byte[] message : messages) transport.publish(message);
+        leaderboard.applyPending();
+    }
+
+    public synchronized long get(UUID id) {
+        return merged.get(id);
+    }
+
+    public List<XPLeaderboard.Ranked> top(int count) {
+        return leaderboard.top(count);
+    }
+
+    public int rankOf(UUID id) {
+        long total = get(id);
+        return total > 0 ? leaderboard.rankOf(id, total) : 0;
+    }
+
+    /** Nodes whose contribution is merged, this one included. */
+    public synchronized int nodeCount() {
+        return origins.size() + 1;
+    }
+
+    public int connectedPeers() {
+        return transport.connectedPeers();
+    }
+
+    // --- Receiving ---
+
+    private void receive(byte[] message) {
+        // Every reply, whether a snapshot request or a snapshot, is for the message's origin only
+        List<byte[]> replies = new ArrayList<>(0);
+        String origin = null;
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(message);
+            byte type = buf.get();
+            origin = readString(buf);
+            if (origin.equals(nodeId)) {
+                // Transports never hand a node its own messages, so another node uses our id
+                if (!sharedIdLogged) {
+                    sharedIdLogged = true;
+                    logger.severe("Cluster: another server uses this server's node id '" + nodeId
+                            + "'; its XP is left out of the global leaderboard until every cluster.node-id differs");
+                }
+                return;
+            }
+            synchronized (this) {
+                switch (type) {
+                    case DELTA -> onDelta(origin, buf, replies);
+                    case REQUEST -> {
+                        origins.computeIfAbsent(origin, n -> new Origin());
+                        onRequest(readString(buf), replies);
+                    }
+                    case SNAPSHOT -> onSnapshot(origin, buf, replies);
+                    default -> logger.warning("Cluster: unknown message type " + type + " from " + origin);
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            logger.warning("Cluster: dropping malformed message: " + e);
+        }
+        for (byte[] reply : replies) transport.send(origin, reply);
+    }
+
+    private void onDelta(String name, ByteBuffer buf, List<byte[]> replies) {
+        long msgEpoch = buf.getLong();
+        long msgSeq = buf.getLong();
+        long[] entries = readEntries(buf);
+        Origin origin = origins.computeIfAbsent(name, n -> new Origin());
+
+        if (!origin.syncing && msgEpoch == origin.epoch && msgSeq == origin.nextSeq) {
+            apply(origin, entries);
+            origin.nextSeq++;
+            return;
+        }
+        if (!origin.syncing && msgEpoch == origin.epoch && msgSeq < origin.nextSeq) return; // duplicate
+
+        // New epoch or a gap: fetch the whole contribution, keeping what arrives meanwhile
+        if (origin.buffered.size() < MAX_BUFFERED_DELTAS) {
+            origin.buffered.add(withHeader(msgEpoch, msgSeq, entries));
+        }
+        requestSnapshot(name, origin, replies);
+    }
+
+    private void onRequest(String target, List<byte[]> replies) {
+        if (!target.equals(EVERY_NODE) && !target.equals(nodeId)) return;
+        // Snapshot and seq read under one lock, so the receiver's replay starts exactly after it
+        Batch batch = new Batch(self.contribution.size() * 3 + 3);
+        self.contribution.forEach(batch::add);
+        long[] entries = batch.toArray();
+        int part = 0;
+        int from = 0;
+        do {
+            int to = Math.min(entries.length, from + ENTRIES_PER_MESSAGE * 3);
+            replies.add(encodeSnapshot(seq, part++, to == entries.length, entries, from, to));
+            from = to;
+        } while (from < entries.length);
+    }
+
+    private void onSnapshot(String name, ByteBuffer buf, List<byte[]> replies) {
+        long msgEpoch = buf.getLong();
+        long msgSeq = buf.getLong();
+        int part = buf.getInt();
+        boolean last = buf.get() != 0;
+        long[] entries = readEntries(buf);
+        Origin origin = origins.computeIfAbsent(name, n -> new Origin());
+
+        if (part == 0) {
+            origin.incoming = new XPStatsStore();
+            origin.incomingPart = 0;
+        } else if (origin.incoming == null || part != origin.incomingPart + 1) {
+            origin.incoming = null;
+            requestSnapshot(name, origin, replies);
+            return;
+        }
+        origin.incomingPart = part;
+        for (int i = 0; i < entries.length; i += 3) origin.incoming.add(entries[i], entries[i + 1], entries[i + 2]);
+        if (!last) return;
+
+        replaceContribution(origin, origin.incoming);
+        origin.incoming = null;
+        origin.epoch = msgEpoch;
+        origin.nextSeq = msgSeq + 1;
+        origin.syncing = false;
+
+        // Replay deltas that arrived while the snapshot was on its way
+        long[] next;
+        while ((next = origin.buffered.poll()) != null) {
+            if (next[0] != msgEpoch || next[1] < origin.nextSeq) continue;
+            if (next[1] != origin.nextSeq) {
+                origin.buffered.clear();
+                requestSnapshot(name, origin, replies);
+                return;
+            }
+            apply(origin, Arrays.copyOfRange(next, 2, next.length));
+            origin.nextSeq++;
+        }
+    }
+
+    private void requestSnapshot(String name, Origin origin, List<byte[]> replies) {
+        long now = System.nanoTime();
+        if (origin.syncing && now - origin.requestedAt < REQUEST_RETRY_NANOS) return;
+        origin.syncing = true;
+        origin.requestedAt = now;
+        replies.add(encodeRequest(name));
+    }
+
+    // --- Merging (caller holds this) ---
+
+    private void apply(Origin origin, long[] entries) {
+        for (int i = 0; i < entries.length; i += 3) {
+            long msb = entries[i], lsb = entries[i + 1], delta = entries[i + 2];
+            if (delta == RESET) {
+                long old = origin.contribution.remove(new UUID(msb, lsb));
+                if (old != 0) addMerged(msb, lsb, -old);
+            } else {
+                origin.contribution.add(msb, lsb, delta);
+                addMerged(msb, lsb, delta);
+            }
+        }
+    }
+
+    private void replaceContribution(Origin origin, XPStatsStore fresh) {
+        origin.contribution.forEach((msb, lsb, old) -> {
+            long now = fresh.get(new UUID(msb, lsb));
+            if (now != old) addMerged(msb, lsb, now - old);
+        });
+        fresh.forEach((msb, lsb, now) -> {
+            if (origin.contribution.get(new UUID(msb, lsb)) == 0) addMerged(msb, lsb, now);
+        });
+        origin.contribution.drainAll((msb, lsb, total) -> {});
+        fresh.forEach(origin.contribution::add);
+    }
+
+    /** Adds to the merged total, dropping players whose cluster-wide total falls to 0. */
+    private void addMerged(long msb, long lsb, long delta) {
+        if (merged.add(msb, lsb, delta) <= 0) merged.remove(new UUID(msb, lsb));
+    }
+
+    // --- Encoding ---
+
+    private byte[] encodeDelta(long msgSeq, long[] entries, int from, int to) {
+        ByteBuffer buf = header(DELTA, 16 + 4 + (to - from) * 8);
+        buf.putLong(epoch).putLong(msgSeq);
+        putEntries(buf, entries, from, to);
+        return buf.array();
+    }
+
+    private byte[] encodeRequest(String target) {
+        byte[] t = target.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = header(REQUEST, 2 + t.length);
+        buf.putShort((short) t.length).put(t);
+        return buf.array();
+    }
+
+    private byte[] encodeSnapshot(long msgSeq, int part, boolean last, long[] entries, int from, int to) {
+        ByteBuffer buf = header(SNAPSHOT, 16 + 4 + 1 + 4 + (to - from) * 8);
+        buf.putLong(epoch).putLong(msgSeq).putInt(part).put((byte) (last ? 1 : 0));
+        putEntries(buf, entries, from, to);
+        return buf.array();
+    }
+
+    private ByteBuffer header(byte type, int bodyBytes) {
+        ByteBuffer buf = ByteBuffer.allocate(1 + 2 + nodeIdBytes.length + bodyBytes);
+        buf.put(type).putShort((short) nodeIdBytes.length).put(nodeIdBytes);
+        return buf;
+    }
+
+    private static void putEntries(ByteBuffer buf, long[] entries, int from, int to) {
+        buf.putInt((to - from) / 3);
+        for (int i = from; i < to; i++) buf.putLong(entries[i]);
+    }
+
+    private static long[] readEntries(ByteBuffer buf) {
+        int n = buf.getInt();
+        if (n < 0 || n > buf.remaining() / 24) throw new IllegalArgumentException("bad entry count " + n);
+        long[] entries = new long[n * 3];
+        for (int i = 0; i < entries.length; i++) entries[i] = buf.getLong();
+        return entries;
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int length = buf.getShort() & 0xFFFF;
+        if (length > buf.remaining()) throw new IllegalArgumentException("bad string length " + length);
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** (msb, lsb, value) triples gathered into one array. */
+    private static final class Batch {
+        private long[] entries;
+        private int size;
+
+        Batch(int capacity) {
+            entries = new long[capacity];
+        }
+
+        void add(long msb, long lsb, long value) {
+            if (size + 3 > entries.length) entries = Arrays.copyOf(entries, entries.length * 2);
+            entries[size++] = msb;
+            entries[size++] = lsb;
+            entries[size++] = value;
+        }
+
+        long[] toArray() {
+            return size == entries.length ? entries : Arrays.copyOf(entries, size);
+        }
+    }
+
+    /** Prefixes entries with their epoch and seq, for buffering until a snapshot lands. */
+    private static long[] withHeader(long msgEpoch, long msgSeq, long[] entries) {
+        long[] out = new long[entries.length + 2];
+        out[0] = msgEpoch;
+        out[1] = msgSeq;
+        System.arraycopy(entries, 0, out, 2, entries.length);
+        return out;
+    }
+}
@@ -0,0 +1,32 @@
+package com.xpoptimizer.cluster;
+
+/**
+ * Carries {@link ClusterStats} messages between nodes: broadcasts to every other node, and replies
+ * to one node by id, in order per sender. Messages may be lost: the protocol notices the gap and
+ * resynchronises.
+ */
+public interface ClusterTransport {
+
+    @FunctionalInterface
+    interface Receiver {
+        /** Called on a transport thread with one message from another node. */
+        void receive(byte[] message);
+    }
+
+    /** Starts delivering messages from other nodes to {@code receiver}. */
+    void start(Receiver receiver);
+
+    /** Queues {@code message} for every other node. Never blocks on the network. */
+    void publish(byte[] message);
+
+    /**
+     * Queues {@code message} for the node with this id only. Falls back to {@link #publish} while
+     * the transport does not yet know which peer that is. Never blocks on the network.
+     */
+    void send(String node, byte[] message);
+
+    /** Peers currently reachable, for metrics. */
+    int connectedPeers();
+
+    void close();
+}
@@ -0,0 +1,78 @@
+package com.xpoptimizer.cluster;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process transport: every node on the same named hub in this JVM receives the others'
+ * messages. Used to exercise cluster mode on one machine; each node delivers on its own thread,
+ * so a receiver may publish a reply without re-entering the sender.
+ */
+public final class LoopbackTransport implements ClusterTransport {
+
+    private static final Map<String, Set<LoopbackTransport>> HUBS = new ConcurrentHashMap<>();
+
+    private final String hub;
+    private final String nodeId;
+    private final ExecutorService delivery;
+    private volatile Receiver receiver;
+
+    public LoopbackTransport(String hub, String nodeId) {
+        this.hub = hub;
+        this.nodeId = nodeId;
+        this.delivery = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "XPOptimizer Cluster Loopback");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public void start(Receiver receiver) {
+        this.receiver = receiver;
+        HUBS.computeIfAbsent(hub, h -> new CopyOnWriteArraySet<>()).add(this);
+    }
+
+    @Override
+    public void publish(byte[] message) {
+        Set<LoopbackTransport> nodes = HUBS.get(hub);
+        if (nodes == null) return;
+        for (LoopbackTransport node : nodes) {
+            if (node != this) node.deliver(message);
+        }
+    }
+
+    @Override
+    public void send(String node, byte[] message) {
+        Set<LoopbackTransport> nodes = HUBS.get(hub);
+        if (nodes == null) return;
+        for (LoopbackTransport other : nodes) {
+            if (other != this && other.nodeId.equals(node)) {
+                other.deliver(message);
+                return;
+            }
+        }
+    }
+
+    private void deliver(byte[] message) {
+        Receiver r = receiver;
+        if (r != null && !delivery.isShutdown()) delivery.execute(() -> r.receive(message));
+    }
+
+    @Override
+    public int connectedPeers() {
+        Set<LoopbackTransport> nodes = HUBS.get(hub);
+        return nodes == null ? 0 : Math.max(0, nodes.size() - 1);
+    }
+
+    @Override
+    public void close() {
+        Set<LoopbackTransport> nodes = HUBS.get(hub);
+        if (nodes != null) nodes.remove(this);
+        delivery.shutdown();
+    }
+}
@@ -0,0 +1,368 @@
+package com.xpoptimizer.cluster;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * TCP transport for a fixed list of nodes. Each node listens on one address and keeps one
+ * outbound connection to every peer, reconnecting with backoff when a peer goes away.
+ * <p>
+ * Frames are {@code int length, payload, HMAC-SHA256(secret, payload)}; a frame whose MAC does not
+ * match closes the connection. Outbound messages wait in a bounded queue per peer; while a peer
+ * is unreachable the oldest are dropped, which its receiver sees as a sequence gap and repairs
+ * with a snapshot.
+ * <p>
+ * Connections carry messages one way after a handshake. The accepting node writes a hello with its
+ * id and a fresh nonce, so the connecting side learns which node each peer address is and
+ * {@link #send} can address it. The connecting node answers with its own id and that nonce, and
+ * no frame larger than a hello is read before the answer authenticates. Only configured peer
+ * addresses may connect, with at most one unauthenticated connection per peer at a time.
+ */
+public final class SocketTransport implements ClusterTransport {
+
+    private static final int MAC_BYTES = 32;
+    private static final int MAX_FRAME_BYTES = 16 << 20;
+    private static final int HELLO_MAX_BYTES = 1024;
+    private static final int NONCE_BYTES = 16;
+    private static final byte HELLO_ACCEPT = 1;
+    private static final byte HELLO_CONNECT = 2;
+    private static final long REFUSAL_LOG_INTERVAL_MILLIS = 60_000;
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5_000;
+    private static final long RECONNECT_MIN_MILLIS = 1_000;
+    private static final long RECONNECT_MAX_MILLIS = 30_000;
+
+    private final String nodeId;
+    private final InetSocketAddress bind;
+    private final List<InetSocketAddress> peerAddresses;
+    private final SecretKeySpec key;
+    private final Logger logger;
+    private final List<Peer> peers = new ArrayList<>();
+    /** Inbound connections still in the handshake. */
+    private final Set<Socket> pending = ConcurrentHashMap.newKeySet();
+    /** Authenticated inbound connection of each node. */
+    private final Map<String, Socket> inbound = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private long lastRefusalLog;
+    private volatile boolean running;
+    private volatile Receiver receiver;
+    private ServerSocket server;
+
+    public SocketTransport(String nodeId, InetSocketAddress bind, List<InetSocketAddress> peers, String secret,
+                           Logger logger) {
+        this.nodeId = nodeId;
+        this.bind = bind;
+        this.peerAddresses = List.copyOf(peers);
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        this.logger = logger;
+    }
+
+    /** Parses {@code host:port}; returns null if malformed. */
+    public static InetSocketAddress parseAddress(String hostPort) {
+        int colon = hostPort.lastIndexOf(':');
+        if (colon <= 0 || colon == hostPort.length() - 1) return null;
+        try {
+            int port = Integer.parseInt(hostPort.substring(colon + 1).trim());
+            if (port < 1 || port > 65535) return null;
+            return InetSocketAddress.createUnresolved(hostPort.substring(0, colon).trim(), port);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void start(Receiver receiver) {
+        this.receiver = receiver;
+        running = true;
+        try {
+            server = new ServerSocket();
+            server.setReuseAddress(true);
+            server.bind(new InetSocketAddress(bind.getHostString(), bind.getPort()));
+        } catch (IOException e) {
+            logger.warning("Cluster: cannot listen on " + bind + ": " + e.getMessage());
+        }
+        if (server != null && server.isBound()) daemon("XPOptimizer Cluster Accept", this::acceptLoop).start();
+
+        for (InetSocketAddress address : peerAddresses) {
+            Peer peer = new Peer(address);
+            peers.add(peer);
+            peer.thread.start();
+        }
+    }
+
+    @Override
+    public void publish(byte[] message) {
+        for (Peer peer : peers) peer.enqueue(message);
+    }
+
+    @Override
+    public void send(String node, byte[] message) {
+        for (Peer peer : peers) {
+            if (node.equals(peer.remoteId)) {
+                peer.enqueue(message);
+                return;
+            }
+        }
+        publish(message);
+    }
+
+    @Override
+    public int connectedPeers() {
+        int count = 0;
+        for (Peer peer : peers) {
+            if (peer.connected) count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        closeQuietly(server);
+        for (Socket socket : pending) closeQuietly(socket);
+        for (Socket socket : inbound.values()) closeQuietly(socket);
+        for (Peer peer : peers) {
+            peer.thread.interrupt();
+            closeQuietly(peer.socket);
+        }
+    }
+
+    // --- Inbound ---
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = server.accept();
+                if (!fromPeer(socket.getInetAddress())) {
+                    refuse(socket, "not a configured peer");
+                    continue;
+                }
+                if (pending.size() >= peerAddresses.size()) {
+                    refuse(socket, "too many connections in the handshake");
+                    continue;
+                }
+                socket.setTcpNoDelay(true);
+                pending.add(socket);
+                daemon("XPOptimizer Cluster Reader", () -> readLoop(socket)).start();
+            } catch (IOException e) {
+                if (running) logger.warning("Cluster: accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /** Whether {@code address} is one of the addresses a configured peer resolves to. */
+    private boolean fromPeer(InetAddress address) {
+        for (InetSocketAddress peer : peerAddresses) {
+            try {
+                for (InetAddress candidate : InetAddress.getAllByName(peer.getHostString())) {
+                    if (candidate.equals(address)) return true;
+                }
+            } catch (UnknownHostException ignored) {}
+        }
+        return false;
+    }
+
+    /** Closes a connection that is not let in; logged at most once a minute so scans cannot flood the log. */
+    private void refuse(Socket socket, String reason) {
+        long now = System.currentTimeMillis();
+        if (now - lastRefusalLog >= REFUSAL_LOG_INTERVAL_MILLIS) {
+            lastRefusalLog = now;
+            logger.warning("Cluster: refusing connection from " + socket.getRemoteSocketAddress() + ": " + reason);
+        }
+        closeQuietly(socket);
+    }
+
+    private void readLoop(Socket socket) {
+        Mac mac = newMac();
+        String remoteId = null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            // Tell the connecting side who we are; nothing else is ever written on this socket
+            byte[] nonce = new byte[NONCE_BYTES];
+            random.nextBytes(nonce);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            writeFrame(out, mac, hello(HELLO_ACCEPT, nonce, nodeId));
+            out.flush();
+
+            // Only a hello-sized frame is read until the connecting side proves it has the secret
+            socket.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+            byte[] answer = readFrame(in, mac, HELLO_MAX_BYTES);
+            if (!Arrays.equals(answer, 1, Math.min(answer.length, 1 + NONCE_BYTES), nonce, 0, NONCE_BYTES)) {
+                throw new IOException("hello does not answer this connection");
+            }
+            String id = helloId(answer, HELLO_CONNECT);
+            socket.setSoTimeout(0);
+            if (id.equals(nodeId)) {
+                logger.severe("Cluster: " + socket.getRemoteSocketAddress() + " announces this server's own node id '"
+                        + nodeId + "'; every server needs a different cluster.node-id");
+                return;
+            }
+            if (!inbound.containsKey(id) && inbound.size() >= peerAddresses.size()) {
+                throw new IOException("more nodes connected than peers configured");
+            }
+            remoteId = id;
+            pending.remove(socket);
+            // A reconnect replaces the node's previous connection, which may have gone stale
+            closeQuietly(inbound.put(id, socket));
+
+            while (running) {
+                receiver.receive(readFrame(in, mac, MAX_FRAME_BYTES));
+            }
+        } catch (EOFException | SocketException e) {
+            // Peer closed or we are shutting down
+        } catch (IOException e) {
+            if (running) logger.warning("Cluster: dropping connection from " + socket.getRemoteSocketAddress() + ": " + e.getMessage());
+        } finally {
+            pending.remove(socket);
+            if (remoteId != null) inbound.remove(remoteId, socket);
+            closeQuietly(socket);
+        }
+    }
+
+    // --- Outbound ---
+
+    private final class Peer {
+        final InetSocketAddress address;
+        final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final Thread thread;
+        volatile Socket socket;
+        volatile boolean connected;
+        /** Id the peer sent when we last connected, or null before the first connection. */
+        volatile String remoteId;
+        /** Whether the peer was found announcing our own id; logged once, then retried slowly. */
+        boolean sameIdLogged;
+
+        Peer(InetSocketAddress address) {
+            this.address = address;
+            this.thread = daemon("XPOptimizer Cluster Writer " + address, this::writeLoop);
+        }
+
+        void enqueue(byte[] message) {
+            while (!queue.offer(message)) queue.poll(); // drop the oldest; the receiver resyncs
+        }
+
+        void writeLoop() {
+            Mac mac = newMac();
+            long backoff = RECONNECT_MIN_MILLIS;
+            while (running) {
+                try (Socket s = new Socket()) {
+                    socket = s;
+                    s.setTcpNoDelay(true);
+                    s.connect(new InetSocketAddress(address.getHostString(), address.getPort()), CONNECT_TIMEOUT_MILLIS);
+                    s.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+                    byte[] hello = readFrame(new DataInputStream(s.getInputStream()), mac, HELLO_MAX_BYTES);
+                    String id = helloId(hello, HELLO_ACCEPT);
+                    if (id.equals(nodeId)) {
+                        if (!sameIdLogged) {
+                            logger.severe("Cluster: peer " + address + " announces this server's own node id '" + nodeId
+                                    + "'; it is this server, or every server needs a different cluster.node-id");
+                        }
+                        sameIdLogged = true;
+                        backoff = RECONNECT_MAX_MILLIS;
+                        throw new IOException("peer has our node id");
+                    }
+                    remoteId = id;
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+                    writeFrame(out, mac, hello(HELLO_CONNECT, Arrays.copyOfRange(hello, 1, 1 + NONCE_BYTES), nodeId));
+                    out.flush();
+                    s.setSoTimeout(0);
+                    connected = true;
+                    backoff = RECONNECT_MIN_MILLIS;
+                    while (running) {
+                        byte[] message = queue.take();
+                        writeFrame(out, mac, message);
+                        // Flush once per burst rather than once per message
+                        while ((message = queue.poll()) != null) writeFrame(out, mac, message);
+                        out.flush();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException e) {
+                    if (connected) logger.warning("Cluster: lost connection to " + address + ": " + e.getMessage());
+                } finally {
+                    connected = false;
+                    socket = null;
+                }
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, RECONNECT_MAX_MILLIS);
+            }
+        }
+    }
+
+    /** Handshake payload: kind, the accepting side's nonce, then the sender's node id. */
+    private static byte[] hello(byte kind, byte[] nonce, String id) {
+        byte[] name = id.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(1 + NONCE_BYTES + name.length).put(kind).put(nonce).put(name).array();
+    }
+
+    /** The node id in a handshake payload of the given kind. */
+    private static String helloId(byte[] payload, byte kind) throws IOException {
+        if (payload.length <= 1 + NONCE_BYTES || payload[0] != kind) throw new IOException("bad hello");
+        return new String(payload, 1 + NONCE_BYTES, payload.length - 1 - NONCE_BYTES, StandardCharsets.UTF_8);
+    }
+
+    /** Reads one frame of at most {@code maxPayload} bytes and checks its MAC. */
+    private static byte[] readFrame(DataInputStream in, Mac mac, int maxPayload) throws IOException {
+        int length = in.readInt();
+        if (length < MAC_BYTES || length - MAC_BYTES > maxPayload) throw new IOException("bad frame length " + length);
+        byte[] payload = new byte[length - MAC_BYTES];
+        byte[] expected = new byte[MAC_BYTES];
+        in.readFully(payload);
+        in.readFully(expected);
+        if (!MessageDigest.isEqual(mac.doFinal(payload), expected)) throw new IOException("frame failed authentication");
+        return payload;
+    }
+
+    private static void writeFrame(DataOutputStream out, Mac mac, byte[] payload) throws IOException {
+        out.writeInt(payload.length + MAC_BYTES);
+        out.write(payload);
+        out.write(mac.doFinal(payload));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 unavailable", e);
+        }
+    }
+
+    private static Thread daemon(String name, Runnable task) {
+        Thread t = new Thread(task, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    private static void closeQuietly(Closeable c) {
+        if (c == null) return;
+        try {
+            c.close();
+        } catch (IOException ignored) {}
+    }
+}
@@ -2,6 +2,14 @@ package com.xpoptimizer.command;
 
 import com.xpoptimizer.XPConfig;
 import com.xpoptimizer.XPOptimizerPlugin;
+import com.xpoptimizer.cache.PlayerNameCache;
+import com.xpoptimizer.jfr.CommandEvent;
+import com.xpoptimizer.message.MessageArgs;
+import com.xpoptimizer.message.MessageTemplate;
+import com.xpoptimizer.message.Placeholder;
+import com.xpoptimizer.metrics.PluginMetrics;
+import com.xpoptimizer.stats.XPLeaderboard;
+import com.xpoptimizer.stats.XPWindowStats;
 import io.papermc.paper.command.brigadier.BasicCommand;
 import io.papermc.paper.command.brigadier.CommandSourceStack;
 import org.bukkit.OfflinePlayer;
@@ -9,6 +17,7 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.File;
 import java.util.*;
 
 @SuppressWarnings("UnstableApiUsage")
@@ -23,6 +32,28 @@ public class XPStatsCommand implements BasicCommand {
     @Override
     public void execute(@NotNull CommandSourceStack stack, @NotNull String[] args) {
         CommandSender sender = stack.getSender();
+        timed(sender, args.length == 0 ? "stats" : args[0].toLowerCase(), false, () -> dispatch(sender, args));
+    }
+
+    /** Runs {@code task} off the main thread, recorded as its own {@link CommandEvent}. */
+    private void runAsync(CommandSender sender, String subcommand, Runnable task) {
+        plugin.getPluginScheduler().runAsync(() -> timed(sender, subcommand, true, task));
+    }
+
+    private static void timed(CommandSender sender, String subcommand, boolean async, Runnable task) {
+        CommandEvent event = new CommandEvent();
+        event.begin();
+        task.run();
+        event.end();
+        if (event.shouldCommit()) {
+            event.subcommand = subcommand;
+            event.sender = sender.getName();
+            event.async = async;
+            event.commit();
+        }
+    }
+
+    private void dispatch(CommandSender sender, String[] args) {
         XPConfig cfg = plugin.getXPConfig();
 
         if (args.length == 0) {
@@ -34,6 +65,8 @@ public class XPStatsCommand implements BasicCommand {
             case "reload" -> handleReload(sender, cfg);
             case "top" -> handleTop(sender, cfg, args);
             case "reset" -> handleReset(sender, cfg, args);
+            case "metrics" -> handleMetrics(sender, cfg);
+            case "trace" -> handleTrace(sender, cfg, args);
             default -> handleStatsOther(sender, cfg, args[0]);
         }
     }
@@ -47,6 +80,8 @@ public class XPStatsCommand implements BasicCommand {
             if (sender.hasPermission("xpoptimizer.reload")) completions.add("reload");
             if (sender.hasPermission("xpoptimizer.stats")) completions.add("top");
             if (sender.hasPermission("xpoptimizer.reset")) completions.add("reset");
+            if (sender.hasPermission("xpoptimizer.metrics")) completions.add("metrics");
+            if (sender.hasPermission("xpoptimizer.trace")) completions.add("trace");
             if (sender.hasPermission("xpoptimizer.stats.others")) {
                 for (Player p : plugin.getServer().getOnlinePlayers()) {
                     completions.add(p.getName());
@@ -59,7 +94,12 @@ public class XPStatsCommand implements BasicCommand {
         if (args.length == 2) {
             String sub = args[0].toLowerCase();
             if (sub.equals("top")) {
-                return List.of("5", "10", "25");
+                return plugin.isClusterEnabled()
+                        ? List.of("day", "week", "month", "global", "5", "10", "25")
+                        : List.of("day", "week", "month", "5", "10", "25");
+            }
+            if (sub.equals("trace") && sender.hasPermission("xpoptimizer.trace")) {
+                return List.of("start", "stop");
             }
             if (sub.equals("reset") && sender.hasPermission("xpoptimizer.reset.others")) {
                 String prefix = args[1].toLowerCase();
@@ -70,60 +110,211 @@ public class XPStatsCommand implements BasicCommand {
             }
         }
 
+        if (args.length == 3 && args[0].equalsIgnoreCase("trace") && args[1].equalsIgnoreCase("start")) {
+            return List.of("30", "60", "300");
+        }
+
+        if (args.length == 3 && args[0].equalsIgnoreCase("top")
+                && (parseWindow(args[1]) != null || args[1].equalsIgnoreCase("global"))) {
+            return List.of("5", "10", "25");
+        }
+
         return List.of();
     }
 
     private void handleStatsSelf(CommandSender sender, XPConfig cfg) {
         if (!(sender instanceof Player player)) {
-            sender.sendMessage(cfg.formatMessage("console-stats-denied"));
+            cfg.message("console-stats-denied").send(sender);
             return;
         }
         if (!player.hasPermission("xpoptimizer.stats")) {
-            player.sendMessage(cfg.formatMessage("no-permission"));
+            cfg.message("no-permission").send(player);
             return;
         }
-        long total = plugin.getXpStat(player.getUniqueId());
-        player.sendMessage(cfg.formatMessage("stats-self", "%xp%", String.format("%,d", total)));
+        readStats(player, "stats", () -> {
+            long total = plugin.getXpStat(player.getUniqueId());
+            int rank = plugin.getXpRank(player.getUniqueId());
+            cfg.message("stats-self").send(player, rankArg(MessageArgs.get().number(Placeholder.XP, total), rank));
+        });
     }
 
     private void handleReload(CommandSender sender, XPConfig cfg) {
         if (!sender.hasPermission("xpoptimizer.reload")) {
-            sender.sendMessage(cfg.formatMessage("no-permission"));
+            cfg.message("no-permission").send(sender);
+            return;
+        }
+        plugin.reloadPluginConfigAsync(() -> plugin.getXPConfig().message("reload-success").send(sender));
+    }
+
+    private void handleMetrics(CommandSender sender, XPConfig cfg) {
+        if (!sender.hasPermission("xpoptimizer.metrics")) {
+            cfg.message("no-permission").send(sender);
             return;
         }
-        plugin.reloadPluginConfig();
-        sender.sendMessage(plugin.getXPConfig().formatMessage("reload-success"));
+        if (!cfg.metricsEnabled()) {
+            cfg.message("metrics-disabled").send(sender);
+            return;
+        }
+
+        PluginMetrics.Snapshot snapshot = plugin.getMetrics().snapshot();
+        Map<String, Long> gauges = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> gauge : plugin.getMetricGauges().entrySet()) {
+            gauges.put(gaugeLabel(gauge.getKey()), gauge.getValue());
+        }
+        cfg.message("metrics-header").send(sender);
+        for (Map.Entry<String, String> row : snapshot.describe(gauges)) {
+            cfg.message("metrics-entry").send(sender, MessageArgs.get()
+                    .text(Placeholder.NAME, row.getKey())
+                    .text(Placeholder.VALUE, row.getValue()));
+        }
+    }
+
+    private void handleTrace(CommandSender sender, XPConfig cfg, String[] args) {
+        if (!sender.hasPermission("xpoptimizer.trace")) {
+            cfg.message("no-permission").send(sender);
+            return;
+        }
+
+        // /xpstats trace [start [seconds]|stop]
+        if (args.length >= 2 && args[1].equalsIgnoreCase("stop")) {
+            if (!plugin.getTraceRecorder().active()) {
+                cfg.message("trace-not-running").send(sender);
+                return;
+            }
+            cfg.message("trace-stopped").send(sender, MessageArgs.get().number(Placeholder.COUNT, plugin.stopTrace()));
+            return;
+        }
+        int seconds = 60;
+        if (args.length >= 3) {
+            try {
+                seconds = Math.clamp(Integer.parseInt(args[2]), 1, 3600);
+            } catch (NumberFormatException ignored) {}
+        }
+        File file = plugin.startTrace(seconds);
+        if (file == null) {
+            cfg.message("trace-running").send(sender);
+            return;
+        }
+        cfg.message("trace-started").send(sender, MessageArgs.get()
+                .text(Placeholder.NAME, file.getName())
+                .number(Placeholder.VALUE, seconds));
+    }
+
+    /** "stats_entries" -> "Stats entries". */
+    private static String gaugeLabel(String metricName) {
+        String label = metricName.replace('_', ' ');
+        return Character.toUpperCase(label.charAt(0)) + label.substring(1);
     }
 
     private void handleTop(CommandSender sender, XPConfig cfg, String[] args) {
         if (!sender.hasPermission("xpoptimizer.stats")) {
-            sender.sendMessage(cfg.formatMessage("no-permission"));
+            cfg.message("no-permission").send(sender);
             return;
         }
 
+        // /xpstats top [day|week|month|global] [count]
+        boolean global = args.length >= 2 && args[1].equalsIgnoreCase("global");
+        XPWindowStats.Window window = null;
+        int countArg = 1;
+        if (global) {
+            countArg = 2;
+        } else if (args.length >= 2) {
+            window = parseWindow(args[1]);
+            if (window != null) countArg = 2;
+        }
         int count = 10;
-        if (args.length >= 2) {
+        if (args.length > countArg) {
             try {
-                count = Math.clamp(Integer.parseInt(args[1]), 1, 100);
+                count = Math.clamp(Integer.parseInt(args[countArg]), 1, 100);
             } catch (NumberFormatException ignored) {}
         }
+        int k = count;
+
+        if (global) {
+            if (!plugin.isClusterEnabled()) {
+                cfg.message("cluster-disabled").send(sender);
+                return;
+            }
+            // The merged leaderboard is in memory on every node
+            int nodes = plugin.getClusterNodeCount();
+            replyTop(sender, cfg, (s, n) -> cfg.message("top-header-global").send(s, MessageArgs.get()
+                    .number(Placeholder.COUNT, n)
+                    .number(Placeholder.NODES, nodes)), plugin.getGlobalTopXp(k), false);
+            return;
+        }
+        if (window == null) {
+            boolean async = plugin.statsReadsBlock();
+            readStats(sender, "top", () -> replyTop(sender, cfg, (s, n) -> cfg.message("top-header").send(s, MessageArgs.get()
+                    .number(Placeholder.COUNT, n)), plugin.getTopXp(k), async));
+            return;
+        }
+        // Windowed totals have no live index; rank them off the main thread
+        String label = cfg.message("window-" + window.name().toLowerCase()).render();
+        XPWindowStats.Window w = window;
+        runAsync(sender, "top", () -> replyTop(sender, cfg, (s, n) -> cfg.message("top-header-window")
+                .send(s, MessageArgs.get()
+                        .number(Placeholder.COUNT, n)
+                        .text(Placeholder.WINDOW, label)), plugin.getTopXp(w, k), true));
+    }
 
-        List<Map.Entry<UUID, Long>> sorted = plugin.getXpStatsEntries().stream()
-                .sorted(Map.Entry.<UUID, Long>comparingByValue().reversed())
-                .limit(count)
-                .toList();
+    private static XPWindowStats.Window parseWindow(String arg) {
+        return switch (arg.toLowerCase()) {
+            case "day", "today" -> XPWindowStats.Window.DAY;
+            case "week" -> XPWindowStats.Window.WEEK;
+            case "month" -> XPWindowStats.Window.MONTH;
+            default -> null;
+        };
+    }
 
-        sender.sendMessage(cfg.formatMessage("top-header", "%count%", String.valueOf(sorted.size())));
-        int rank = 1;
-        for (Map.Entry<UUID, Long> entry : sorted) {
-            Player online = plugin.getServer().getPlayer(entry.getKey());
-            String name = online != null ? online.getName() : entry.getKey().toString();
-            sender.sendMessage(cfg.formatMessage("top-entry",
-                    "%rank%", String.valueOf(rank),
-                    "%player%", name,
-                    "%xp%", String.format("%,d", entry.getValue())
-            ));
-            rank++;
+    /** Sends the header line of a top list holding {@code count} entries. */
+    @FunctionalInterface
+    private interface TopHeader {
+        void send(CommandSender sender, int count);
+    }
+
+    private void replyTop(CommandSender sender, XPConfig cfg, TopHeader header,
+                          List<XPLeaderboard.Ranked> top, boolean offMainThread) {
+        PlayerNameCache names = plugin.getNameCache();
+
+        String[] entryNames = new String[top.size()];
+        boolean missing = false;
+        for (int i = 0; i < entryNames.length; i++) {
+            entryNames[i] = names.getName(top.get(i).playerId());
+            missing |= entryNames[i] == null;
+        }
+        if (!missing) {
+            sendTop(sender, cfg, header, top, entryNames);
+            return;
+        }
+
+        // Unknown names may need the usercache or playerdata on disk: resolve and reply off-thread
+        Runnable resolve = () -> {
+            for (int i = 0; i < entryNames.length; i++) {
+                if (entryNames[i] != null) continue;
+                UUID id = top.get(i).playerId();
+                String name = plugin.getServer().getOfflinePlayer(id).getName();
+                if (name != null) names.learn(id, name);
+                entryNames[i] = name != null ? name : id.toString();
+            }
+            sendTop(sender, cfg, header, top, entryNames);
+        };
+        if (offMainThread) {
+            resolve.run();
+        } else {
+            runAsync(sender, "top", resolve);
+        }
+    }
+
+    private static void sendTop(CommandSender sender, XPConfig cfg, TopHeader header,
+                                List<XPLeaderboard.Ranked> top, String[] names) {
+        header.send(sender, top.size());
+        MessageTemplate line = cfg.message("top-entry");
+        for (int i = 0; i < names.length; i++) {
+            XPLeaderboard.Ranked entry = top.get(i);
+            line.send(sender, MessageArgs.get()
+                    .number(Placeholder.RANK, entry.rank())
+                    .text(Placeholder.PLAYER, names[i])
+                    .number(Placeholder.XP, entry.total()));
         }
     }
 
@@ -131,67 +322,114 @@ public class XPStatsCommand implements BasicCommand {
         if (args.length == 1) {
             // Reset self
             if (!(sender instanceof Player player)) {
-                sender.sendMessage(cfg.formatMessage("console-reset-denied"));
+                cfg.message("console-reset-denied").send(sender);
                 return;
             }
             if (!player.hasPermission("xpoptimizer.reset")) {
-                player.sendMessage(cfg.formatMessage("no-permission"));
+                cfg.message("no-permission").send(player);
                 return;
             }
             plugin.resetXpStat(player.getUniqueId());
-            player.sendMessage(cfg.formatMessage("reset-self"));
+            cfg.message("reset-self").send(player);
             return;
         }
 
         // Reset other player
         if (!sender.hasPermission("xpoptimizer.reset.others")) {
-            sender.sendMessage(cfg.formatMessage("reset-no-permission"));
-            return;
-        }
-
-        // Try fast online lookup first, fall back to offline
-        Player online = plugin.getServer().getPlayerExact(args[1]);
-        if (online != null) {
-            plugin.resetXpStat(online.getUniqueId());
-            sender.sendMessage(cfg.formatMessage("reset-other", "%player%", online.getName()));
+            cfg.message("reset-no-permission").send(sender);
             return;
         }
 
-        @SuppressWarnings("deprecation")
-        OfflinePlayer target = plugin.getServer().getOfflinePlayer(args[1]);
-        if (!target.hasPlayedBefore()) {
-            sender.sendMessage(cfg.formatMessage("stats-player-not-found"));
-            return;
-        }
-        plugin.resetXpStat(target.getUniqueId());
-        String name = target.getName() != null ? target.getName() : args[1];
-        sender.sendMessage(cfg.formatMessage("reset-other", "%player%", name));
+        resolvePlayer(sender, "reset", args[1], (id, name) -> {
+            if (id == null) {
+                cfg.message("stats-player-not-found").send(sender);
+                return;
+            }
+            plugin.resetXpStat(id);
+            cfg.message("reset-other").send(sender, MessageArgs.get().text(Placeholder.PLAYER, name));
+        });
     }
 
     private void handleStatsOther(CommandSender sender, XPConfig cfg, String playerName) {
         if (!sender.hasPermission("xpoptimizer.stats.others")) {
-            sender.sendMessage(cfg.formatMessage("no-permission"));
+            cfg.message("no-permission").send(sender);
             return;
         }
 
-        // Try fast online lookup first, fall back to offline (may hit disk)
+        resolvePlayer(sender, "stats", playerName, (id, name) -> {
+            if (id == null) {
+                cfg.message("stats-player-not-found").send(sender);
+                cfg.message("usage").send(sender);
+                return;
+            }
+            readStats(sender, "stats", () -> {
+                long total = plugin.getXpStat(id);
+                int rank = plugin.getXpRank(id);
+                cfg.message("stats-other").send(sender, rankArg(MessageArgs.get()
+                        .text(Placeholder.PLAYER, name)
+                        .number(Placeholder.XP, total), rank));
+            });
+        });
+    }
+
+    @FunctionalInterface
+    private interface ResolvedPlayer {
+        /** {@code id} is null when no such player has ever joined. */
+        void accept(UUID id, String name);
+    }
+
+    /**
+     * Resolves a name through online players, then the name cache, then the server's in-memory
+     * usercache. Only a name none of those know falls through to a blocking offline lookup, which
+     * runs off the main thread and replies from there.
+     */
+    private void resolvePlayer(CommandSender sender, String subcommand, String playerName, ResolvedPlayer callback) {
         Player online = plugin.getServer().getPlayerExact(playerName);
         if (online != null) {
-            long total = plugin.getXpStat(online.getUniqueId());
-            sender.sendMessage(cfg.formatMessage("stats-other", "%player%", online.getName(), "%xp%", String.format("%,d", total)));
+            callback.accept(online.getUniqueId(), online.getName());
             return;
         }
 
-        @SuppressWarnings("deprecation")
-        OfflinePlayer target = plugin.getServer().getOfflinePlayer(playerName);
-        if (!target.hasPlayedBefore()) {
-            sender.sendMessage(cfg.formatMessage("stats-player-not-found"));
-            sender.sendMessage(cfg.formatMessage("usage"));
+        PlayerNameCache names = plugin.getNameCache();
+        UUID cached = names.getId(playerName);
+        if (cached != null) {
+            String name = names.getName(cached);
+            callback.accept(cached, name != null ? name : playerName);
             return;
         }
 
-        long total = plugin.getXpStat(target.getUniqueId());
-        String name = target.getName() != null ? target.getName() : playerName;
-        sender.sendMessage(cfg.formatMessage("stats-other", "%player%", name, "%xp%", String.format("%,d", total)));
+        // Memory-only profile cache; hasPlayedBefore() would read playerdata, so it is not asked here
+        OfflinePlayer known = plugin.getServer().getOfflinePlayerIfCached(playerName);
+        if (known != null) {
+            String name = known.getName() != null ? known.getName() : playerName;
+            names.learn(known.getUniqueId(), name);
+            callback.accept(known.getUniqueId(), name);
+            return;
+        }
+
+        runAsync(sender, subcommand, () -> {
+            @SuppressWarnings("deprecation")
+            OfflinePlayer target = plugin.getServer().getOfflinePlayer(playerName);
+            if (!target.hasPlayedBefore()) {
+                callback.accept(null, playerName);
+                return;
+            }
+            String name = target.getName() != null ? target.getName() : playerName;
+            names.learn(target.getUniqueId(), name);
+            callback.accept(target.getUniqueId(), name);
+        });
+    }
+
+    /** Runs lifetime stats reads in place, or off the main thread when they go to the database. */
+    private void readStats(CommandSender sender, String subcommand, Runnable read) {
+        if (plugin.statsReadsBlock()) {
+            runAsync(sender, subcommand, read);
+        } else {
+            read.run();
+        }
+    }
+
+    private static MessageArgs rankArg(MessageArgs args, int rank) {
+        return rank > 0 ? args.number(Placeholder.RANK, rank) : args.text(Placeholder.RANK, "-");
     }
 }
@@ -0,0 +1,78 @@
+package com.xpoptimizer.deposit;
+
+import com.xpoptimizer.scheduler.PluginScheduler;
+import org.bukkit.entity.Player;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Region-threaded counterpart of {@link XPDepositBatcher}.
+ * <p>
+ * Orbs may be captured on any region thread, so each player has a small pending record guarded by
+ * its own monitor. The first orb in a cycle schedules one flush on the player's owning region;
+ * later orbs only add to the record. The record is created once per session and removed on quit.
+ */
+public final class RegionDepositQueue {
+
+    private static final class Pending {
+        final Player player;
+        long rawXp;
+        double x, y, z;
+        boolean scheduled;
+        final Runnable flushTask;
+
+        Pending(Player player, RegionDepositQueue owner) {
+            this.player = player;
+            this.flushTask = () -> owner.flush(this);
+        }
+    }
+
+    private final PluginScheduler scheduler;
+    private final XPDepositBatcher.Sink sink;
+    private final Map<UUID, Pending> pending = new ConcurrentHashMap<>();
+
+    public RegionDepositQueue(PluginScheduler scheduler, XPDepositBatcher.Sink sink) {
+        this.scheduler = scheduler;
+        this.sink = sink;
+    }
+
+    public void add(Player player, int xp, double x, double y, double z) {
+        UUID id = player.getUniqueId();
+        Pending p = pending.get(id);
+        if (p == null || p.player != player) {
+            p = new Pending(player, this);
+            pending.put(id, p);
+        }
+
+        boolean schedule;
+        synchronized (p) {
+            p.rawXp += xp;
+            p.x = x;
+            p.y = y;
+            p.z = z;
+            schedule = !p.scheduled;
+            p.scheduled = true;
+        }
+        if (schedule) scheduler.runFor(player, p.flushTask);
+    }
+
+    public void remove(UUID playerId) {
+        pending.remove(playerId);
+    }
+
+    private void flush(Pending p) {
+        long rawXp;
+        double x, y, z;
+        synchronized (p) {
+            rawXp = p.rawXp;
+            x = p.x;
+            y = p.y;
+            z = p.z;
+            p.rawXp = 0;
+            p.scheduled = false;
+        }
+        if (rawXp > 0) sink.deposit(p.player, rawXp, x, y, z);
+    }
+}
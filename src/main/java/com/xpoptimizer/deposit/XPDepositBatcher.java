@@ -0,0 +1,125 @@
+package com.xpoptimizer.deposit;
+
+import org.bukkit.entity.Player;
+
+import java.util.Arrays;
+
+/**
+ * Collects intercepted XP per player for the current tick and hands it out in one call per player.
+ * <p>
+ * Players are keyed by entity id in an open-addressed table pointing into flat slot arrays, so
+ * accumulating an orb is a probe plus a few primitive writes. Not thread-safe: owned by the thread
+ * that runs the tick.
+ */
+public final class XPDepositBatcher {
+
+    @FunctionalInterface
+    public interface Sink {
+        /** Called once per player with the summed raw XP and the coordinates of the last orb captured. */
+        void deposit(Player player, long rawXp, double x, double y, double z);
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Open-addressed entity id -> slot + 1 (0 = empty). Length is always twice the slot capacity. */
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+    private int[] entityIds = new int[INITIAL_CAPACITY];
+    private Player[] players = new Player[INITIAL_CAPACITY];
+    private long[] rawXp = new long[INITIAL_CAPACITY];
+    private double[] lastX = new double[INITIAL_CAPACITY];
+    private double[] lastY = new double[INITIAL_CAPACITY];
+    private double[] lastZ = new double[INITIAL_CAPACITY];
+    private int size;
+    private boolean flushing;
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isFlushing() {
+        return flushing;
+    }
+
+    public void add(Player player, int xp, double x, double y, double z) {
+        int id = player.getEntityId();
+        int mask = table.length - 1;
+        int i = mix(id) & mask;
+        int ref;
+        while ((ref = table[i]) != 0) {
+            int slot = ref - 1;
+            if (entityIds[slot] == id) {
+                rawXp[slot] += xp;
+                lastX[slot] = x;
+                lastY[slot] = y;
+                lastZ[slot] = z;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+
+        if (size == players.length) {
+            grow();
+            add(player, xp, x, y, z);
+            return;
+        }
+
+        int slot = size++;
+        table[i] = slot + 1;
+        entityIds[slot] = id;
+        players[slot] = player;
+        rawXp[slot] = xp;
+        lastX[slot] = x;
+        lastY[slot] = y;
+        lastZ[slot] = z;
+    }
+
+    /**
+     * Delivers every pending total to {@code sink} and clears the batch. Orbs captured while the
+     * flush is running must not be added here; callers check {@link #isFlushing()} and deposit
+     * them directly instead.
+     */
+    public void flush(Sink sink) {
+        if (size == 0) return;
+        flushing = true;
+        try {
+            for (int slot = 0; slot < size; slot++) {
+                sink.deposit(players[slot], rawXp[slot], lastX[slot], lastY[slot], lastZ[slot]);
+            }
+        } finally {
+            clear();
+            flushing = false;
+        }
+    }
+
+    private void clear() {
+        // The table is only a few hundred ints even on busy servers, so a full wipe beats per-key removal
+        Arrays.fill(table, 0);
+        Arrays.fill(players, 0, size, null);
+        size = 0;
+    }
+
+    private void grow() {
+        int capacity = players.length * 2;
+        entityIds = Arrays.copyOf(entityIds, capacity);
+        players = Arrays.copyOf(players, capacity);
+        rawXp = Arrays.copyOf(rawXp, capacity);
+        lastX = Arrays.copyOf(lastX, capacity);
+        lastY = Arrays.copyOf(lastY, capacity);
+        lastZ = Arrays.copyOf(lastZ, capacity);
+
+        table = new int[capacity * 2];
+        int mask = table.length - 1;
+        for (int slot = 0; slot < size; slot++) {
+            int i = mix(entityIds[slot]) & mask;
+            while (table[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            table[i] = slot + 1;
+        }
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
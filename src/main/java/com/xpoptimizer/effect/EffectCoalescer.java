@@ -0,0 +1,187 @@
+package com.xpoptimizer.effect;
+
+import com.xpoptimizer.util.LongIntMap;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Folds a player's deposits into at most one sound/particle burst per window, sized by the XP it
+ * stands for, and caps the effect packets any one chunk may send per tick.
+ * <p>
+ * Each player with pending effects owns a slot in parallel primitive arrays, found through a
+ * {@link LongIntMap} keyed by entity id. Deposits add to the slot; {@link #flush} runs at tick end
+ * and emits the bursts that are due, deferring any whose chunk has used its budget to a later
+ * tick. The same pass releases slots that have sat idle for a whole window, and a player's slot
+ * goes when it quits, so nothing needs a separate sweep.
+ * <p>
+ * Region-threaded servers have no thread that may touch every player at tick end. There
+ * {@link #take} is used instead: it emits on the deposit itself once the window has passed,
+ * carrying the XP of the deposits it held back.
+ * <p>
+ * All methods lock the coalescer; each call is a handful of array writes.
+ */
+public final class EffectCoalescer {
+
+    @FunctionalInterface
+    public interface Emitter {
+        /** Plays one burst for {@code xp} collected, at the last deposit's position. */
+        void burst(Player player, World world, double x, double y, double z, long xp);
+    }
+
+    /** Sound plus particles. */
+    public static final int PACKETS_PER_BURST = 2;
+
+    private static final int NONE = -1;
+
+    private final LongIntMap slotsByEntity = new LongIntMap(64, NONE);
+    private Player[] players = new Player[16];
+    private World[] worlds = new World[16];
+    private double[] xs = new double[16], ys = new double[16], zs = new double[16];
+    private long[] pendingXp = new long[16];
+    private long[] lastBurst = new long[16];
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int slotCount;
+
+    /** Packets spent per chunk in {@link #budgetTick}, per world. */
+    private final Map<World, LongIntMap> chunkPackets = new IdentityHashMap<>();
+    private long budgetTick = Long.MIN_VALUE;
+
+    /** Adds a deposit to the player's next burst. */
+    public synchronized void record(Player player, int xp, World world, double x, double y, double z) {
+        int slot = slotFor(player);
+        worlds[slot] = world;
+        xs[slot] = x;
+        ys[slot] = y;
+        zs[slot] = z;
+        pendingXp[slot] = saturatedAdd(pendingXp[slot], xp);
+    }
+
+    /**
+     * Emits every pending burst whose window has passed and whose chunk still has budget this
+     * tick. {@code chunkBudget} is in packets; 0 means unlimited.
+     */
+    public synchronized void flush(long tick, int windowTicks, int chunkBudget, Emitter emitter) {
+        if (slotCount == freeCount) return;
+        for (int slot = 0; slot < slotCount; slot++) {
+            Player player = players[slot];
+            if (player == null) continue;
+            if (tick - lastBurst[slot] < windowTicks) continue;
+            if (pendingXp[slot] == 0) {
+                release(slot, player);
+                continue;
+            }
+            if (!spend(worlds[slot], xs[slot], zs[slot], tick, chunkBudget)) continue;
+
+            long xp = pendingXp[slot];
+            World world = worlds[slot];
+            double x = xs[slot], y = ys[slot], z = zs[slot];
+            pendingXp[slot] = 0;
+            lastBurst[slot] = tick;
+            emitter.burst(player, world, x, y, z, xp);
+        }
+    }
+
+    /**
+     * Records a deposit and returns the XP to show a burst for right now, or 0 while the player's
+     * window or the chunk's budget holds it back.
+     */
+    public synchronized long take(Player player, int xp, World world, double x, double y, double z,
+                                  long tick, int windowTicks, int chunkBudget) {
+        int slot = slotFor(player);
+        pendingXp[slot] = saturatedAdd(pendingXp[slot], xp);
+        if (tick - lastBurst[slot] < windowTicks) return 0;
+        if (!spend(world, x, z, tick, chunkBudget)) return 0;
+        long total = pendingXp[slot];
+        pendingXp[slot] = 0;
+        lastBurst[slot] = tick;
+        return total;
+    }
+
+    /** Drops the player's slot and anything pending for it. */
+    public synchronized void remove(Player player) {
+        int slot = slotsByEntity.get(player.getEntityId());
+        if (slot != NONE) release(slot, player);
+    }
+
+    public synchronized void removeWorld(World world) {
+        chunkPackets.remove(world);
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (players[slot] != null && worlds[slot] == world) release(slot, players[slot]);
+        }
+    }
+
+    /** Players holding a slot, for metrics. */
+    public synchronized int size() {
+        return slotCount - freeCount;
+    }
+
+    // --- Internals (caller holds the lock) ---
+
+    private int slotFor(Player player) {
+        int id = player.getEntityId();
+        int slot = slotsByEntity.get(id);
+        if (slot != NONE) return slot;
+
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotCount == players.length) grow(slotCount * 2);
+            slot = slotCount++;
+        }
+        players[slot] = player;
+        pendingXp[slot] = 0;
+        lastBurst[slot] = Long.MIN_VALUE / 2;
+        slotsByEntity.put(id, slot);
+        return slot;
+    }
+
+    private void release(int slot, Player player) {
+        slotsByEntity.remove(player.getEntityId());
+        players[slot] = null;
+        worlds[slot] = null;
+        if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        freeSlots[freeCount++] = slot;
+    }
+
+    /** Charges one burst to the chunk at (x, z); false if that would exceed its budget this tick. */
+    private boolean spend(World world, double x, double z, long tick, int chunkBudget) {
+        if (chunkBudget <= 0) return true;
+        if (tick != budgetTick) {
+            for (LongIntMap used : chunkPackets.values()) used.clear();
+            budgetTick = tick;
+        }
+        LongIntMap used = chunkPackets.get(world);
+        if (used == null) {
+            used = new LongIntMap(64, 0);
+            chunkPackets.put(world, used);
+        }
+        long key = chunkKey((int) Math.floor(x) >> 4, (int) Math.floor(z) >> 4);
+        if (used.get(key) + PACKETS_PER_BURST > chunkBudget) return false;
+        used.addTo(key, PACKETS_PER_BURST);
+        return true;
+    }
+
+    private void grow(int capacity) {
+        players = Arrays.copyOf(players, capacity);
+        worlds = Arrays.copyOf(worlds, capacity);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        zs = Arrays.copyOf(zs, capacity);
+        pendingXp = Arrays.copyOf(pendingXp, capacity);
+        lastBurst = Arrays.copyOf(lastBurst, capacity);
+    }
+
+    private static long chunkKey(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+
+    private static long saturatedAdd(long total, int amount) {
+        long sum = total + amount;
+        return sum < total ? Long.MAX_VALUE : sum;
+    }
+}
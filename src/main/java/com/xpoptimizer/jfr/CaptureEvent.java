@@ -0,0 +1,56 @@
+package com.xpoptimizer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * One orb or XP drop matched to a player and deposited or queued, or left to vanilla.
+ * <p>
+ * All of the plugin's events are disabled by default and only cost a check of {@link #recording}
+ * until a recording turns them on, for example with
+ * {@code jcmd <pid> JFR.start +com.xpoptimizer.Capture#enabled=true}. Thresholds keep the
+ * ordinary, fast cases out of the recording; lower them in the settings to see everything.
+ */
+@Name("com.xpoptimizer.Capture")
+@Label("XP Capture")
+@Category("XPOptimizer")
+@Description("An orb or XP drop matched to the nearest player")
+@Enabled(false)
+@Threshold("100 us")
+@StackTrace(false)
+public final class CaptureEvent extends Event {
+
+    private static final EventType TYPE = EventType.getEventType(CaptureEvent.class);
+
+    @Label("World")
+    public String world;
+
+    @Label("Players Scanned")
+    @Description("Players whose distance was checked; 0 when the recipient was already known")
+    public int playersScanned;
+
+    @Label("Raw XP")
+    public int rawXp;
+
+    @Label("XP")
+    @Description("XP deposited after multipliers and boosts; 0 when queued for the batched flush or not captured")
+    public int xp;
+
+    @Label("Captured")
+    public boolean captured;
+
+    @Label("Load Tier")
+    public String loadTier;
+
+    /** True while a recording has this event enabled. */
+    public static boolean recording() {
+        return TYPE.isEnabled();
+    }
+}
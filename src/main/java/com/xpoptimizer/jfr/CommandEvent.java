@@ -0,0 +1,35 @@
+package com.xpoptimizer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * An {@code /xpstats} execution on the calling thread. Work a subcommand hands off the main
+ * thread (database reads, name lookups) is recorded as a separate event with {@link #async} set;
+ * config reloads are not included.
+ */
+@Name("com.xpoptimizer.Command")
+@Label("XP Stats Command")
+@Category("XPOptimizer")
+@Description("An /xpstats command executed")
+@Enabled(false)
+@Threshold("1 ms")
+@StackTrace(false)
+public final class CommandEvent extends Event {
+
+    @Label("Subcommand")
+    public String subcommand;
+
+    @Label("Sender")
+    public String sender;
+
+    @Label("Async")
+    @Description("Work the command handed off the main thread, timed apart from the command itself")
+    public boolean async;
+}
@@ -0,0 +1,37 @@
+package com.xpoptimizer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/** A load or save of the stats: lifetime totals and the windowed totals file. */
+@Name("com.xpoptimizer.StatsIO")
+@Label("Stats I/O")
+@Category("XPOptimizer")
+@Description("Loading or saving XP stats")
+@Enabled(false)
+@Threshold("10 ms")
+@StackTrace(false)
+public final class StatsIoEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Backend")
+    public String backend;
+
+    @Label("Entries")
+    @Description("Players with lifetime stats after the operation")
+    public long entries;
+
+    @Label("Bytes")
+    @Description("Bytes the lifetime stats backend read or wrote")
+    @DataAmount
+    public long bytes;
+}
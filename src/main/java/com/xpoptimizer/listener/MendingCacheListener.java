@@ -0,0 +1,92 @@
+package com.xpoptimizer.listener;
+
+import com.destroystokyo.paper.event.player.PlayerArmorChangeEvent;
+import com.xpoptimizer.mending.MendingEngine;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityPickupItemEvent;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.event.player.*;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Invalidates {@link MendingEngine}'s cached Mending items whenever a player's equipment or its
+ * durability may have changed other than through the engine itself.
+ */
+public class MendingCacheListener implements Listener {
+
+    private final MendingEngine mending;
+
+    public MendingCacheListener(MendingEngine mending) {
+        this.mending = mending;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryClick(InventoryClickEvent event) {
+        if (event.getWhoClicked() instanceof Player player) mending.invalidate(player);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryDrag(InventoryDragEvent event) {
+        if (event.getWhoClicked() instanceof Player player) mending.invalidate(player);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onHeld(PlayerItemHeldEvent event) {
+        mending.invalidate(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onSwapHands(PlayerSwapHandItemsEvent event) {
+        mending.invalidate(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onDrop(PlayerDropItemEvent event) {
+        mending.invalidate(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPickup(EntityPickupItemEvent event) {
+        if (event.getEntity() instanceof Player player) mending.invalidate(player);
+    }
+
+    /** Fires a tick after any armor slot changes, durability included; only a new item matters. */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onArmorChange(PlayerArmorChangeEvent event) {
+        ItemStack oldItem = event.getOldItem(), newItem = event.getNewItem();
+        if (oldItem == null || newItem == null || oldItem.getType() != newItem.getType()) {
+            mending.invalidate(event.getPlayer());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onDamage(PlayerItemDamageEvent event) {
+        if (event.getItem().containsEnchantment(Enchantment.MENDING)) mending.invalidate(event.getPlayer());
+    }
+
+    /** Mending from orbs the plugin let through, or from other plugins. */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onMend(PlayerItemMendEvent event) {
+        mending.invalidate(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onBreak(PlayerItemBreakEvent event) {
+        mending.invalidate(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onRespawn(PlayerRespawnEvent event) {
+        mending.invalidate(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        mending.remove(event.getPlayer());
+    }
+}
@@ -0,0 +1,66 @@
+package com.xpoptimizer.listener;
+
+import com.xpoptimizer.spatial.PlayerSpatialIndex;
+import org.bukkit.GameMode;
+import org.bukkit.Location;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.*;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+/**
+ * Keeps {@link PlayerSpatialIndex} in step with player movement, world changes and game mode.
+ */
+public class PlayerIndexListener implements Listener {
+
+    private final PlayerSpatialIndex index;
+
+    public PlayerIndexListener(PlayerSpatialIndex index) {
+        this.index = index;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        index.track(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        index.remove(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onMove(PlayerMoveEvent event) {
+        if (!event.hasChangedPosition()) return;
+        Location to = event.getTo();
+        index.move(event.getPlayer(), to.getWorld(), to.getX(), to.getY(), to.getZ());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onTeleport(PlayerTeleportEvent event) {
+        Location to = event.getTo();
+        index.move(event.getPlayer(), to.getWorld(), to.getX(), to.getY(), to.getZ());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldChange(PlayerChangedWorldEvent event) {
+        index.track(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onRespawn(PlayerRespawnEvent event) {
+        Location to = event.getRespawnLocation();
+        index.move(event.getPlayer(), to.getWorld(), to.getX(), to.getY(), to.getZ());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onGameModeChange(PlayerGameModeChangeEvent event) {
+        index.setEligible(event.getPlayer(), event.getNewGameMode() != GameMode.SPECTATOR);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        index.removeWorld(event.getWorld());
+    }
+}
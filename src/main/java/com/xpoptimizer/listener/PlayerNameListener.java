@@ -0,0 +1,26 @@
+package com.xpoptimizer.listener;
+
+import com.xpoptimizer.cache.PlayerNameCache;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+
+/**
+ * Teaches {@link PlayerNameCache} every name seen on join, so commands never need a usercache lookup.
+ */
+public class PlayerNameListener implements Listener {
+
+    private final PlayerNameCache names;
+
+    public PlayerNameListener(PlayerNameCache names) {
+        this.names = names;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        names.learn(player.getUniqueId(), player.getName());
+    }
+}
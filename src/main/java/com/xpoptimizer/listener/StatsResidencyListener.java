@@ -0,0 +1,49 @@
+package com.xpoptimizer.listener;
+
+import com.xpoptimizer.scheduler.PluginScheduler;
+import com.xpoptimizer.stats.ShardedStatsStore;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.UUID;
+
+/**
+ * Pages a player's stats in while it logs in and back out after it quits, or when a login allowed
+ * at pre-login is refused later (whitelist, full server), which never fires a quit. Both ends run
+ * off the main thread: pre-login is already async, and the write-back is handed to the async
+ * scheduler. The store counts logins, so a write-back that runs after a quick rejoin is harmless.
+ */
+public class StatsResidencyListener implements Listener {
+
+    private final ShardedStatsStore stats;
+    private final PluginScheduler scheduler;
+
+    public StatsResidencyListener(ShardedStatsStore stats, PluginScheduler scheduler) {
+        this.stats = stats;
+        this.scheduler = scheduler;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) return;
+        stats.preload(event.getUniqueId());
+    }
+
+    @SuppressWarnings("deprecation")
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onLogin(PlayerLoginEvent event) {
+        if (event.getResult() == PlayerLoginEvent.Result.ALLOWED) return;
+        UUID id = event.getPlayer().getUniqueId();
+        scheduler.runAsync(() -> stats.release(id));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        UUID id = event.getPlayer().getUniqueId();
+        scheduler.runAsync(() -> stats.release(id));
+    }
+}
@@ -1,46 +1,207 @@
 package com.xpoptimizer.listener;
 
+import com.destroystokyo.paper.event.server.ServerTickEndEvent;
 import com.xpoptimizer.XPConfig;
 import com.xpoptimizer.XPOptimizerPlugin;
+import com.xpoptimizer.WorldProfile;
+import com.xpoptimizer.WorldProfiles;
+import com.xpoptimizer.deposit.RegionDepositQueue;
+import com.xpoptimizer.deposit.XPDepositBatcher;
+import com.xpoptimizer.effect.EffectCoalescer;
+import com.xpoptimizer.jfr.CaptureEvent;
+import com.xpoptimizer.load.LoadShedder;
+import com.xpoptimizer.mending.MendingEngine;
+import com.xpoptimizer.merge.ChunkXPLedger;
+import com.xpoptimizer.merge.OrbMerger;
+import com.xpoptimizer.metrics.PluginMetrics;
+import com.xpoptimizer.scheduler.PluginScheduler;
+import com.xpoptimizer.spatial.PlayerSpatialIndex;
+import com.xpoptimizer.stats.XPStatsStore;
+import com.xpoptimizer.trace.TraceRecorder;
+import org.bukkit.Chunk;
 import org.bukkit.GameMode;
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.entity.ExperienceOrb;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.EntitySpawnEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 
 import java.util.Collection;
-import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class XPOrbSpawnListener implements Listener {
 
+    private static final int DEFERRED_STATS_TICKS = 20;
+
     private final XPOptimizerPlugin plugin;
-    private final Map<UUID, Long> lastEffectTime = new ConcurrentHashMap<>();
+    private final PluginScheduler scheduler;
+    private final PluginMetrics metrics;
+    private final WorldProfiles profiles;
+    private final MendingEngine mending;
+    private final LoadShedder shedder;
+    private final TraceRecorder trace;
+    /** Stats summed per player while the shedder defers them; applied every {@link #DEFERRED_STATS_TICKS}. */
+    private final XPStatsStore deferredStats = new XPStatsStore();
+    private final EffectCoalescer effects = new EffectCoalescer();
+    private final EffectCoalescer.Emitter burstEmitter = this::playBurst;
+    private final XPDepositBatcher batcher = new XPDepositBatcher();
+    private final XPDepositBatcher.Sink batchSink = this::depositBatched;
+    /** Non-null on region-threaded servers, where batched deposits are flushed per player region. */
+    private final RegionDepositQueue regionQueue;
+    /** Null on region-threaded servers, where orbs cannot be touched from the tick-end thread. */
+    private final OrbMerger merger;
+    /** Null on region-threaded servers, for the same reason as {@link #merger}. */
+    private final ChunkXPLedger ledger;
+    private final ChunkXPLedger.Delivery ledgerDelivery;
 
     public XPOrbSpawnListener(XPOptimizerPlugin plugin) {
         this.plugin = plugin;
+        this.scheduler = plugin.getPluginScheduler();
+        this.metrics = plugin.getMetrics();
+        this.profiles = plugin.getWorldProfiles();
+        this.mending = plugin.getMendingEngine();
+        this.shedder = plugin.getLoadShedder();
+        this.trace = plugin.getTraceRecorder();
+        this.regionQueue = scheduler.regionThreaded() ? new RegionDepositQueue(scheduler, batchSink) : null;
+        this.merger = scheduler.regionThreaded() ? null : new OrbMerger();
+        this.ledger = scheduler.regionThreaded() ? null : new ChunkXPLedger();
+        this.ledgerDelivery = (player, world, x, y, z, xp) -> capture(world, x, y, z, xp, player, plugin.getXPConfig());
     }
 
     @EventHandler(priority = EventPriority.NORMAL, ignoreCancelled = true)
     public void onXPOrbSpawn(EntitySpawnEvent event) {
-        XPConfig cfg = plugin.getXPConfig();
+        if (!(event.getEntity() instanceof ExperienceOrb orb)) return;
+        if (merger != null && (merger.isSpawning() || ledger.isSpawning())) return; // our own orb
+        if (trace.active()) {
+            trace.orb(orb.getWorld(), orb.getX(), orb.getY(), orb.getZ(), orb.getExperience(), scheduler.currentTick());
+        }
 
+        XPConfig cfg = plugin.getXPConfig();
         if (!cfg.enabled()) return;
-        if (!(event.getEntity() instanceof ExperienceOrb orb)) return;
-        if (!cfg.isWorldAllowed(orb.getWorld().getName())) return;
 
-        Location orbLoc = orb.getLocation();
-        Collection<Player> nearby = orbLoc.getNearbyPlayers(cfg.range());
-        if (nearby.isEmpty()) return;
+        if (!cfg.metricsEnabled()) {
+            intercept(event, orb, cfg);
+            return;
+        }
+        long start = System.nanoTime();
+        boolean intercepted = intercept(event, orb, cfg);
+        metrics.recordOrb(intercepted, System.nanoTime() - start);
+    }
+
+    /** Cancels the orb and deposits (or queues) its XP. Returns false if the orb is left alone. */
+    private boolean intercept(EntitySpawnEvent event, ExperienceOrb orb, XPConfig cfg) {
+        if (!shedder.tier().intercepts()) return false;
+        if (capture(orb.getWorld(), orb.getX(), orb.getY(), orb.getZ(), orb.getExperience(), null, cfg)) {
+            event.setCancelled(true);
+            return true;
+        }
+
+        if (merger == null || orb.getExperience() <= 0 || !profiles.get(orb.getWorld()).allowed()) return false;
+
+        // Nobody in range: bank the XP for the chunk, or fold it into the cell's existing orb
+        if (cfg.ledgerEnabled()) {
+            event.setCancelled(true);
+            ledger.credit(orb.getWorld(), orb.getX(), orb.getY(), orb.getZ(), orb.getExperience(), cfg.ledgerMaxChunks());
+            metrics.recordBanked();
+        } else if (cfg.orbMergeEnabled() && merger.offer(orb, cfg.orbMergeCellSize())) {
+            event.setCancelled(true);
+            metrics.recordMerge();
+        }
+        return false;
+    }
+
+    /**
+     * Deposits (or queues) {@code rawXp} dropped at the given point for the nearest player, or for
+     * {@code recipient} when the source already knows who collects it. Shared by the spawn hook and
+     * {@link XPSourceListener}. Returns false if nobody qualifies; the caller then lets the XP drop.
+     */
+    public boolean capture(World world, double x, double y, double z, int rawXp, Player recipient, XPConfig cfg) {
+        if (!CaptureEvent.recording()) return capture(world, x, y, z, rawXp, recipient, cfg, null);
+
+        CaptureEvent event = new CaptureEvent();
+        event.begin();
+        boolean captured = capture(world, x, y, z, rawXp, recipient, cfg, event);
+        event.end();
+        if (event.shouldCommit()) {
+            event.world = world.getName();
+            event.rawXp = rawXp;
+            event.captured = captured;
+            event.loadTier = shedder.tier().name();
+            event.commit();
+        }
+        return captured;
+    }
+
+    /** {@code event} is null unless a recording wants the details. */
+    private boolean capture(World world, double x, double y, double z, int rawXp, Player recipient, XPConfig cfg,
+                            CaptureEvent event) {
+        LoadShedder.Tier tier = shedder.tier();
+        if (!tier.intercepts()) return false;
+        WorldProfile profile = profiles.get(world);
+        if (!profile.allowed()) return false;
+
+        Player closest = recipient;
+        if (closest == null) {
+            // The index is single-threaded; region-threaded servers use the region-local entity scan
+            if (cfg.playerIndex() && regionQueue == null) {
+                PlayerSpatialIndex index = plugin.getPlayerIndex();
+                closest = tier.exactSearch()
+                        ? index.nearest(world, x, y, z, profile.range(), profile.rangeSq())
+                        : index.any(world, x, y, z, profile.range(), profile.rangeSq());
+                if (event != null) event.playersScanned = index.lastScanned();
+            } else {
+                closest = scanNearest(new Location(world, x, y, z), profile, tier.exactSearch(), event);
+            }
+            if (closest == null) return false;
+        }
+
+        // Batched: the multiplier and boost are applied once per player at tick end
+        if (cfg.depositMode() == XPConfig.DepositMode.BATCHED && !batcher.isFlushing()) {
+            if (rawXp <= 0 || profile.multiplier() <= 0) return false;
+            if (regionQueue != null) {
+                regionQueue.add(closest, rawXp, x, y, z);
+            } else {
+                batcher.add(closest, rawXp, x, y, z);
+            }
+            return true;
+        }
+
+        double totalMultiplier = profile.multiplier() * plugin.getPlayerBoost(closest.getUniqueId());
+        int xp = totalMultiplier != 1.0 ? (int) Math.round(rawXp * totalMultiplier) : rawXp;
+        if (xp <= 0) return false;
+        if (event != null) event.xp = xp;
+
+        Location at = new Location(world, x, y, z);
+        if (scheduler.isOwnedByCurrentThread(closest)) {
+            deposit(closest, xp, rawXp, at, cfg);
+        } else {
+            // Player sits just across a region border: hand the deposit to its owning thread
+            Player target = closest;
+            scheduler.runFor(target, () -> deposit(target, xp, rawXp, at, plugin.getXPConfig()));
+        }
+        return true;
+    }
+
+    /**
+     * Fallback lookup through the entity tracker, used when the player index is disabled. Unless
+     * {@code exact}, returns the first player in range rather than the closest.
+     */
+    private static Player scanNearest(Location orbLoc, WorldProfile profile, boolean exact, CaptureEvent event) {
+        Collection<Player> nearby = orbLoc.getNearbyPlayers(profile.range());
+        if (event != null) event.playersScanned = nearby.size();
+        if (nearby.isEmpty()) return null;
 
         double ox = orbLoc.getX(), oy = orbLoc.getY(), oz = orbLoc.getZ();
 
         Player closest = null;
-        double minDistSq = cfg.rangeSq();
+        double minDistSq = profile.rangeSq();
         for (Player player : nearby) {
             if (player.getGameMode() == GameMode.SPECTATOR) continue;
 
@@ -49,51 +210,172 @@ public class XPOrbSpawnListener implements Listener {
             double dz = player.getZ() - oz;
             double distSq = dx * dx + dy * dy + dz * dz;
             if (distSq < minDistSq) {
+                if (!exact) return player;
                 minDistSq = distSq;
                 closest = player;
             }
         }
-        if (closest == null) return;
+        return closest;
+    }
 
-        int rawXp = orb.getExperience();
-        double totalMultiplier = cfg.multiplier() * plugin.getPlayerBoost(closest.getUniqueId());
-        int xp = totalMultiplier != 1.0 ? (int) Math.round(rawXp * totalMultiplier) : rawXp;
-        if (xp <= 0) return;
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onTickEnd(ServerTickEndEvent event) {
+        XPConfig cfg = plugin.getXPConfig();
+        if (cfg.loadSheddingEnabled()) {
+            shedder.sample(event.getTickDuration(), cfg.loadTierMspt(), cfg.loadRecoverMarginMspt(), cfg.loadRecoverTicks());
+        } else {
+            shedder.reset();
+        }
+        if (deferredStats.size() > 0
+                && (!shedder.tier().defersStats() || event.getTickNumber() % DEFERRED_STATS_TICKS == 0)) {
+            flushDeferredStats();
+        }
 
-        event.setCancelled(true);
-        closest.giveExp(xp, true);
+        if (merger == null) {
+            flushPending();
+            return;
+        }
+        // Players move at most a few blocks between checks, so every 8 ticks is soon enough
+        if ((event.getTickNumber() & 7) == 0 && ledger.size() > 0) {
+            ledger.deliver(plugin.getServer().getOnlinePlayers(), world -> profiles.get(world).range(), ledgerDelivery);
+        }
+        flushPending();
+        // After the batched flush, so this tick's deposits still join their bursts
+        effects.flush(event.getTickNumber(), cfg.effectWindowTicks(), cfg.effectChunkBudget(), burstEmitter);
+        merger.tick(cfg.orbMergeMaxPerTick(), cfg.orbMergeBudgetMicros() * 1_000L);
+    }
 
-        if (cfg.statsEnabled()) {
-            plugin.addXpStat(closest.getUniqueId(), xp);
+    /**
+     * Deposits everything collected in batched mode so far. Also called on disable. Region-threaded
+     * deposits are already scheduled on their players and are not touched here.
+     */
+    public void flushPending() {
+        if (batcher.isEmpty()) return;
+        long start = System.nanoTime();
+        batcher.flush(batchSink);
+        metrics.recordFlush(System.nanoTime() - start);
+    }
+
+    /** Applies stats held back while shedding load. Also called on disable. */
+    public void flushDeferredStats() {
+        deferredStats.drainAll((msb, lsb, xp) ->
+                plugin.addXpStat(new UUID(msb, lsb), (int) Math.min(xp, Integer.MAX_VALUE)));
+    }
+
+    /** Hands out XP still waiting to be merged or banked. Called on disable. */
+    public void drainMerges() {
+        if (merger == null) return;
+        merger.drain();
+        ledger.dropAll();
+    }
+
+    /** Chunks with banked XP, for metrics; 0 when the ledger is unavailable. */
+    public int getLedgerChunkCount() {
+        return ledger != null ? ledger.size() : 0;
+    }
+
+    /** Cells with a merged orb, for metrics; 0 when merging is unavailable. */
+    public int getMergeCellCount() {
+        return merger != null ? merger.trackedCells() : 0;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent event) {
+        profiles.add(event.getWorld());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        profiles.remove(event.getWorld());
+        effects.removeWorld(event.getWorld());
+        if (merger == null) return;
+        merger.removeWorld(event.getWorld());
+        ledger.removeWorld(event.getWorld());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        if (ledger == null || ledger.size() == 0) return;
+        Chunk chunk = event.getChunk();
+        ledger.unloadChunk(event.getWorld(), chunk.getX(), chunk.getZ());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        effects.remove(event.getPlayer());
+        if (regionQueue != null) regionQueue.remove(event.getPlayer().getUniqueId());
+    }
+
+    private void depositBatched(Player player, long rawXp, double x, double y, double z) {
+        if (!player.isOnline()) return;
+
+        XPConfig cfg = plugin.getXPConfig();
+        World world = player.getWorld();
+        double totalMultiplier = profiles.get(world).multiplier() * plugin.getPlayerBoost(player.getUniqueId());
+        long scaled = totalMultiplier != 1.0 ? Math.round(rawXp * totalMultiplier) : rawXp;
+        if (scaled <= 0) return;
+
+        int xp = (int) Math.min(scaled, Integer.MAX_VALUE);
+        deposit(player, xp, rawXp, new Location(world, x, y, z), cfg);
+    }
+
+    private void deposit(Player player, int xp, long rawXp, Location at, XPConfig cfg) {
+        if (cfg.mendingEngine()) {
+            int leftover = mending.repair(player, xp, scheduler.currentTick());
+            if (leftover > 0) player.giveExp(leftover, false);
+        } else {
+            player.giveExp(xp, true);
         }
+        metrics.recordDeposit(xp);
 
-        if (canPlayEffects(closest.getUniqueId(), cfg.effectCooldownMs())) {
-            if (cfg.soundEnabled()) {
-                closest.playSound(orbLoc, cfg.sound(), cfg.soundVolume(), cfg.soundPitch());
+        LoadShedder.Tier tier = shedder.tier();
+        if (cfg.statsEnabled()) {
+            if (tier.defersStats()) {
+                deferredStats.add(player.getUniqueId(), xp);
+            } else {
+                plugin.addXpStat(player.getUniqueId(), xp);
             }
-            if (cfg.particlesEnabled()) {
-                closest.spawnParticle(cfg.particle(), orbLoc, cfg.particleCount());
+        }
+
+        if (!tier.effects()) return;
+
+        if (profiles.get(at.getWorld()).effectsEnabled()) {
+            if (regionQueue == null) {
+                effects.record(player, xp, at.getWorld(), at.getX(), at.getY(), at.getZ());
+            } else {
+                long burst = effects.take(player, xp, at.getWorld(), at.getX(), at.getY(), at.getZ(),
+                        scheduler.currentTick(), cfg.effectWindowTicks(), cfg.effectChunkBudget());
+                if (burst > 0) playBurst(player, at.getWorld(), at.getX(), at.getY(), at.getZ(), burst);
             }
         }
 
         if (cfg.debug()) {
             plugin.getLogger().info("[Debug] %s received %d XP (raw: %d) at %s".formatted(
-                    closest.getName(), xp, rawXp, orbLoc.toVector()));
+                    player.getName(), xp, rawXp, at.toVector()));
         }
     }
 
-    public void cleanupEffectTimes() {
-        if (lastEffectTime.isEmpty()) return;
-        long cutoff = System.currentTimeMillis() - 60_000; // 1 minute
-        lastEffectTime.entrySet().removeIf(e -> e.getValue() < cutoff);
+    /** Players with a pending or recent effect burst, for metrics. */
+    public int getEffectSlotCount() {
+        return effects.size();
     }
 
-    private boolean canPlayEffects(UUID playerId, long cooldownMs) {
-        if (cooldownMs <= 0) return true;
-        long now = System.currentTimeMillis();
-        Long last = lastEffectTime.get(playerId);
-        if (last != null && (now - last) < cooldownMs) return false;
-        lastEffectTime.put(playerId, now);
-        return true;
+    /** One sound and one particle packet standing for {@code xp} collected since the last burst. */
+    private void playBurst(Player player, World world, double x, double y, double z, long xp) {
+        WorldProfile profile = profiles.get(world);
+        int scale = burstScale(xp);
+        Location at = new Location(world, x, y, z);
+        if (profile.soundEnabled()) {
+            float volume = Math.min(2.0f, profile.soundVolume() * (1 + 0.1f * (scale - 1)));
+            player.playSound(at, profile.sound(), volume, profile.soundPitch());
+        }
+        if (profile.particlesEnabled()) {
+            player.spawnParticle(profile.particle(), at, profile.particleCount() * scale);
+        }
+    }
+
+    /** 1 for a single point of XP, one more per doubling, at most 8. */
+    private static int burstScale(long xp) {
+        return Math.min(8, 64 - Long.numberOfLeadingZeros(xp));
     }
 }
@@ -0,0 +1,112 @@
+package com.xpoptimizer.listener;
+
+import com.xpoptimizer.XPConfig;
+import com.xpoptimizer.XPOptimizerPlugin;
+import com.xpoptimizer.metrics.PluginMetrics;
+import com.xpoptimizer.trace.TraceRecorder;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockExpEvent;
+import org.bukkit.event.entity.EntityBreedEvent;
+import org.bukkit.event.entity.EntityDeathEvent;
+import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.inventory.FurnaceExtractEvent;
+import org.bukkit.event.player.PlayerFishEvent;
+
+/**
+ * {@code capture-mode: SOURCE}: takes XP from the events that decide how much to drop and zeroes
+ * the drop, so no orb entity is ever built for these sources. Orbs from anything not covered here
+ * (trading, bottles, grindstones, other plugins) still go through {@link XPOrbSpawnListener}.
+ * <p>
+ * Handlers run at HIGHEST so amounts changed by other plugins at lower priorities are included.
+ */
+public class XPSourceListener implements Listener {
+
+    private final XPOptimizerPlugin plugin;
+    private final XPOrbSpawnListener orbs;
+    private final PluginMetrics metrics;
+    private final TraceRecorder trace;
+
+    public XPSourceListener(XPOptimizerPlugin plugin, XPOrbSpawnListener orbs) {
+        this.plugin = plugin;
+        this.orbs = orbs;
+        this.metrics = plugin.getMetrics();
+        this.trace = plugin.getTraceRecorder();
+    }
+
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onEntityDeath(EntityDeathEvent event) {
+        // Player deaths follow keep-inventory and level-loss rules; leave them to the spawn hook
+        if (event instanceof PlayerDeathEvent) return;
+        XPConfig cfg = plugin.getXPConfig();
+        if (!active(cfg) || event.getDroppedExp() <= 0) return;
+
+        LivingEntity entity = event.getEntity();
+        if (capture(entity.getWorld(), entity.getX(), entity.getY(), entity.getZ(), event.getDroppedExp(), null, cfg)) {
+            event.setDroppedExp(0);
+        }
+    }
+
+    /** Also receives block breaks and furnace extraction, which share this handler list. */
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onBlockExp(BlockExpEvent event) {
+        XPConfig cfg = plugin.getXPConfig();
+        if (!active(cfg) || event.getExpToDrop() <= 0) return;
+
+        boolean captured;
+        if (event instanceof FurnaceExtractEvent extract) {
+            // Vanilla drops furnace XP on the extracting player
+            Player player = extract.getPlayer();
+            captured = capture(player.getWorld(), player.getX(), player.getY(), player.getZ(), event.getExpToDrop(), player, cfg);
+        } else {
+            Block block = event.getBlock();
+            captured = capture(block.getWorld(), block.getX() + 0.5, block.getY() + 0.5, block.getZ() + 0.5, event.getExpToDrop(), null, cfg);
+        }
+        if (captured) event.setExpToDrop(0);
+    }
+
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onFish(PlayerFishEvent event) {
+        if (event.getState() != PlayerFishEvent.State.CAUGHT_FISH) return;
+        XPConfig cfg = plugin.getXPConfig();
+        if (!active(cfg) || event.getExpToDrop() <= 0) return;
+
+        Player player = event.getPlayer();
+        if (capture(player.getWorld(), player.getX(), player.getY(), player.getZ(), event.getExpToDrop(), player, cfg)) {
+            event.setExpToDrop(0);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onBreed(EntityBreedEvent event) {
+        XPConfig cfg = plugin.getXPConfig();
+        if (!active(cfg) || event.getExperience() <= 0) return;
+
+        Location at = event.getMother().getLocation();
+        if (capture(at.getWorld(), at.getX(), at.getY(), at.getZ(), event.getExperience(), null, cfg)) {
+            event.setExperience(0);
+        }
+    }
+
+    private static boolean active(XPConfig cfg) {
+        return cfg.enabled() && cfg.captureMode() == XPConfig.CaptureMode.SOURCE;
+    }
+
+    /** A drop nobody takes spawns as an orb, which the spawn hook counts and traces. */
+    private boolean capture(World world, double x, double y, double z, int xp, Player recipient, XPConfig cfg) {
+        if (!cfg.metricsEnabled() && !trace.active()) return orbs.capture(world, x, y, z, xp, recipient, cfg);
+        long start = System.nanoTime();
+        boolean captured = orbs.capture(world, x, y, z, xp, recipient, cfg);
+        if (!captured) return false;
+        if (cfg.metricsEnabled()) metrics.recordOrb(true, System.nanoTime() - start);
+        // Traced as the orb it would have been
+        if (trace.active()) trace.orb(world, x, y, z, xp, plugin.getPluginScheduler().currentTick());
+        return true;
+    }
+}
@@ -0,0 +1,114 @@
+package com.xpoptimizer.load;
+
+import java.util.logging.Logger;
+
+/**
+ * Steps the plugin down through cheaper {@link Tier}s while the server is over its tick budget,
+ * and back up once it recovers.
+ * <p>
+ * Every tick's duration feeds an exponential moving average (about a one-second window). The
+ * tier rises as soon as the average reaches the next tier's threshold; it only falls after the
+ * average has stayed {@code recoverMargin} below the current tier's threshold for
+ * {@code recoverTicks} ticks in a row, so a server hovering at a threshold does not flap.
+ * <p>
+ * {@link #sample} runs on the tick-end thread; {@link #tier} may be read from anywhere.
+ */
+public final class LoadShedder {
+
+    /** Degradation tiers, each including everything the tiers below it give up. */
+    public enum Tier {
+        /** Full fidelity. */
+        NORMAL,
+        /** No sound, particles or debug logging. */
+        NO_EFFECTS,
+        /** The first player found in range collects, not the nearest. */
+        APPROXIMATE,
+        /** Stats are summed per player and applied in batches. */
+        DEFERRED_STATS,
+        /** Orbs are left to vanilla. */
+        VANILLA;
+
+        private static final Tier[] VALUES = values();
+
+        public boolean effects() {
+            return this == NORMAL;
+        }
+
+        public boolean exactSearch() {
+            return compareTo(APPROXIMATE) < 0;
+        }
+
+        public boolean defersStats() {
+            return compareTo(DEFERRED_STATS) >= 0;
+        }
+
+        public boolean intercepts() {
+            return this != VANILLA;
+        }
+    }
+
+    /** Weight of the newest tick in the average. */
+    private static final double ALPHA = 0.05;
+
+    private final Logger logger;
+    private volatile Tier tier = Tier.NORMAL;
+    private volatile double averageMillis;
+    private int calmTicks;
+    private volatile long changes;
+
+    public LoadShedder(Logger logger) {
+        this.logger = logger;
+    }
+
+    public Tier tier() {
+        return tier;
+    }
+
+    /** Average tick time in milliseconds, as of the last sample. */
+    public double averageMillis() {
+        return averageMillis;
+    }
+
+    /** Tier changes since startup, for metrics. */
+    public long changes() {
+        return changes;
+    }
+
+    /**
+     * Records one tick's duration and moves the tier. {@code thresholds[i]} is the average (ms)
+     * at which tier {@code i + 1} starts.
+     */
+    public void sample(double tickMillis, double[] thresholds, double recoverMargin, int recoverTicks) {
+        averageMillis += ALPHA * (tickMillis - averageMillis);
+
+        int current = tier.ordinal();
+        int target = current;
+        while (target < thresholds.length && averageMillis >= thresholds[target]) target++;
+        if (target > current) {
+            calmTicks = 0;
+            change(Tier.VALUES[target]);
+            return;
+        }
+
+        if (current == 0 || averageMillis >= thresholds[current - 1] - recoverMargin) {
+            calmTicks = 0;
+            return;
+        }
+        if (++calmTicks >= recoverTicks) {
+            calmTicks = 0;
+            change(Tier.VALUES[current - 1]);
+        }
+    }
+
+    /** Returns to {@link Tier#NORMAL}, when shedding is switched off. */
+    public void reset() {
+        calmTicks = 0;
+        if (tier != Tier.NORMAL) change(Tier.NORMAL);
+    }
+
+    private void change(Tier next) {
+        logger.info("Load shedding: %s -> %s (average tick %.1f ms)".formatted(tier, next, averageMillis));
+        tier = next;
+        changes++;
+    }
+}
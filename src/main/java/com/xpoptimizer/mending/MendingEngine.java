@@ -0,0 +1,171 @@
+package com.xpoptimizer.mending;
+
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.EntityEquipment;
+import org.bukkit.inventory.EquipmentSlot;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.Damageable;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Repairs Mending gear from deposited XP the way a vanilla orb pickup does, and hands back what
+ * is left for the XP bar.
+ * <p>
+ * Vanilla picks one damaged Mending item uniformly at random, repairs {@code min(2 * xp, damage)},
+ * keeps {@code xp - repaired * xp / (2 * xp)} and repeats with the rest until the XP or the
+ * damaged items run out. Finding those items means walking every equipment slot and its
+ * enchantments on each step. Here each player's damaged Mending slots are cached and the walk
+ * happens only after {@link #invalidate} (inventory, equipment and durability events), or when
+ * the cache is {@link #RESCAN_TICKS} old, for changes that fire no event. A cached item is checked
+ * again before it is repaired, so a stale entry is dropped, never mended wrongly.
+ * <p>
+ * A player's state is only touched from the thread that owns the player.
+ */
+public final class MendingEngine {
+
+    /** Rescan even without an event after this long, for inventories changed by commands or plugins. */
+    static final int RESCAN_TICKS = 200;
+
+    /** Slots a player can hold Mending gear in, as vanilla's equipment walk sees them. */
+    private static final EquipmentSlot[] SLOTS = {
+            EquipmentSlot.HAND, EquipmentSlot.OFF_HAND,
+            EquipmentSlot.FEET, EquipmentSlot.LEGS, EquipmentSlot.CHEST, EquipmentSlot.HEAD
+    };
+
+    /** The damaged Mending items one repair draws from, by index, so the loop allocates nothing. */
+    interface Mendables {
+        int count();
+
+        /** Current damage of item {@code i}, or 0 if it is no longer a damaged Mending item. */
+        int damage(int i);
+
+        void setDamage(int i, int damage);
+
+        /** Drops item {@code i}; the last item takes its index. */
+        void remove(int i);
+    }
+
+    private static final class Candidates implements Mendables {
+        final EquipmentSlot[] slots = new EquipmentSlot[SLOTS.length];
+        int count;
+        long scannedAt;
+        volatile boolean dirty = true;
+
+        // The player's equipment during a repair, and the item damage() last looked at
+        EntityEquipment equipment;
+        ItemStack item;
+        Damageable meta;
+
+        @Override
+        public int count() {
+            return count;
+        }
+
+        @Override
+        public int damage(int i) {
+            item = equipment.getItem(slots[i]);
+            meta = mendable(item);
+            if (meta != null) return meta.getDamage();
+            // Changed without an event: the caller forgets it now, the next deposit rescans
+            dirty = true;
+            return 0;
+        }
+
+        @Override
+        public void setDamage(int i, int damage) {
+            meta.setDamage(damage);
+            item.setItemMeta(meta);
+        }
+
+        @Override
+        public void remove(int i) {
+            slots[i] = slots[--count];
+        }
+    }
+
+    private final Map<UUID, Candidates> players = new ConcurrentHashMap<>();
+
+    /**
+     * Repairs the player's damaged Mending items from {@code xp} and returns the XP left over,
+     * which the caller gives to the XP bar.
+     */
+    public int repair(Player player, int xp, long tick) {
+        Candidates candidates = players.computeIfAbsent(player.getUniqueId(), id -> new Candidates());
+        EntityEquipment equipment = player.getEquipment();
+        if (candidates.dirty || tick - candidates.scannedAt >= RESCAN_TICKS) scan(equipment, candidates, tick);
+
+        candidates.equipment = equipment;
+        int left = repair(candidates, xp, ThreadLocalRandom.current());
+        candidates.equipment = null;
+        candidates.item = null;
+        candidates.meta = null;
+        return left;
+    }
+
+    /** The vanilla repair loop over {@code items}; returns the XP left over. */
+    static int repair(Mendables items, int xp, RandomGenerator random) {
+        int amount = xp;
+        while (amount > 0 && items.count() > 0) {
+            int i = items.count() == 1 ? 0 : random.nextInt(items.count());
+            int damage = items.damage(i);
+            if (damage <= 0) {
+                items.remove(i);
+                continue;
+            }
+            int durability = durabilityFromXp(amount);
+            int repaired = Math.min(durability, damage);
+            items.setDamage(i, damage - repaired);
+            if (repaired == damage) items.remove(i);
+            amount = leftoverXp(amount, repaired, durability);
+        }
+        return amount;
+    }
+
+    /** Marks the player's cached items out of date; the next deposit rescans. */
+    public void invalidate(Player player) {
+        Candidates candidates = players.get(player.getUniqueId());
+        if (candidates != null) candidates.dirty = true;
+    }
+
+    public void remove(Player player) {
+        players.remove(player.getUniqueId());
+    }
+
+    /** Players with cached candidates, for metrics. */
+    public int size() {
+        return players.size();
+    }
+
+    private static void scan(EntityEquipment equipment, Candidates candidates, long tick) {
+        candidates.dirty = false;
+        candidates.scannedAt = tick;
+        candidates.count = 0;
+        for (EquipmentSlot slot : SLOTS) {
+            if (mendable(equipment.getItem(slot)) != null) candidates.slots[candidates.count++] = slot;
+        }
+    }
+
+    /** The item's meta if it carries Mending and is damaged (vanilla's {@code isDamaged}), else null. */
+    static Damageable mendable(ItemStack item) {
+        if (item == null || item.isEmpty() || !item.containsEnchantment(Enchantment.MENDING)) return null;
+        if (!(item.getItemMeta() instanceof Damageable meta) || meta.isUnbreakable()) return null;
+        if (!meta.hasMaxDamage() && item.getType().getMaxDurability() <= 0) return null;
+        return meta.getDamage() > 0 ? meta : null;
+    }
+
+    /** Durability {@code xp} can restore: Mending's factor of 2, applied in float as vanilla does. */
+    static int durabilityFromXp(int xp) {
+        return (int) (xp * 2.0f);
+    }
+
+    /** XP left after restoring {@code repaired} of {@code durability}, with vanilla's integer rounding. */
+    static int leftoverXp(int xp, int repaired, int durability) {
+        return xp - repaired * xp / durability;
+    }
+}
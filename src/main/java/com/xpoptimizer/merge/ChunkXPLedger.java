@@ -0,0 +1,240 @@
+package com.xpoptimizer.merge;
+
+import com.xpoptimizer.util.LongIntMap;
+import org.bukkit.GameMode;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.ExperienceOrb;
+import org.bukkit.entity.Player;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Holds XP that no player was in range to collect, one entry per chunk, instead of spawning orbs.
+ * <p>
+ * Each world maps chunk coordinates to a slot in flat arrays holding the summed XP and the
+ * position of the last contribution. {@link #deliver} hands an entry to the first eligible player
+ * within range of that position. An entry whose chunk unloads is dropped there as a single orb.
+ * Entries are also linked in insertion order; once {@code maxChunks} is reached the oldest is
+ * dropped as an orb to make room, so memory stays bounded. Main-thread only.
+ */
+public final class ChunkXPLedger {
+
+    @FunctionalInterface
+    public interface Delivery {
+        /** Gives {@code xp} collected at the point to {@code player}; returns false if refused. */
+        boolean deliver(Player player, World world, double x, double y, double z, int xp);
+    }
+
+    private static final int NONE = -1;
+
+    private static final class WorldLedger {
+        final World world;
+        final LongIntMap slots = new LongIntMap(64, NONE);
+
+        WorldLedger(World world) {
+            this.world = world;
+        }
+    }
+
+    private WorldLedger[] worlds = new WorldLedger[0];
+
+    private WorldLedger[] slotWorlds = new WorldLedger[32];
+    private long[] chunkKeys = new long[32];
+    private int[] xp = new int[32];
+    private double[] xs = new double[32];
+    private double[] ys = new double[32];
+    private double[] zs = new double[32];
+    /** Insertion order, oldest at {@link #head}. */
+    private int[] older = new int[32];
+    private int[] newer = new int[32];
+    private int head = NONE;
+    private int tail = NONE;
+    private int size;
+
+    private int[] freeSlots = new int[32];
+    private int freeCount;
+    private int highWater;
+
+    private boolean spawning;
+
+    /** True while the ledger is dropping an orb; the spawn hook must leave that orb alone. */
+    public boolean isSpawning() {
+        return spawning;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Adds unclaimed XP to the entry for the chunk containing the point. */
+    public void credit(World world, double x, double y, double z, int amount, int maxChunks) {
+        WorldLedger ledger = ledger(world);
+        long key = chunkKey((int) Math.floor(x) >> 4, (int) Math.floor(z) >> 4);
+        int slot = ledger.slots.get(key);
+        if (slot == NONE) {
+            while (size >= maxChunks && head != NONE) drop(head);
+            slot = allocate(ledger, key);
+        }
+        // Saturate rather than overflow; a single chunk never legitimately banks 2^31 XP
+        xp[slot] = (int) Math.min((long) xp[slot] + amount, Integer.MAX_VALUE);
+        xs[slot] = x;
+        ys[slot] = y;
+        zs[slot] = z;
+    }
+
+    /**
+     * Offers every entry within its world's pickup range of a player to that player. Entries the
+     * delivery refuses are dropped as orbs, as they would have been without the ledger.
+     */
+    public void deliver(Collection<? extends Player> players, ToDoubleFunction<World> rangeOf, Delivery delivery) {
+        if (size == 0) return;
+        for (Player player : players) {
+            if (player.getGameMode() == GameMode.SPECTATOR) continue;
+            World world = player.getWorld();
+            int idx = worldIndex(world);
+            if (idx == NONE) continue;
+            LongIntMap slots = worlds[idx].slots;
+            if (slots.size() == 0) continue;
+
+            double range = rangeOf.applyAsDouble(world);
+            double rangeSq = range * range;
+            double px = player.getX(), py = player.getY(), pz = player.getZ();
+            int minCx = (int) Math.floor(px - range) >> 4;
+            int maxCx = (int) Math.floor(px + range) >> 4;
+            int minCz = (int) Math.floor(pz - range) >> 4;
+            int maxCz = (int) Math.floor(pz + range) >> 4;
+            for (int cx = minCx; cx <= maxCx; cx++) {
+                for (int cz = minCz; cz <= maxCz; cz++) {
+                    int slot = slots.get(chunkKey(cx, cz));
+                    if (slot == NONE) continue;
+                    double dx = xs[slot] - px, dy = ys[slot] - py, dz = zs[slot] - pz;
+                    if (dx * dx + dy * dy + dz * dz >= rangeSq) continue;
+
+                    double x = xs[slot], y = ys[slot], z = zs[slot];
+                    int amount = xp[slot];
+                    release(slot);
+                    if (!delivery.deliver(player, world, x, y, z, amount)) spawnOrb(world, x, y, z, amount);
+                }
+            }
+        }
+    }
+
+    /** Drops the chunk's entry, if any, as one orb. Call while the chunk is still loaded. */
+    public void unloadChunk(World world, int cx, int cz) {
+        int idx = worldIndex(world);
+        if (idx == NONE) return;
+        int slot = worlds[idx].slots.get(chunkKey(cx, cz));
+        if (slot != NONE) drop(slot);
+    }
+
+    public void removeWorld(World world) {
+        int idx = worldIndex(world);
+        if (idx == NONE) return;
+        for (int slot = 0; slot < highWater; slot++) {
+            if (slotWorlds[slot] != null && slotWorlds[slot].world == world) release(slot);
+        }
+        WorldLedger[] shrunk = new WorldLedger[worlds.length - 1];
+        System.arraycopy(worlds, 0, shrunk, 0, idx);
+        System.arraycopy(worlds, idx + 1, shrunk, idx, worlds.length - idx - 1);
+        worlds = shrunk;
+    }
+
+    /** Drops every entry as an orb. Used on disable so banked XP is not lost. */
+    public void dropAll() {
+        while (head != NONE) drop(head);
+        worlds = new WorldLedger[0];
+    }
+
+    // --- Internals ---
+
+    private void drop(int slot) {
+        World world = slotWorlds[slot].world;
+        double x = xs[slot], y = ys[slot], z = zs[slot];
+        int amount = xp[slot];
+        release(slot);
+        spawnOrb(world, x, y, z, amount);
+    }
+
+    private void spawnOrb(World world, double x, double y, double z, int amount) {
+        if (amount <= 0) return;
+        spawning = true;
+        try {
+            world.spawn(new Location(world, x, y, z), ExperienceOrb.class, orb -> orb.setExperience(amount));
+        } finally {
+            spawning = false;
+        }
+    }
+
+    private int allocate(WorldLedger ledger, long key) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (highWater == xp.length) grow();
+            slot = highWater++;
+        }
+        slotWorlds[slot] = ledger;
+        chunkKeys[slot] = key;
+        xp[slot] = 0;
+        ledger.slots.put(key, slot);
+
+        older[slot] = tail;
+        newer[slot] = NONE;
+        if (tail != NONE) newer[tail] = slot;
+        else head = slot;
+        tail = slot;
+        size++;
+        return slot;
+    }
+
+    private void release(int slot) {
+        slotWorlds[slot].slots.remove(chunkKeys[slot]);
+        slotWorlds[slot] = null;
+
+        int o = older[slot], n = newer[slot];
+        if (o != NONE) newer[o] = n;
+        else head = n;
+        if (n != NONE) older[n] = o;
+        else tail = o;
+        size--;
+
+        if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        freeSlots[freeCount++] = slot;
+    }
+
+    private WorldLedger ledger(World world) {
+        int idx = worldIndex(world);
+        if (idx != NONE) return worlds[idx];
+        WorldLedger ledger = new WorldLedger(world);
+        worlds = Arrays.copyOf(worlds, worlds.length + 1);
+        worlds[worlds.length - 1] = ledger;
+        return ledger;
+    }
+
+    private int worldIndex(World world) {
+        WorldLedger[] w = worlds;
+        for (int i = 0; i < w.length; i++) {
+            if (w[i].world == world) return i;
+        }
+        return NONE;
+    }
+
+    private void grow() {
+        int capacity = xp.length * 2;
+        slotWorlds = Arrays.copyOf(slotWorlds, capacity);
+        chunkKeys = Arrays.copyOf(chunkKeys, capacity);
+        xp = Arrays.copyOf(xp, capacity);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        zs = Arrays.copyOf(zs, capacity);
+        older = Arrays.copyOf(older, capacity);
+        newer = Arrays.copyOf(newer, capacity);
+    }
+
+    private static long chunkKey(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+}
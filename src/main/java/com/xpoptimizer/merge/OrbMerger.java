@@ -0,0 +1,302 @@
+package com.xpoptimizer.merge;
+
+import com.xpoptimizer.util.LongIntMap;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.ExperienceOrb;
+
+import java.util.Arrays;
+
+/**
+ * Keeps at most one plugin-fed XP orb per spatial cell for XP that no player is in range to take.
+ * <p>
+ * The first unclaimed orb in a cell spawns normally and becomes the cell's anchor. Later orbs in
+ * that cell are cancelled and their XP is queued on the cell; {@link #tick} folds the queue into
+ * the anchors under a per-tick cell and time budget, so the work per tick is bounded however much
+ * XP a farm produces. If an anchor is gone by then (picked up, despawned, unloaded), a replacement
+ * is spawned with the queued XP. Main-thread only.
+ */
+public final class OrbMerger {
+
+    private static final int NONE = -1;
+    /** Slots checked per tick for dead anchors or stranded XP. */
+    private static final int SWEEP_PER_TICK = 32;
+
+    private static final class WorldCells {
+        final World world;
+        final LongIntMap slots = new LongIntMap(64, NONE);
+
+        WorldCells(World world) {
+            this.world = world;
+        }
+    }
+
+    private WorldCells[] worlds = new WorldCells[0];
+    private int cellSize = 4;
+
+    private WorldCells[] slotWorlds = new WorldCells[32];
+    private long[] cellKeys = new long[32];
+    private ExperienceOrb[] anchors = new ExperienceOrb[32];
+    private long[] pendingXp = new long[32];
+    private double[] xs = new double[32];
+    private double[] ys = new double[32];
+    private double[] zs = new double[32];
+    private boolean[] queued = new boolean[32];
+
+    private int[] freeSlots = new int[32];
+    private int freeCount;
+    private int highWater;
+
+    /** Ring buffer of slots with queued XP. Never holds a slot twice, so it cannot overflow. */
+    private int[] queue = new int[32];
+    private int queueHead;
+    private int queueSize;
+
+    private int sweepCursor;
+    private boolean spawning;
+
+    /** True while this merger is spawning an anchor; the spawn hook must leave that orb alone. */
+    public boolean isSpawning() {
+        return spawning;
+    }
+
+    public int queuedCells() {
+        return queueSize;
+    }
+
+    public int trackedCells() {
+        return highWater - freeCount;
+    }
+
+    /**
+     * Offers an orb no player will collect. Returns true if its XP was queued on an existing
+     * anchor, in which case the caller cancels the spawn; false if the orb should spawn (it may
+     * have just become its cell's anchor).
+     */
+    public boolean offer(ExperienceOrb orb, int cellSize) {
+        if (cellSize != this.cellSize) resize(cellSize);
+
+        int xp = orb.getExperience();
+        if (xp <= 0) return false;
+
+        World world = orb.getWorld();
+        double x = orb.getX(), y = orb.getY(), z = orb.getZ();
+        WorldCells cells = cells(world);
+        long key = cellKey(x, y, z);
+        int slot = cells.slots.get(key);
+        if (slot == NONE) {
+            slot = allocate(cells, key);
+            anchor(slot, orb, x, y, z);
+            return false;
+        }
+
+        ExperienceOrb anchor = anchors[slot];
+        if (anchor == null || !anchor.isValid()) {
+            // Previous anchor is gone: this orb takes over, and any queued XP will land on it
+            anchor(slot, orb, x, y, z);
+            return false;
+        }
+        pendingXp[slot] += xp;
+        enqueue(slot);
+        return true;
+    }
+
+    /**
+     * Folds queued XP into anchors until {@code maxCells} cells are done or {@code budgetNanos}
+     * has elapsed, then sweeps a few slots for dead anchors.
+     */
+    public void tick(int maxCells, long budgetNanos) {
+        if (queueSize > 0) {
+            long deadline = System.nanoTime() + budgetNanos;
+            for (int done = 0; queueSize > 0 && done < maxCells; done++) {
+                // Reading the clock costs about as much as a cheap merge, so only check it every 8
+                if ((done & 7) == 7 && System.nanoTime() - deadline > 0) break;
+                int slot = poll();
+                apply(slot);
+            }
+        }
+        sweep(SWEEP_PER_TICK);
+    }
+
+    /** Applies every queued cell regardless of budget. Used on disable so no XP is lost. */
+    public void drain() {
+        while (queueSize > 0) apply(poll());
+    }
+
+    public void removeWorld(World world) {
+        for (int slot = 0; slot < highWater; slot++) {
+            if (slotWorlds[slot] != null && slotWorlds[slot].world == world) release(slot);
+        }
+        // Drop released slots from the queue so a reused slot is never queued twice
+        int kept = 0;
+        for (int i = 0; i < queueSize; i++) {
+            int slot = queue[(queueHead + i) & (queue.length - 1)];
+            if (slotWorlds[slot] != null) {
+                queue[(queueHead + kept++) & (queue.length - 1)] = slot;
+            } else {
+                queued[slot] = false;
+            }
+        }
+        queueSize = kept;
+        int idx = worldIndex(world);
+        if (idx == NONE) return;
+        WorldCells[] shrunk = new WorldCells[worlds.length - 1];
+        System.arraycopy(worlds, 0, shrunk, 0, idx);
+        System.arraycopy(worlds, idx + 1, shrunk, idx, worlds.length - idx - 1);
+        worlds = shrunk;
+    }
+
+    public void clear() {
+        for (int slot = 0; slot < highWater; slot++) {
+            if (slotWorlds[slot] != null) release(slot);
+        }
+        worlds = new WorldCells[0];
+        Arrays.fill(queued, false);
+        queueHead = queueSize = 0;
+    }
+
+    // --- Internals ---
+
+    private void apply(int slot) {
+        queued[slot] = false;
+        long xp = pendingXp[slot];
+        if (xp <= 0 || slotWorlds[slot] == null) return;
+
+        ExperienceOrb anchor = anchors[slot];
+        if (anchor != null && anchor.isValid()) {
+            long room = Integer.MAX_VALUE - (long) anchor.getExperience();
+            long merged = Math.min(xp, room);
+            if (merged > 0) {
+                anchor.setExperience(anchor.getExperience() + (int) merged);
+                xp -= merged;
+            }
+            pendingXp[slot] = xp;
+            if (xp == 0) return;
+        }
+
+        // No live anchor, or it is full: spawn a fresh one, but never load a chunk to do it
+        World world = slotWorlds[slot].world;
+        if (!world.isChunkLoaded((int) Math.floor(xs[slot]) >> 4, (int) Math.floor(zs[slot]) >> 4)) return;
+        int amount = (int) Math.min(xp, Integer.MAX_VALUE);
+        spawning = true;
+        try {
+            anchors[slot] = world.spawn(new Location(world, xs[slot], ys[slot], zs[slot]), ExperienceOrb.class,
+                    orb -> orb.setExperience(amount));
+        } finally {
+            spawning = false;
+        }
+        pendingXp[slot] = xp - amount;
+        if (pendingXp[slot] > 0) enqueue(slot);
+    }
+
+    private void sweep(int count) {
+        if (highWater == 0) return;
+        for (int i = 0; i < count; i++) {
+            if (sweepCursor >= highWater) sweepCursor = 0;
+            int slot = sweepCursor++;
+            if (slotWorlds[slot] == null || queued[slot]) continue;
+            if (pendingXp[slot] > 0) {
+                // Stranded while its chunk was unloaded; try again
+                enqueue(slot);
+            } else if (anchors[slot] == null || !anchors[slot].isValid()) {
+                release(slot);
+            }
+        }
+    }
+
+    private void anchor(int slot, ExperienceOrb orb, double x, double y, double z) {
+        anchors[slot] = orb;
+        xs[slot] = x;
+        ys[slot] = y;
+        zs[slot] = z;
+    }
+
+    private void enqueue(int slot) {
+        if (queued[slot]) return;
+        queued[slot] = true;
+        queue[(queueHead + queueSize++) & (queue.length - 1)] = slot;
+    }
+
+    private int poll() {
+        int slot = queue[queueHead];
+        queueHead = (queueHead + 1) & (queue.length - 1);
+        queueSize--;
+        return slot;
+    }
+
+    private int allocate(WorldCells cells, long key) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (highWater == anchors.length) grow();
+            slot = highWater++;
+        }
+        slotWorlds[slot] = cells;
+        cellKeys[slot] = key;
+        pendingXp[slot] = 0;
+        queued[slot] = false;
+        cells.slots.put(key, slot);
+        return slot;
+    }
+
+    private void release(int slot) {
+        slotWorlds[slot].slots.remove(cellKeys[slot]);
+        slotWorlds[slot] = null;
+        anchors[slot] = null;
+        pendingXp[slot] = 0;
+        if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        freeSlots[freeCount++] = slot;
+    }
+
+    /** Cell size changed on reload: hand out what is queued, then start over with the new grid. */
+    private void resize(int newCellSize) {
+        drain();
+        clear();
+        cellSize = newCellSize;
+    }
+
+    private WorldCells cells(World world) {
+        int idx = worldIndex(world);
+        if (idx != NONE) return worlds[idx];
+        WorldCells cells = new WorldCells(world);
+        worlds = Arrays.copyOf(worlds, worlds.length + 1);
+        worlds[worlds.length - 1] = cells;
+        return cells;
+    }
+
+    private int worldIndex(World world) {
+        WorldCells[] w = worlds;
+        for (int i = 0; i < w.length; i++) {
+            if (w[i].world == world) return i;
+        }
+        return NONE;
+    }
+
+    private void grow() {
+        int capacity = anchors.length * 2;
+        slotWorlds = Arrays.copyOf(slotWorlds, capacity);
+        cellKeys = Arrays.copyOf(cellKeys, capacity);
+        anchors = Arrays.copyOf(anchors, capacity);
+        pendingXp = Arrays.copyOf(pendingXp, capacity);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        zs = Arrays.copyOf(zs, capacity);
+        queued = Arrays.copyOf(queued, capacity);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+
+        // Unwrap the ring into the larger buffer
+        int[] grown = new int[capacity];
+        for (int i = 0; i < queueSize; i++) grown[i] = queue[(queueHead + i) & (queue.length - 1)];
+        queue = grown;
+        queueHead = 0;
+    }
+
+    /** Packs cell coordinates like a block position: 26 bits x, 26 bits z, 12 bits y. */
+    private long cellKey(double x, double y, double z) {
+        long cx = Math.floorDiv((int) Math.floor(x), cellSize);
+        long cy = Math.floorDiv((int) Math.floor(y), cellSize);
+        long cz = Math.floorDiv((int) Math.floor(z), cellSize);
+        return ((cx & 0x3FFFFFFL) << 38) | ((cz & 0x3FFFFFFL) << 12) | (cy & 0xFFFL);
+    }
+}
@@ -0,0 +1,40 @@
+package com.xpoptimizer.message;
+
+import java.util.Arrays;
+
+/**
+ * Typed placeholder values for one {@link MessageTemplate#render} call.
+ * <p>
+ * Numbers are kept as {@code long} and written straight into the output with digit grouping, so
+ * callers never format them to a string first. Use {@link #get()} for a cleared per-thread
+ * instance; it is only valid until the next {@code get()} on the same thread.
+ */
+public final class MessageArgs {
+
+    private static final ThreadLocal<MessageArgs> LOCAL = ThreadLocal.withInitial(MessageArgs::new);
+    private static final int COUNT = Placeholder.values().length;
+
+    final String[] texts = new String[COUNT];
+    final long[] numbers = new long[COUNT];
+    final boolean[] numeric = new boolean[COUNT];
+
+    public static MessageArgs get() {
+        MessageArgs args = LOCAL.get();
+        Arrays.fill(args.texts, null);
+        Arrays.fill(args.numeric, false);
+        return args;
+    }
+
+    public MessageArgs text(Placeholder p, String value) {
+        texts[p.ordinal()] = value;
+        numeric[p.ordinal()] = false;
+        return this;
+    }
+
+    /** Rendered with thousands separators, like {@code %,d}. */
+    public MessageArgs number(Placeholder p, long value) {
+        numbers[p.ordinal()] = value;
+        numeric[p.ordinal()] = true;
+        return this;
+    }
+}
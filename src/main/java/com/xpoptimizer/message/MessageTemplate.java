@@ -0,0 +1,155 @@
+package com.xpoptimizer.message;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import org.bukkit.command.CommandSender;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A config message parsed once into literal segments and placeholder slots.
+ * <p>
+ * Colour codes are translated at parse time. Rendering appends literals and typed values into a
+ * per-thread builder, so the only allocation is the resulting string. Messages without
+ * placeholders are also cached as an Adventure component and sent without rendering at all.
+ * Placeholder values are inserted as-is and never colour-translated.
+ */
+public final class MessageTemplate {
+
+    private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(128));
+
+    /** O(1) lookup table for valid color/formatting codes after '&'. */
+    private static final boolean[] VALID_COLOR_CODES = new boolean[128];
+    static {
+        for (char c : "0123456789abcdefklmnorABCDEFKLMNOR".toCharArray()) {
+            VALID_COLOR_CODES[c] = true;
+        }
+    }
+
+    /** {@code literals.length == slots.length + 1}; literal {@code i} precedes slot {@code i}. */
+    private final String[] literals;
+    private final Placeholder[] slots;
+    private final int literalLength;
+    /** Non-null when the message has no placeholders. */
+    private final String constant;
+    private Component component;
+
+    private MessageTemplate(String[] literals, Placeholder[] slots) {
+        this.literals = literals;
+        this.slots = slots;
+        int length = 0;
+        for (String literal : literals) length += literal.length();
+        this.literalLength = length;
+        this.constant = slots.length == 0 ? literals[0] : null;
+    }
+
+    public static MessageTemplate compile(String raw) {
+        List<String> literals = new ArrayList<>();
+        List<Placeholder> slots = new ArrayList<>();
+        int start = 0;
+        int i = raw.indexOf('%');
+        while (i != -1) {
+            int close = raw.indexOf('%', i + 1);
+            if (close == -1) break;
+            Placeholder p = Placeholder.match(raw, i, close + 1);
+            if (p == null) {
+                // Not a token: the closing % may open the next one
+                i = close;
+                continue;
+            }
+            literals.add(translateColors(raw.substring(start, i)));
+            slots.add(p);
+            start = close + 1;
+            i = raw.indexOf('%', start);
+        }
+        literals.add(translateColors(raw.substring(start)));
+        return new MessageTemplate(literals.toArray(new String[0]), slots.toArray(new Placeholder[0]));
+    }
+
+    public boolean isConstant() {
+        return constant != null;
+    }
+
+    public String render() {
+        return render(null);
+    }
+
+    /** Renders with the given values; placeholders without a value render as their token. */
+    public String render(MessageArgs args) {
+        if (constant != null) return constant;
+        StringBuilder sb = BUILDER.get();
+        sb.setLength(0);
+        sb.ensureCapacity(literalLength + 16 * slots.length);
+        for (int i = 0; i < slots.length; i++) {
+            sb.append(literals[i]);
+            int p = slots[i].ordinal();
+            if (args == null) {
+                sb.append(slots[i].token());
+            } else if (args.numeric[p]) {
+                appendGrouped(sb, args.numbers[p]);
+            } else {
+                String text = args.texts[p];
+                sb.append(text != null ? text : slots[i].token());
+            }
+        }
+        sb.append(literals[slots.length]);
+        return sb.toString();
+    }
+
+    public void send(CommandSender sender) {
+        send(sender, null);
+    }
+
+    public void send(CommandSender sender, MessageArgs args) {
+        if (constant != null) {
+            sender.sendMessage(component());
+        } else {
+            sender.sendMessage(render(args));
+        }
+    }
+
+    private Component component() {
+        // Benign race: two threads may both build it, and either result is correct
+        Component c = component;
+        if (c == null) {
+            c = LegacyComponentSerializer.legacySection().deserialize(constant);
+            component = c;
+        }
+        return c;
+    }
+
+    /** Appends {@code value} with ',' every three digits, without going through a formatter. */
+    static void appendGrouped(StringBuilder sb, long value) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                sb.append("-9,223,372,036,854,775,808");
+                return;
+            }
+            sb.append('-');
+            value = -value;
+        }
+        if (value < 1000) {
+            sb.append(value);
+            return;
+        }
+        int start = sb.length();
+        sb.append(value);
+        for (int pos = sb.length() - 3; pos > start; pos -= 3) {
+            sb.insert(pos, ',');
+        }
+    }
+
+    static String translateColors(String msg) {
+        char[] chars = msg.toCharArray();
+        for (int i = 0; i < chars.length - 1; i++) {
+            if (chars[i] == '&') {
+                char next = chars[i + 1];
+                if (next < 128 && VALID_COLOR_CODES[next]) {
+                    chars[i] = '\u00A7';
+                }
+            }
+        }
+        return new String(chars);
+    }
+}
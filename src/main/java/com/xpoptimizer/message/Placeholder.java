@@ -0,0 +1,34 @@
+package com.xpoptimizer.message;
+
+/** Tokens a message template can contain. Anything else between {@code %} signs is literal text. */
+public enum Placeholder {
+    PLAYER("%player%"),
+    XP("%xp%"),
+    RANK("%rank%"),
+    COUNT("%count%"),
+    NAME("%name%"),
+    VALUE("%value%"),
+    WINDOW("%window%"),
+    NODES("%nodes%");
+
+    private static final Placeholder[] VALUES = values();
+
+    private final String token;
+
+    Placeholder(String token) {
+        this.token = token;
+    }
+
+    public String token() {
+        return token;
+    }
+
+    /** Returns the placeholder spelled by {@code raw[start, end)}, or null. */
+    static Placeholder match(String raw, int start, int end) {
+        for (Placeholder p : VALUES) {
+            String t = p.token;
+            if (t.length() == end - start && raw.regionMatches(start, t, 0, t.length())) return p;
+        }
+        return null;
+    }
+}
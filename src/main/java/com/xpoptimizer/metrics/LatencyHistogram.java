@@ -0,0 +1,76 @@
+package com.xpoptimizer.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Nanosecond latency histogram with power-of-two buckets.
+ * <p>
+ * Bucket {@code b} counts values whose bit length is {@code b}, i.e. values up to
+ * {@code 2^b - 1}. Recording is a bit count and three adder updates, so it is safe to call from
+ * any thread on every event and never allocates once the adders have warmed up. Percentiles are
+ * reported as the upper bound of their bucket, so they overstate by at most a factor of two.
+ */
+public final class LatencyHistogram {
+
+    /** Bit lengths 0..39 cover up to ~550 seconds; anything longer lands in the last bucket. */
+    static final int BUCKETS = 40;
+
+    public record Snapshot(long[] counts, long count, long sumNanos, long maxNanos) {
+
+        public long meanNanos() {
+            return count == 0 ? 0 : sumNanos / count;
+        }
+
+        /** Upper bound of the bucket containing the {@code q}-quantile, {@code 0 < q <= 1}. */
+        public long percentileNanos(double q) {
+            if (count == 0) return 0;
+            long target = (long) Math.ceil(q * count);
+            long seen = 0;
+            for (int b = 0; b < counts.length; b++) {
+                seen += counts[b];
+                if (seen >= target) return Math.min(upperBound(b), maxNanos);
+            }
+            return maxNanos;
+        }
+
+        /** Index of the highest bucket with any samples, or -1 if empty. */
+        public int highestBucket() {
+            for (int b = counts.length - 1; b >= 0; b--) {
+                if (counts[b] != 0) return b;
+            }
+            return -1;
+        }
+    }
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) counts[i] = new LongAdder();
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts[Math.min(64 - Long.numberOfLeadingZeros(nanos), BUCKETS - 1)].increment();
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /** Reads the histogram. Concurrent records may be partly included; totals never go backwards. */
+    public Snapshot snapshot() {
+        long[] c = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            c[i] = counts[i].sum();
+            count += c[i];
+        }
+        return new Snapshot(c, count, sum.sum(), max.get());
+    }
+
+    /** Largest value that falls into bucket {@code b}. */
+    static long upperBound(int b) {
+        return b >= 63 ? Long.MAX_VALUE : (1L << b) - 1;
+    }
+}
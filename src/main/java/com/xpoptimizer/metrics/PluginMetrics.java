@@ -0,0 +1,131 @@
+package com.xpoptimizer.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters and latency histograms for the orb hot path and persistence.
+ * <p>
+ * Every record method is a handful of {@link LongAdder} updates: no locks, no allocation, and
+ * safe from any region thread. Values are only summed when someone reads them, through
+ * {@code /xpstats metrics} or the Prometheus export.
+ */
+public final class PluginMetrics {
+
+    private final LongSupplier currentTick;
+    private final long startTick;
+
+    private final LongAdder orbsIntercepted = new LongAdder();
+    private final LongAdder orbsPassed = new LongAdder();
+    private final LongAdder orbsMerged = new LongAdder();
+    private final LongAdder orbsBanked = new LongAdder();
+    private final LongAdder deposits = new LongAdder();
+    private final LongAdder xpDeposited = new LongAdder();
+    private final LatencyHistogram orbEvent = new LatencyHistogram();
+    private final LatencyHistogram tickFlush = new LatencyHistogram();
+    private final LatencyHistogram save = new LatencyHistogram();
+
+    public PluginMetrics(LongSupplier currentTick) {
+        this.currentTick = currentTick;
+        this.startTick = currentTick.getAsLong();
+    }
+
+    /** One orb spawn seen by the listener, with the time spent handling it. */
+    public void recordOrb(boolean intercepted, long nanos) {
+        (intercepted ? orbsIntercepted : orbsPassed).increment();
+        orbEvent.record(nanos);
+    }
+
+    /** An orb nobody could collect, folded into an existing orb instead of spawning. */
+    public void recordMerge() {
+        orbsMerged.increment();
+    }
+
+    /** An orb nobody could collect, credited to the per-chunk ledger instead of spawning. */
+    public void recordBanked() {
+        orbsBanked.increment();
+    }
+
+    public void recordDeposit(int xp) {
+        deposits.increment();
+        xpDeposited.add(xp);
+    }
+
+    /** Time spent depositing a tick's batched XP. */
+    public void recordFlush(long nanos) {
+        tickFlush.record(nanos);
+    }
+
+    public void recordSave(long nanos) {
+        save.record(nanos);
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(
+                Math.max(1, currentTick.getAsLong() - startTick),
+                orbsIntercepted.sum(), orbsPassed.sum(), orbsMerged.sum(), orbsBanked.sum(),
+                deposits.sum(), xpDeposited.sum(),
+                orbEvent.snapshot(), tickFlush.snapshot(), save.snapshot());
+    }
+
+    public record Snapshot(
+            long elapsedTicks,
+            long orbsIntercepted,
+            long orbsPassed,
+            long orbsMerged,
+            long orbsBanked,
+            long deposits,
+            long xpDeposited,
+            LatencyHistogram.Snapshot orbEvent,
+            LatencyHistogram.Snapshot tickFlush,
+            LatencyHistogram.Snapshot save
+    ) {
+
+        /** Average main-path time the plugin costs per server tick, in nanoseconds. */
+        public long nanosPerTick() {
+            return (orbEvent.sumNanos() + tickFlush.sumNanos()) / elapsedTicks;
+        }
+
+        /**
+         * Human-readable (label, value) rows for {@code /xpstats metrics}. {@code gauges} are
+         * current sizes supplied by the caller, in display order.
+         */
+        public List<Map.Entry<String, String>> describe(Map<String, Long> gauges) {
+            List<Map.Entry<String, String>> rows = new ArrayList<>();
+            long orbs = orbsIntercepted + orbsPassed;
+            rows.add(Map.entry("Orbs intercepted", "%,d of %,d (%.1f%%)".formatted(
+                    orbsIntercepted, orbs, orbs == 0 ? 0.0 : 100.0 * orbsIntercepted / orbs)));
+            if (orbsMerged > 0) rows.add(Map.entry("Orbs merged", "%,d".formatted(orbsMerged)));
+            if (orbsBanked > 0) rows.add(Map.entry("Orbs banked", "%,d".formatted(orbsBanked)));
+            rows.add(Map.entry("XP deposited", "%,d in %,d deposits".formatted(xpDeposited, deposits)));
+            rows.add(Map.entry("Orb event", latency(orbEvent)));
+            rows.add(Map.entry("Tick flush", latency(tickFlush)));
+            rows.add(Map.entry("Cost per tick", formatNanos(nanosPerTick()) + " over " + "%,d".formatted(elapsedTicks) + " ticks"));
+            rows.add(Map.entry("Save", save.count() == 0 ? "none yet"
+                    : "%,d saves, mean %s, max %s".formatted(save.count(), formatNanos(save.meanNanos()), formatNanos(save.maxNanos()))));
+            for (Map.Entry<String, Long> gauge : gauges.entrySet()) {
+                rows.add(Map.entry(gauge.getKey(), "%,d".formatted(gauge.getValue())));
+            }
+            return rows;
+        }
+
+        private static String latency(LatencyHistogram.Snapshot h) {
+            if (h.count() == 0) return "no samples";
+            return "mean %s, p50 %s, p99 %s, max %s".formatted(
+                    formatNanos(h.meanNanos()),
+                    formatNanos(h.percentileNanos(0.50)),
+                    formatNanos(h.percentileNanos(0.99)),
+                    formatNanos(h.maxNanos()));
+        }
+    }
+
+    static String formatNanos(long nanos) {
+        if (nanos < 1_000) return nanos + "ns";
+        if (nanos < 1_000_000) return "%.1fµs".formatted(nanos / 1e3);
+        if (nanos < 1_000_000_000) return "%.2fms".formatted(nanos / 1e6);
+        return "%.2fs".formatted(nanos / 1e9);
+    }
+}
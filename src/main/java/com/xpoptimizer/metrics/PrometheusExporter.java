@@ -0,0 +1,83 @@
+package com.xpoptimizer.metrics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Writes {@link PluginMetrics} to {@code metrics.prom} in the Prometheus text format, for a
+ * node-exporter textfile collector or any scraper that can read a file. The file is replaced
+ * atomically so a scrape never sees half of it.
+ */
+public final class PrometheusExporter {
+
+    private static final String PREFIX = "xpoptimizer_";
+
+    private final Path file;
+    private final Logger logger;
+
+    public PrometheusExporter(File dataFolder, Logger logger) {
+        this.file = dataFolder.toPath().resolve("metrics.prom");
+        this.logger = logger;
+    }
+
+    /** {@code gauges} keys are lower_snake_case metric names without the plugin prefix. */
+    public void write(PluginMetrics.Snapshot m, Map<String, Long> gauges) {
+        Path tmp = file.resolveSibling("metrics.prom.tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                counter(out, "orbs_intercepted_total", "Orbs cancelled and deposited directly", m.orbsIntercepted());
+                counter(out, "orbs_passed_total", "Orbs no player could take (includes merged and banked orbs)", m.orbsPassed());
+                counter(out, "orbs_merged_total", "Unclaimed orbs folded into an existing orb", m.orbsMerged());
+                counter(out, "orbs_banked_total", "Unclaimed orbs credited to the chunk ledger", m.orbsBanked());
+                counter(out, "deposits_total", "XP deposits made into players", m.deposits());
+                counter(out, "xp_deposited_total", "XP deposited after multipliers", m.xpDeposited());
+                counter(out, "ticks_total", "Server ticks since the plugin was enabled", m.elapsedTicks());
+                histogram(out, "orb_event_seconds", "Time spent handling one orb spawn", m.orbEvent());
+                histogram(out, "tick_flush_seconds", "Time spent depositing batched XP at tick end", m.tickFlush());
+                histogram(out, "save_seconds", "Time spent saving stats", m.save());
+                for (Map.Entry<String, Long> gauge : gauges.entrySet()) {
+                    String name = PREFIX + gauge.getKey();
+                    out.write("# TYPE " + name + " gauge\n");
+                    out.write(name + " " + gauge.getValue() + "\n");
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warning("Failed to write metrics: " + e.getMessage());
+        }
+    }
+
+    private static void counter(BufferedWriter out, String name, String help, long value) throws IOException {
+        out.write("# HELP " + PREFIX + name + " " + help + "\n");
+        out.write("# TYPE " + PREFIX + name + " counter\n");
+        out.write(PREFIX + name + " " + value + "\n");
+    }
+
+    private static void histogram(BufferedWriter out, String name, String help, LatencyHistogram.Snapshot h) throws IOException {
+        String full = PREFIX + name;
+        out.write("# HELP " + full + " " + help + "\n");
+        out.write("# TYPE " + full + " histogram\n");
+        long cumulative = 0;
+        int highest = h.highestBucket();
+        for (int b = 0; b <= highest; b++) {
+            cumulative += h.counts()[b];
+            out.write(full + "_bucket{le=\"" + seconds(LatencyHistogram.upperBound(b)) + "\"} " + cumulative + "\n");
+        }
+        out.write(full + "_bucket{le=\"+Inf\"} " + h.count() + "\n");
+        out.write(full + "_sum " + seconds(h.sumNanos()) + "\n");
+        out.write(full + "_count " + h.count() + "\n");
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9g", nanos / 1e9);
+    }
+}
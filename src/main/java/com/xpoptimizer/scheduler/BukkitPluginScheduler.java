@@ -0,0 +1,64 @@
+package com.xpoptimizer.scheduler;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+final class BukkitPluginScheduler implements PluginScheduler {
+
+    private final Plugin plugin;
+
+    BukkitPluginScheduler(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean regionThreaded() {
+        return false;
+    }
+
+    @Override
+    public long currentTick() {
+        return plugin.getServer().getCurrentTick();
+    }
+
+    @Override
+    public void runGlobal(Runnable task) {
+        plugin.getServer().getScheduler().runTask(plugin, task);
+    }
+
+    @Override
+    public Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks) {
+        BukkitTask handle = plugin.getServer().getScheduler().runTaskTimer(plugin, task, delayTicks, periodTicks);
+        return handle::cancel;
+    }
+
+    @Override
+    public Task runAsyncTimer(Runnable task, long delayTicks, long periodTicks) {
+        BukkitTask handle = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, task, delayTicks, periodTicks);
+        return handle::cancel;
+    }
+
+    @Override
+    public void runAsync(Runnable task) {
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, task);
+    }
+
+    @Override
+    public void runAt(Location location, Runnable task) {
+        plugin.getServer().getScheduler().runTask(plugin, task);
+    }
+
+    @Override
+    public void runFor(Entity entity, Runnable task) {
+        plugin.getServer().getScheduler().runTask(plugin, () -> {
+            if (entity.isValid()) task.run();
+        });
+    }
+
+    @Override
+    public boolean isOwnedByCurrentThread(Entity entity) {
+        return plugin.getServer().isPrimaryThread();
+    }
+}
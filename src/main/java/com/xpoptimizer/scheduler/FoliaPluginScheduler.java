@@ -0,0 +1,70 @@
+package com.xpoptimizer.scheduler;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+
+import java.util.concurrent.TimeUnit;
+
+final class FoliaPluginScheduler implements PluginScheduler {
+
+    private static final long NANOS_PER_TICK = 50_000_000L;
+
+    private final Plugin plugin;
+    private final long epochNanos = System.nanoTime();
+
+    FoliaPluginScheduler(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean regionThreaded() {
+        return true;
+    }
+
+    /** Folia has no single server tick, so ticks are derived from wall time at the nominal 20 TPS. */
+    @Override
+    public long currentTick() {
+        return (System.nanoTime() - epochNanos) / NANOS_PER_TICK;
+    }
+
+    @Override
+    public void runGlobal(Runnable task) {
+        plugin.getServer().getGlobalRegionScheduler().execute(plugin, task);
+    }
+
+    @Override
+    public Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks) {
+        ScheduledTask handle = plugin.getServer().getGlobalRegionScheduler()
+                .runAtFixedRate(plugin, t -> task.run(), Math.max(1L, delayTicks), periodTicks);
+        return handle::cancel;
+    }
+
+    @Override
+    public Task runAsyncTimer(Runnable task, long delayTicks, long periodTicks) {
+        ScheduledTask handle = plugin.getServer().getAsyncScheduler()
+                .runAtFixedRate(plugin, t -> task.run(), delayTicks * 50L, periodTicks * 50L, TimeUnit.MILLISECONDS);
+        return handle::cancel;
+    }
+
+    @Override
+    public void runAsync(Runnable task) {
+        plugin.getServer().getAsyncScheduler().runNow(plugin, t -> task.run());
+    }
+
+    @Override
+    public void runAt(Location location, Runnable task) {
+        plugin.getServer().getRegionScheduler().execute(plugin, location, task);
+    }
+
+    @Override
+    public void runFor(Entity entity, Runnable task) {
+        entity.getScheduler().execute(plugin, task, null, 1L);
+    }
+
+    @Override
+    public boolean isOwnedByCurrentThread(Entity entity) {
+        return plugin.getServer().isOwnedByCurrentRegion(entity);
+    }
+}
@@ -0,0 +1,109 @@
+package com.xpoptimizer.scheduler;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs all of the plugin's file and database I/O on one virtual thread, in submission order, so
+ * loads, saves and reloads never overlap each other.
+ * <p>
+ * Every change to persisted state bumps a generation counter ({@link #markDirty}, one uncontended
+ * {@link LongAdder} add). A save reads the generation first and records it once written, so a
+ * timer firing with nothing new skips the save entirely. A save that reports a failure records
+ * nothing, so the state stays dirty and the next timer retries it. {@link #requestSave} coalesces: while one
+ * save is waiting to start, further requests are dropped, so a slow disk leaves at most one save
+ * running and one queued rather than a pile of them.
+ */
+public final class IoExecutor {
+
+    private final ExecutorService executor =
+            Executors.newSingleThreadExecutor(Thread.ofVirtual().name("XPOptimizer I/O").factory());
+    private final BooleanSupplier save;
+    private final Logger logger;
+    private final LongAdder generation = new LongAdder();
+    private final AtomicBoolean saveQueued = new AtomicBoolean();
+    private volatile long savedGeneration;
+
+    /** {@code save} writes everything the generation counter covers and returns whether it succeeded. */
+    public IoExecutor(BooleanSupplier save, Logger logger) {
+        this.save = save;
+        this.logger = logger;
+    }
+
+    /** Records a change to persisted state. Safe from any thread; call after applying the change. */
+    public void markDirty() {
+        generation.increment();
+    }
+
+    public boolean isDirty() {
+        return generation.sum() != savedGeneration;
+    }
+
+    /** Queues a save unless one is already waiting; the save is skipped if nothing changed. */
+    public void requestSave() {
+        if (!saveQueued.compareAndSet(false, true)) return;
+        if (!execute(() -> {
+            saveQueued.set(false);
+            runSave(false);
+        })) {
+            saveQueued.set(false);
+        }
+    }
+
+    /** Queues a save that runs even when clean, to retry anything an earlier save failed to write. */
+    public void requestFullSave() {
+        execute(() -> runSave(true));
+    }
+
+    private void runSave(boolean force) {
+        // Read before writing: changes that land during the save keep the state dirty
+        long gen = generation.sum();
+        if (!force && gen == savedGeneration) return;
+        if (save.getAsBoolean()) savedGeneration = gen;
+    }
+
+    /** Queues {@code task} behind all earlier I/O. Returns false once shut down. */
+    public boolean execute(Runnable task) {
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "I/O task failed", e);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /** Runs {@code task} behind all earlier I/O and waits for it, for startup loads. */
+    public void runAndWait(Runnable task) {
+        CompletableFuture.runAsync(task, executor).join();
+    }
+
+    /**
+     * Stops accepting work and waits up to {@code timeoutSeconds} for queued I/O to finish.
+     * Every store writes atomically (rename, checksummed journal records or a transaction), so a
+     * write cut short by the server exiting leaves the previous version in place.
+     */
+    public void shutdown(int timeoutSeconds) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS)) {
+                logger.warning("Saving did not finish within " + timeoutSeconds + "s; the last completed save is kept");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
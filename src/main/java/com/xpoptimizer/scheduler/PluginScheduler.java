@@ -0,0 +1,60 @@
+package com.xpoptimizer.scheduler;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Task dispatch that works on both Paper's single main thread and Folia's region threads.
+ * <p>
+ * On Paper every method maps onto the {@link org.bukkit.scheduler.BukkitScheduler}. On Folia,
+ * location and entity tasks run on the owning region thread and "global" tasks run on the
+ * global region, which must not touch entities or chunks.
+ */
+public interface PluginScheduler {
+
+    @FunctionalInterface
+    interface Task {
+        void cancel();
+    }
+
+    static PluginScheduler create(Plugin plugin) {
+        return isRegionThreaded() ? new FoliaPluginScheduler(plugin) : new BukkitPluginScheduler(plugin);
+    }
+
+    static boolean isRegionThreaded() {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /** True when ticking is split across region threads (Folia). */
+    boolean regionThreaded();
+
+    /** Monotonic server tick counter, safe to read from any thread. */
+    long currentTick();
+
+    /** Runs {@code task} on the main thread, or the global region on Folia, on the next tick. */
+    void runGlobal(Runnable task);
+
+    Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks);
+
+    Task runAsyncTimer(Runnable task, long delayTicks, long periodTicks);
+
+    void runAsync(Runnable task);
+
+    /** Runs {@code task} on the thread that owns {@code location}, on the next tick. */
+    void runAt(Location location, Runnable task);
+
+    /**
+     * Runs {@code task} on the thread that owns {@code entity}, on the next tick. The task is
+     * dropped if the entity is removed first.
+     */
+    void runFor(Entity entity, Runnable task);
+
+    /** True if the calling thread may read and modify {@code entity} right now. */
+    boolean isOwnedByCurrentThread(Entity entity);
+}
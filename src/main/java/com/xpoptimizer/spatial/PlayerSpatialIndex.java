@@ -0,0 +1,297 @@
+package com.xpoptimizer.spatial;
+
+import com.xpoptimizer.util.LongIntMap;
+import org.bukkit.GameMode;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.Arrays;
+
+/**
+ * Cell-bucketed index of players eligible to receive XP, maintained from player events.
+ * <p>
+ * Each world keeps a map from 16x16 column cell to the head of an intrusive linked list of player
+ * slots; coordinates live in flat {@code double} arrays. {@link #nearest} only visits the cells
+ * overlapping the search range and allocates nothing. Main-thread only.
+ */
+public final class PlayerSpatialIndex {
+
+    private static final int CELL_SHIFT = 4;
+    private static final int NONE = -1;
+
+    private static final class WorldGrid {
+        final World world;
+        final LongIntMap heads = new LongIntMap(64, NONE);
+
+        WorldGrid(World world) {
+            this.world = world;
+        }
+    }
+
+    private WorldGrid[] grids = new WorldGrid[0];
+
+    private final LongIntMap slotsByEntityId = new LongIntMap(64, NONE);
+    private Player[] players = new Player[32];
+    private WorldGrid[] slotGrids = new WorldGrid[32];
+    private double[] xs = new double[32];
+    private double[] ys = new double[32];
+    private double[] zs = new double[32];
+    private long[] cells = new long[32];
+    private int[] next = new int[32];
+    private int[] prev = new int[32];
+    private boolean[] eligible = new boolean[32];
+    private boolean[] linked = new boolean[32];
+
+    private int[] freeSlots = new int[32];
+    private int freeCount;
+    private int highWater;
+    private int scanned;
+
+    /** Starts tracking (or refreshes) a player from its live world, position and game mode. */
+    public void track(Player player) {
+        int slot = slotOf(player);
+        eligible[slot] = player.getGameMode() != GameMode.SPECTATOR;
+        place(slot, player.getWorld(), player.getX(), player.getY(), player.getZ());
+    }
+
+    public void move(Player player, World world, double x, double y, double z) {
+        int slot = slotsByEntityId.get(player.getEntityId());
+        if (slot == NONE) {
+            track(player);
+            return;
+        }
+        place(slot, world, x, y, z);
+    }
+
+    public void setEligible(Player player, boolean isEligible) {
+        int slot = slotsByEntityId.get(player.getEntityId());
+        if (slot == NONE || eligible[slot] == isEligible) return;
+        eligible[slot] = isEligible;
+        place(slot, slotGrids[slot] != null ? slotGrids[slot].world : player.getWorld(), xs[slot], ys[slot], zs[slot]);
+    }
+
+    public void remove(Player player) {
+        int slot = slotsByEntityId.remove(player.getEntityId());
+        if (slot == NONE) return;
+        unlink(slot);
+        players[slot] = null;
+        slotGrids[slot] = null;
+        if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        freeSlots[freeCount++] = slot;
+    }
+
+    public void removeWorld(World world) {
+        for (int slot = 0; slot < highWater; slot++) {
+            if (slotGrids[slot] != null && slotGrids[slot].world == world) {
+                unlink(slot);
+                slotGrids[slot] = null;
+            }
+        }
+        int idx = gridIndex(world);
+        if (idx == NONE) return;
+        WorldGrid[] shrunk = new WorldGrid[grids.length - 1];
+        System.arraycopy(grids, 0, shrunk, 0, idx);
+        System.arraycopy(grids, idx + 1, shrunk, idx, grids.length - idx - 1);
+        grids = shrunk;
+    }
+
+    /**
+     * Re-reads the live position of every tracked player. Catches movement that fires no move
+     * event, such as riding a vehicle or being pushed by pistons.
+     */
+    public void resync() {
+        for (int slot = 0; slot < highWater; slot++) {
+            Player player = players[slot];
+            if (player == null) continue;
+            place(slot, player.getWorld(), player.getX(), player.getY(), player.getZ());
+        }
+    }
+
+    public void clear() {
+        for (int slot = 0; slot < highWater; slot++) {
+            Player player = players[slot];
+            if (player != null) remove(player);
+        }
+        grids = new WorldGrid[0];
+    }
+
+    /**
+     * Returns the closest eligible player strictly within {@code rangeSq} of the point, or null.
+     */
+    public Player nearest(World world, double x, double y, double z, double range, double rangeSq) {
+        scanned = 0;
+        int idx = gridIndex(world);
+        if (idx == NONE) return null;
+        LongIntMap heads = grids[idx].heads;
+        if (heads.size() == 0) return null;
+
+        int minCx = (int) Math.floor(x - range) >> CELL_SHIFT;
+        int maxCx = (int) Math.floor(x + range) >> CELL_SHIFT;
+        int minCz = (int) Math.floor(z - range) >> CELL_SHIFT;
+        int maxCz = (int) Math.floor(z + range) >> CELL_SHIFT;
+
+        int best = NONE;
+        double bestDistSq = rangeSq;
+        for (int cx = minCx; cx <= maxCx; cx++) {
+            for (int cz = minCz; cz <= maxCz; cz++) {
+                for (int slot = heads.get(cellKey(cx, cz)); slot != NONE; slot = next[slot]) {
+                    scanned++;
+                    double dx = xs[slot] - x;
+                    double dy = ys[slot] - y;
+                    double dz = zs[slot] - z;
+                    double distSq = dx * dx + dy * dy + dz * dz;
+                    if (distSq < bestDistSq) {
+                        bestDistSq = distSq;
+                        best = slot;
+                    }
+                }
+            }
+        }
+        return best == NONE ? null : players[best];
+    }
+
+    /**
+     * Returns some eligible player strictly within {@code rangeSq} of the point, or null. Looks at
+     * the point's own cell first and stops at the first hit, so it is cheaper than {@link #nearest}
+     * but not necessarily the closest player. Used while the server is shedding load.
+     */
+    public Player any(World world, double x, double y, double z, double range, double rangeSq) {
+        scanned = 0;
+        int idx = gridIndex(world);
+        if (idx == NONE) return null;
+        LongIntMap heads = grids[idx].heads;
+        if (heads.size() == 0) return null;
+
+        int ownCx = (int) Math.floor(x) >> CELL_SHIFT;
+        int ownCz = (int) Math.floor(z) >> CELL_SHIFT;
+        int hit = firstWithin(heads.get(cellKey(ownCx, ownCz)), x, y, z, rangeSq);
+        if (hit != NONE) return players[hit];
+
+        int minCx = (int) Math.floor(x - range) >> CELL_SHIFT;
+        int maxCx = (int) Math.floor(x + range) >> CELL_SHIFT;
+        int minCz = (int) Math.floor(z - range) >> CELL_SHIFT;
+        int maxCz = (int) Math.floor(z + range) >> CELL_SHIFT;
+        for (int cx = minCx; cx <= maxCx; cx++) {
+            for (int cz = minCz; cz <= maxCz; cz++) {
+                if (cx == ownCx && cz == ownCz) continue;
+                hit = firstWithin(heads.get(cellKey(cx, cz)), x, y, z, rangeSq);
+                if (hit != NONE) return players[hit];
+            }
+        }
+        return null;
+    }
+
+    /** Players compared by the last {@link #nearest} or {@link #any}, for profiling. */
+    public int lastScanned() {
+        return scanned;
+    }
+
+    private int firstWithin(int head, double x, double y, double z, double rangeSq) {
+        for (int slot = head; slot != NONE; slot = next[slot]) {
+            scanned++;
+            double dx = xs[slot] - x;
+            double dy = ys[slot] - y;
+            double dz = zs[slot] - z;
+            if (dx * dx + dy * dy + dz * dz < rangeSq) return slot;
+        }
+        return NONE;
+    }
+
+    private void place(int slot, World world, double x, double y, double z) {
+        xs[slot] = x;
+        ys[slot] = y;
+        zs[slot] = z;
+
+        if (!eligible[slot]) {
+            unlink(slot);
+            slotGrids[slot] = grid(world);
+            return;
+        }
+
+        long cell = cellKey((int) Math.floor(x) >> CELL_SHIFT, (int) Math.floor(z) >> CELL_SHIFT);
+        WorldGrid grid = slotGrids[slot];
+        if (linked[slot] && grid != null && grid.world == world && cells[slot] == cell) return;
+
+        unlink(slot);
+        grid = grid(world);
+        slotGrids[slot] = grid;
+        cells[slot] = cell;
+
+        int head = grid.heads.get(cell);
+        next[slot] = head;
+        prev[slot] = NONE;
+        if (head != NONE) prev[head] = slot;
+        grid.heads.put(cell, slot);
+        linked[slot] = true;
+    }
+
+    private void unlink(int slot) {
+        if (!linked[slot]) return;
+        linked[slot] = false;
+        int p = prev[slot];
+        int n = next[slot];
+        if (p != NONE) {
+            next[p] = n;
+        } else if (n != NONE) {
+            slotGrids[slot].heads.put(cells[slot], n);
+        } else {
+            slotGrids[slot].heads.remove(cells[slot]);
+        }
+        if (n != NONE) prev[n] = p;
+    }
+
+    private int slotOf(Player player) {
+        int slot = slotsByEntityId.get(player.getEntityId());
+        if (slot != NONE) {
+            players[slot] = player;
+            return slot;
+        }
+
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (highWater == players.length) grow();
+            slot = highWater++;
+        }
+        players[slot] = player;
+        linked[slot] = false;
+        slotsByEntityId.put(player.getEntityId(), slot);
+        return slot;
+    }
+
+    private WorldGrid grid(World world) {
+        int idx = gridIndex(world);
+        if (idx != NONE) return grids[idx];
+        WorldGrid grid = new WorldGrid(world);
+        grids = Arrays.copyOf(grids, grids.length + 1);
+        grids[grids.length - 1] = grid;
+        return grid;
+    }
+
+    /** Linear scan by reference: servers have a handful of worlds, so this beats any hash lookup. */
+    private int gridIndex(World world) {
+        WorldGrid[] g = grids;
+        for (int i = 0; i < g.length; i++) {
+            if (g[i].world == world) return i;
+        }
+        return NONE;
+    }
+
+    private void grow() {
+        int capacity = players.length * 2;
+        players = Arrays.copyOf(players, capacity);
+        slotGrids = Arrays.copyOf(slotGrids, capacity);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        zs = Arrays.copyOf(zs, capacity);
+        cells = Arrays.copyOf(cells, capacity);
+        next = Arrays.copyOf(next, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        eligible = Arrays.copyOf(eligible, capacity);
+        linked = Arrays.copyOf(linked, capacity);
+    }
+
+    private static long cellKey(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,91 @@
+package com.xpoptimizer.stats;
+
+import java.io.File;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Every total held in heap, with an incrementally maintained leaderboard and the binary journal
+ * for persistence. All reads are non-blocking.
+ */
+public final class MemoryStatsStore implements StatsStore {
+
+    private final XPLeaderboard leaderboard = new XPLeaderboard();
+    private final XPStatsStore totals = new XPStatsStore(leaderboard);
+    private final StatsJournal journal;
+
+    public MemoryStatsStore(File dataFolder, Logger logger) {
+        this.journal = new StatsJournal(dataFolder, logger);
+    }
+
+    @Override
+    public void load() {
+        journal.load(totals);
+    }
+
+    @Override
+    public boolean save() {
+        leaderboard.applyPending();
+        return journal.save(totals);
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public Backend backend() {
+        return Backend.JOURNAL;
+    }
+
+    @Override
+    public boolean blockingReads() {
+        return false;
+    }
+
+    @Override
+    public void add(UUID id, long amount) {
+        totals.add(id, amount);
+    }
+
+    @Override
+    public long get(UUID id) {
+        return totals.get(id);
+    }
+
+    @Override
+    public void reset(UUID id) {
+        totals.remove(id);
+    }
+
+    @Override
+    public long size() {
+        return totals.size();
+    }
+
+    @Override
+    public int pendingWrites() {
+        return totals.dirtyCount();
+    }
+
+    @Override
+    public long ioBytes() {
+        return journal.ioBytes();
+    }
+
+    @Override
+    public List<XPLeaderboard.Ranked> top(int count) {
+        return leaderboard.top(count);
+    }
+
+    @Override
+    public int rankOf(UUID id) {
+        long total = totals.get(id);
+        return total > 0 ? leaderboard.rankOf(id, total) : 0;
+    }
+
+    @Override
+    public void forEach(XPStatsStore.EntryVisitor visitor) {
+        totals.forEach(visitor);
+    }
+}
@@ -0,0 +1,687 @@
+package com.xpoptimizer.stats;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Totals split over {@value #SHARDS} hashed shard files, with only online and recently queried
+ * players held in memory, so startup time and heap use follow concurrent players rather than
+ * everyone who ever collected XP.
+ * <p>
+ * The deposit path only adds to a table of pending increments. A save groups them by shard and
+ * rewrites just the shards that changed, each through a temp file and an atomic rename. A
+ * player's on-disk total is read when it logs in ({@link #preload}, from the async pre-login
+ * event) and kept while it is online; on quit or a refused login ({@link #release}) its XP is
+ * written back and the entry moves to a bounded LRU of recently seen players. Logins are counted,
+ * so a release that lands after the player has logged in again leaves it online. Any other player
+ * is read from its shard on demand and joins the LRU.
+ * <p>
+ * The leaderboard is a persisted {@link TopIndex} of the best {@value #TOP_INDEX_SIZE} totals,
+ * updated as shards are written, so it reflects the last save. Ranks beyond it are estimated from
+ * a {@link TotalHistogram}, built one shard at a time on the first such query and kept up to date
+ * as shards are written.
+ * <p>
+ * Reads never save. A save holds {@code saveLock} throughout, but holds {@code stateLock}, which
+ * logins and reads wait on, for only one shard at a time. Full scans run without it: shard files
+ * are only ever replaced by atomic rename, and writers are held off by {@code saveLock}.
+ *
+ * <pre>
+ * stats-shards/NN.dat: int magic, int count, count * (long msb, long lsb, long total), int crc
+ * stats-shards/top.dat: int magic, int size, byte exhaustive, size * entry, int crc
+ * </pre>
+ */
+public final class ShardedStatsStore implements StatsStore {
+
+    static final int SHARDS = 256;
+    static final int TOP_INDEX_SIZE = 1000;
+
+    private static final int SHARD_MAGIC = 0x58504831; // "XPH1"
+    private static final int TOP_MAGIC = 0x58505431;   // "XPT1"
+    private static final int HEADER_BYTES = 8;
+    private static final int ENTRY_BYTES = 24;
+    private static final long[] NO_ENTRIES = new long[0];
+
+    private final Path dir;
+    private final File dataFolder;
+    private final Logger logger;
+    private final CRC32 crc = new CRC32();
+
+    /** Increments not yet written. The only structure the deposit path touches. */
+    private final XPStatsStore pending = new XPStatsStore();
+
+    /** Guards {@link #resets} and the hand-off from {@link #pending} to a save. */
+    private final Object resetLock = new Object();
+    /** Players reset since the last save, as (msb, lsb) pairs. */
+    private long[] resets = new long[8];
+    private int resetCount;
+
+    /** Held for a whole save; the only lock under which shard files are written. */
+    private final Object saveLock = new Object();
+    /** Increments taken from {@link #pending} for the current save, as (msb, lsb, delta) triples. */
+    private long[] batch = new long[3 * 64];
+    private int batchLength;
+
+    // Everything below is guarded by stateLock, which is only ever held for one shard's I/O
+    private final Object stateLock = new Object();
+    /** On-disk totals of online players. */
+    private final Map<UUID, long[]> online = new HashMap<>();
+    /** Preloads not yet released, per online player. */
+    private final Map<UUID, Integer> logins = new HashMap<>();
+    /** On-disk totals of recently seen or queried players, least recently used first. */
+    private final LinkedHashMap<UUID, long[]> recent;
+    private final int[] shardSizes = new int[SHARDS];
+    private TopIndex topIndex = new TopIndex(TOP_INDEX_SIZE);
+    private boolean topIndexDirty;
+    private final TotalHistogram histogram = new TotalHistogram();
+    /** Shards whose entries are counted in {@link #histogram}. */
+    private final boolean[] histogramShards = new boolean[SHARDS];
+    private int histogramShardCount;
+
+    private volatile long entryCount;
+    /** Written under {@code stateLock}. */
+    private volatile long ioBytes;
+
+    public ShardedStatsStore(File dataFolder, int residentCacheSize, Logger logger) {
+        this.dataFolder = dataFolder;
+        this.dir = dataFolder.toPath().resolve("stats-shards");
+        this.logger = logger;
+        this.recent = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, long[]> eldest) {
+                return size() > residentCacheSize;
+            }
+        };
+    }
+
+    /**
+     * Reads shard headers and the leaderboard index. Imports the binary journal the first time,
+     * and rebuilds the index by scanning the shards if it is missing or damaged.
+     */
+    @Override
+    public void load() {
+        synchronized (saveLock) {
+            synchronized (stateLock) {
+                loadLocked();
+            }
+        }
+    }
+
+    private void loadLocked() {
+        try {
+            Files.createDirectories(dir);
+            if (!Files.exists(topFile()) && !hasShards()) importJournal();
+            long total = 0;
+            for (int shard = 0; shard < SHARDS; shard++) {
+                shardSizes[shard] = readShardSize(shard);
+                total += shardSizes[shard];
+            }
+            entryCount = total;
+        } catch (IOException e) {
+            logger.warning("Failed to load XP stat shards: " + e.getMessage());
+        }
+        if (!readTopIndex()) {
+            topIndex.rebuildFrom(this::scanShards);
+            writeTopIndex();
+        }
+    }
+
+    @Override
+    public boolean save() {
+        synchronized (saveLock) {
+            return saveAll();
+        }
+    }
+
+    @Override
+    public void close() {
+        save();
+    }
+
+    @Override
+    public Backend backend() {
+        return Backend.SHARDED;
+    }
+
+    @Override
+    public boolean blockingReads() {
+        return true;
+    }
+
+    /** Reads the player's shard ahead of the join so {@link #get} is served from memory. */
+    public void preload(UUID id) {
+        synchronized (stateLock) {
+            long[] base = recent.remove(id);
+            if (base == null) base = online.get(id);
+            if (base == null) base = new long[] {readTotal(id)};
+            online.put(id, base);
+            logins.merge(id, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Ends one {@link #preload}: once none is left, writes the player's XP back and moves it from
+     * the online set to the LRU. Only the player's own shard is written; everyone else's
+     * increments wait for the next save.
+     */
+    public void release(UUID id) {
+        synchronized (stateLock) {
+            Integer count = logins.get(id);
+            if (count == null) return;
+            if (count > 1) {
+                logins.put(id, count - 1);
+                return;
+            }
+            logins.remove(id);
+        }
+        if (pending.get(id) != 0 || resetQueued(id)) {
+            synchronized (saveLock) {
+                savePlayer(id);
+            }
+        }
+        synchronized (stateLock) {
+            if (logins.containsKey(id)) return; // logged in again during the write-back
+            long[] base = online.remove(id);
+            if (base != null) recent.put(id, base);
+        }
+    }
+
+    @Override
+    public void add(UUID id, long amount) {
+        pending.add(id, amount);
+    }
+
+    @Override
+    public long get(UUID id) {
+        synchronized (stateLock) {
+            return (resetQueued(id) ? 0 : base(id)) + pending.get(id);
+        }
+    }
+
+    /**
+     * Drops the player's unwritten increments and queues its removal. The next save applies
+     * removals before increments, so increments that arrive after the reset survive it.
+     */
+    @Override
+    public void reset(UUID id) {
+        synchronized (resetLock) {
+            pending.remove(id);
+            if (resetCount + 2 > resets.length) resets = Arrays.copyOf(resets, resets.length * 2);
+            resets[resetCount++] = id.getMostSignificantBits();
+            resets[resetCount++] = id.getLeastSignificantBits();
+        }
+    }
+
+    @Override
+    public long size() {
+        return entryCount;
+    }
+
+    @Override
+    public int pendingWrites() {
+        return pending.size();
+    }
+
+    @Override
+    public long ioBytes() {
+        return ioBytes;
+    }
+
+    /** The best totals as of the last save. */
+    @Override
+    public List<XPLeaderboard.Ranked> top(int count) {
+        synchronized (stateLock) {
+            return topIndex.top(count);
+        }
+    }
+
+    /** Exact inside the top {@value #TOP_INDEX_SIZE}, estimated from the histogram beyond it. */
+    @Override
+    public int rankOf(UUID id) {
+        long total = get(id);
+        if (total <= 0) return 0;
+        synchronized (stateLock) {
+            int rank = topIndex.rankOf(id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (rank > 0) return rank;
+        }
+        fillHistogram();
+        synchronized (stateLock) {
+            // Never report a rank the index says belongs to someone else
+            long rank = Math.max(histogram.rankOf(total), topIndex.size() + 1L);
+            return (int) Math.min(rank, Integer.MAX_VALUE);
+        }
+    }
+
+    /** Visits the totals as of the last save. Reads every shard, but blocks no login or read. */
+    @Override
+    public void forEach(XPStatsStore.EntryVisitor visitor) {
+        scanShards(visitor);
+    }
+
+    /**
+     * Counts every shard not yet in the histogram, holding {@code stateLock} for one shard at a
+     * time. Each shard is read and counted under one hold, so no write-back falls in between.
+     */
+    private void fillHistogram() {
+        for (int shard = 0; shard < SHARDS; shard++) {
+            synchronized (stateLock) {
+                if (histogramShardCount == SHARDS) return;
+                if (histogramShards[shard]) continue;
+                long[] entries = readShardOrEmpty(shard);
+                for (int i = 0; i < entries.length; i += 3) histogram.add(entries[i + 2]);
+                histogramShards[shard] = true;
+                histogramShardCount++;
+            }
+        }
+    }
+
+    // --- Residency (caller holds stateLock) ---
+
+    /** The player's on-disk total, reading its shard into the LRU if it is not resident. */
+    private long base(UUID id) {
+        long[] base = online.get(id);
+        if (base == null) base = recent.get(id);
+        if (base == null) {
+            base = new long[] {readTotal(id)};
+            recent.put(id, base);
+        }
+        return base[0];
+    }
+
+    private void updateResident(long msb, long lsb, long total) {
+        UUID id = new UUID(msb, lsb);
+        long[] base = online.get(id);
+        if (base == null) base = recent.get(id);
+        if (base != null) base[0] = total;
+    }
+
+    private boolean resetQueued(UUID id) {
+        long msb = id.getMostSignificantBits(), lsb = id.getLeastSignificantBits();
+        synchronized (resetLock) {
+            for (int i = 0; i < resetCount; i += 2) {
+                if (resets[i] == msb && resets[i + 1] == lsb) return true;
+            }
+        }
+        return false;
+    }
+
+    private long readTotal(UUID id) {
+        long msb = id.getMostSignificantBits(), lsb = id.getLeastSignificantBits();
+        long[] entries = readShardOrEmpty(shardOf(msb, lsb));
+        for (int i = 0; i < entries.length; i += 3) {
+            if (entries[i] == msb && entries[i + 1] == lsb) return entries[i + 2];
+        }
+        return 0;
+    }
+
+    // --- Saving (caller holds saveLock) ---
+
+    /** Returns false if any shard or the index failed to write; failed shards are queued again. */
+    private boolean saveAll() {
+        long[] deletes;
+        synchronized (resetLock) {
+            deletes = resetCount == 0 ? NO_ENTRIES : Arrays.copyOf(resets, resetCount);
+            resetCount = 0;
+            batchLength = 0;
+            pending.drainAll(this::stage);
+        }
+
+        boolean written = true;
+        if (deletes.length > 0 || batchLength > 0) {
+            boolean[] touched = new boolean[SHARDS];
+            for (int i = 0; i < deletes.length; i += 2) touched[shardOf(deletes[i], deletes[i + 1])] = true;
+            for (int i = 0; i < batchLength; i += 3) touched[shardOf(batch[i], batch[i + 1])] = true;
+            for (int shard = 0; shard < SHARDS; shard++) {
+                if (!touched[shard]) continue;
+                synchronized (stateLock) {
+                    written &= writeBack(shard, deletes);
+                }
+            }
+            batchLength = 0;
+        }
+        return finishSave() && written;
+    }
+
+    /** Writes back one player's shard with only that player's pending changes. */
+    private void savePlayer(UUID id) {
+        long msb = id.getMostSignificantBits(), lsb = id.getLeastSignificantBits();
+        long[] deletes;
+        synchronized (resetLock) {
+            deletes = takeResets(msb, lsb);
+            batchLength = 0;
+            long delta = pending.remove(id);
+            if (delta != 0) stage(msb, lsb, delta);
+        }
+        if (deletes.length > 0 || batchLength > 0) {
+            synchronized (stateLock) {
+                writeBack(shardOf(msb, lsb), deletes);
+            }
+            batchLength = 0;
+        }
+        finishSave();
+    }
+
+    /** Removes and returns the player's queued resets. Caller holds resetLock. */
+    private long[] takeResets(long msb, long lsb) {
+        int kept = 0, taken = 0;
+        for (int i = 0; i < resetCount; i += 2) {
+            if (resets[i] == msb && resets[i + 1] == lsb) {
+                taken += 2;
+            } else {
+                resets[kept++] = resets[i];
+                resets[kept++] = resets[i + 1];
+            }
+        }
+        resetCount = kept;
+        if (taken == 0) return NO_ENTRIES;
+        long[] deletes = new long[taken];
+        for (int i = 0; i < taken; i += 2) {
+            deletes[i] = msb;
+            deletes[i + 1] = lsb;
+        }
+        return deletes;
+    }
+
+    /** Refills the top index if resets emptied it, then persists it if it changed. False if that failed. */
+    private boolean finishSave() {
+        boolean rebuild;
+        synchronized (stateLock) {
+            rebuild = topIndex.needsRebuild();
+        }
+        if (rebuild) {
+            // The scan runs without stateLock; saveLock keeps every shard still until the swap
+            TopIndex rebuilt = new TopIndex(TOP_INDEX_SIZE);
+            rebuilt.rebuildFrom(this::scanShards);
+            synchronized (stateLock) {
+                topIndex = rebuilt;
+                topIndexDirty = true;
+            }
+        }
+        synchronized (stateLock) {
+            return !topIndexDirty || writeTopIndex();
+        }
+    }
+
+    /**
+     * Applies this save's removals, then its increments, to one shard. Returns false if the shard
+     * could not be read or written; its part of the save is then queued again. Caller holds
+     * stateLock.
+     */
+    private boolean writeBack(int shard, long[] deletes) {
+        XPStatsStore entries = new XPStatsStore();
+        long[] onDisk;
+        try {
+            onDisk = readShard(shard);
+        } catch (IOException e) {
+            logger.warning("Failed to read XP stat shard " + shard + ", retrying next save: " + e.getMessage());
+            requeue(shard, deletes);
+            return false;
+        }
+        for (int i = 0; i < onDisk.length; i += 3) entries.put(new UUID(onDisk[i], onDisk[i + 1]), onDisk[i + 2]);
+
+        // Totals before this save of everyone it touches, to move them in the histogram
+        XPStatsStore before = histogramShards[shard] ? new XPStatsStore() : null;
+        if (before != null) {
+            for (int i = 0; i < deletes.length; i += 2) {
+                if (shardOf(deletes[i], deletes[i + 1]) == shard) remember(before, entries, deletes[i], deletes[i + 1]);
+            }
+            for (int i = 0; i < batchLength; i += 3) {
+                if (shardOf(batch[i], batch[i + 1]) == shard) remember(before, entries, batch[i], batch[i + 1]);
+            }
+        }
+
+        for (int i = 0; i < deletes.length; i += 2) {
+            if (shardOf(deletes[i], deletes[i + 1]) == shard) entries.remove(new UUID(deletes[i], deletes[i + 1]));
+        }
+        for (int i = 0; i < batchLength; i += 3) {
+            if (shardOf(batch[i], batch[i + 1]) == shard) entries.add(batch[i], batch[i + 1], batch[i + 2]);
+        }
+
+        try {
+            writeShard(shard, entries);
+        } catch (IOException e) {
+            logger.warning("Failed to write XP stat shard " + shard + ", retrying next save: " + e.getMessage());
+            requeue(shard, deletes);
+            return false;
+        }
+
+        entryCount += entries.size() - shardSizes[shard];
+        shardSizes[shard] = entries.size();
+        for (int i = 0; i < deletes.length; i += 2) {
+            if (shardOf(deletes[i], deletes[i + 1]) != shard) continue;
+            updateResident(deletes[i], deletes[i + 1], 0);
+            topIndexDirty |= topIndex.update(deletes[i], deletes[i + 1], XPStatsStore.ABSENT);
+        }
+        for (int i = 0; i < batchLength; i += 3) {
+            if (shardOf(batch[i], batch[i + 1]) != shard) continue;
+            long total = entries.get(new UUID(batch[i], batch[i + 1]));
+            updateResident(batch[i], batch[i + 1], total);
+            topIndexDirty |= topIndex.update(batch[i], batch[i + 1], total);
+        }
+        if (before != null) {
+            before.forEach((msb, lsb, old) -> {
+                histogram.remove(old);
+                histogram.add(entries.get(new UUID(msb, lsb)));
+            });
+        }
+        return true;
+    }
+
+    private static void remember(XPStatsStore before, XPStatsStore entries, long msb, long lsb) {
+        UUID id = new UUID(msb, lsb);
+        if (before.get(id) == 0) before.put(id, entries.get(id));
+    }
+
+    private void stage(long msb, long lsb, long delta) {
+        if (batchLength + 3 > batch.length) batch = Arrays.copyOf(batch, batch.length * 2);
+        batch[batchLength++] = msb;
+        batch[batchLength++] = lsb;
+        batch[batchLength++] = delta;
+    }
+
+    /**
+     * Puts one shard's part of a failed save back. Its increments all postdate its removals;
+     * increments for a player reset since the save began are dropped, as that reset would have
+     * dropped them had they still been pending.
+     */
+    private void requeue(int shard, long[] deletes) {
+        synchronized (resetLock) {
+            int resetSinceSave = resetCount;
+            for (int i = 0; i < batchLength; i += 3) {
+                if (shardOf(batch[i], batch[i + 1]) != shard) continue;
+                if (!containsPair(resets, resetSinceSave, batch[i], batch[i + 1])) {
+                    pending.add(batch[i], batch[i + 1], batch[i + 2]);
+                }
+            }
+            for (int i = 0; i < deletes.length; i += 2) {
+                if (shardOf(deletes[i], deletes[i + 1]) != shard) continue;
+                if (resetCount + 2 > resets.length) resets = Arrays.copyOf(resets, resets.length * 2);
+                resets[resetCount++] = deletes[i];
+                resets[resetCount++] = deletes[i + 1];
+            }
+        }
+    }
+
+    private static boolean containsPair(long[] pairs, int length, long msb, long lsb) {
+        for (int i = 0; i < length; i += 2) {
+            if (pairs[i] == msb && pairs[i + 1] == lsb) return true;
+        }
+        return false;
+    }
+
+    // --- Shard files (caller holds stateLock unless noted) ---
+
+    /**
+     * Visits every shard without taking {@code stateLock}. Damaged shards are skipped here and
+     * left for a locked read to set aside.
+     */
+    private void scanShards(XPStatsStore.EntryVisitor visitor) {
+        CRC32 scanCrc = new CRC32();
+        long bytesRead = 0;
+        for (int shard = 0; shard < SHARDS; shard++) {
+            Path file = shardFile(shard);
+            long[] entries;
+            try {
+                if (!Files.exists(file)) continue;
+                byte[] bytes = Files.readAllBytes(file);
+                bytesRead += bytes.length;
+                entries = decodeShard(bytes, scanCrc);
+            } catch (NoSuchFileException e) {
+                continue;
+            } catch (IOException e) {
+                logger.warning("Failed to read XP stat shard " + shard + ": " + e.getMessage());
+                continue;
+            }
+            if (entries == null) continue;
+            for (int i = 0; i < entries.length; i += 3) visitor.visit(entries[i], entries[i + 1], entries[i + 2]);
+        }
+        synchronized (stateLock) {
+            ioBytes += bytesRead;
+        }
+    }
+
+    private long[] readShardOrEmpty(int shard) {
+        try {
+            return readShard(shard);
+        } catch (IOException e) {
+            logger.warning("Failed to read XP stat shard " + shard + ": " + e.getMessage());
+            return NO_ENTRIES;
+        }
+    }
+
+    /** Returns the shard as (msb, lsb, total) triples. A damaged shard is set aside and read as empty. */
+    private long[] readShard(int shard) throws IOException {
+        Path file = shardFile(shard);
+        if (!Files.exists(file)) return NO_ENTRIES;
+        byte[] bytes = Files.readAllBytes(file);
+        ioBytes += bytes.length;
+        long[] entries = decodeShard(bytes, crc);
+        if (entries == null) {
+            Path aside = file.resolveSibling(file.getFileName() + ".corrupt");
+            Files.move(file, aside, StandardCopyOption.REPLACE_EXISTING);
+            logger.warning("XP stat shard " + file.getFileName() + " is damaged; moved it to " + aside.getFileName());
+            return NO_ENTRIES;
+        }
+        return entries;
+    }
+
+    /** Returns the shard's (msb, lsb, total) triples, or null if it fails its checks. Needs no lock. */
+    private static long[] decodeShard(byte[] bytes, CRC32 crc) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        int count = bytes.length >= HEADER_BYTES + 4 && buf.getInt() == SHARD_MAGIC ? buf.getInt() : -1;
+        crc.reset();
+        crc.update(bytes, 0, Math.max(0, bytes.length - 4));
+        if (count < 0 || bytes.length != HEADER_BYTES + (long) count * ENTRY_BYTES + 4
+                || (int) crc.getValue() != buf.getInt(bytes.length - 4)) {
+            return null;
+        }
+        long[] entries = new long[count * 3];
+        buf.position(HEADER_BYTES);
+        buf.asLongBuffer().get(entries);
+        return entries;
+    }
+
+    private int readShardSize(int shard) throws IOException {
+        Path file = shardFile(shard);
+        if (!Files.exists(file)) return 0;
+        long bytes = Files.size(file);
+        return (int) Math.max(0, (bytes - HEADER_BYTES - 4) / ENTRY_BYTES);
+    }
+
+    private void writeShard(int shard, XPStatsStore entries) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + entries.size() * ENTRY_BYTES + 4);
+        buf.putInt(SHARD_MAGIC);
+        buf.putInt(entries.size());
+        entries.forEach((msb, lsb, total) -> {
+            buf.putLong(msb);
+            buf.putLong(lsb);
+            buf.putLong(total);
+        });
+        writeAtomically(shardFile(shard), buf);
+    }
+
+    private boolean readTopIndex() {
+        Path file = topFile();
+        if (!Files.exists(file)) return false;
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            ioBytes += bytes.length;
+            ByteBuffer buf = ByteBuffer.wrap(bytes, 0, Math.max(0, bytes.length - 4));
+            crc.reset();
+            crc.update(bytes, 0, Math.max(0, bytes.length - 4));
+            if (bytes.length < 13 || buf.getInt() != TOP_MAGIC
+                    || (int) crc.getValue() != ByteBuffer.wrap(bytes).getInt(bytes.length - 4)
+                    || !topIndex.readFrom(buf)) {
+                logger.warning("Rebuilding the XP leaderboard index; top.dat is damaged");
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            logger.warning("Failed to read the XP leaderboard index: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean writeTopIndex() {
+        ByteBuffer buf = ByteBuffer.allocate(4 + topIndex.encodedBytes() + 4);
+        buf.putInt(TOP_MAGIC);
+        topIndex.writeTo(buf);
+        try {
+            writeAtomically(topFile(), buf);
+            topIndexDirty = false;
+            return true;
+        } catch (IOException e) {
+            logger.warning("Failed to write the XP leaderboard index: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /** Appends a CRC of everything written so far, then replaces {@code file} by atomic rename. */
+    private void writeAtomically(Path file, ByteBuffer buf) throws IOException {
+        crc.reset();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putInt((int) crc.getValue());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, buf.array());
+        ioBytes += buf.capacity();
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** One-time migration from the binary journal when switching to this backend. */
+    private void importJournal() throws IOException {
+        XPStatsStore legacy = new XPStatsStore();
+        new StatsJournal(dataFolder, logger).load(legacy);
+        if (legacy.size() == 0) return;
+
+        XPStatsStore[] shards = new XPStatsStore[SHARDS];
+        for (int i = 0; i < SHARDS; i++) shards[i] = new XPStatsStore();
+        legacy.forEach((msb, lsb, total) -> shards[shardOf(msb, lsb)].put(new UUID(msb, lsb), total));
+        for (int shard = 0; shard < SHARDS; shard++) {
+            if (shards[shard].size() > 0) writeShard(shard, shards[shard]);
+        }
+        logger.info("Imported " + legacy.size() + " XP totals from the stats journal into " + dir.getFileName());
+    }
+
+    private boolean hasShards() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.dat")) {
+            return files.iterator().hasNext();
+        }
+    }
+
+    private Path shardFile(int shard) {
+        return dir.resolve("%02x.dat".formatted(shard));
+    }
+
+    private Path topFile() {
+        return dir.resolve("top.dat");
+    }
+
+    static int shardOf(long msb, long lsb) {
+        long h = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 56);
+    }
+}
@@ -0,0 +1,454 @@
+package com.xpoptimizer.stats;
+
+import java.io.File;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Totals kept in an embedded SQLite database ({@code stats.db}), so heap use does not grow with
+ * every player who ever collected XP.
+ * <p>
+ * The deposit path only adds to an in-memory {@link XPStatsStore} of pending increments. A writer
+ * thread drains it every flush interval and applies what it found as one transaction of batched
+ * upserts, so a player collecting XP every tick costs one row update per flush. Reads flush what
+ * is pending and then query the database: totals are fetched per player on demand, and top-N is
+ * an {@code ORDER BY total DESC LIMIT n} over an index on the total.
+ * <p>
+ * Uses the SQLite JDBC driver bundled with the server.
+ */
+public final class SqlStatsStore implements StatsStore {
+
+    private static final String DRIVER = "org.sqlite.JDBC";
+    private static final int BATCH_SIZE = 512;
+    /** Payload of one row: msb, lsb and total. */
+    private static final int ROW_BYTES = 24;
+    private static final long ROW_COUNT_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private static final String CREATE_TABLE = """
+            CREATE TABLE IF NOT EXISTS xp_stats (
+                msb INTEGER NOT NULL,
+                lsb INTEGER NOT NULL,
+                total INTEGER NOT NULL,
+                PRIMARY KEY (msb, lsb)
+            ) WITHOUT ROWID""";
+    private static final String CREATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS xp_stats_by_total ON xp_stats (total DESC, msb, lsb)";
+    private static final String UPSERT = """
+            INSERT INTO xp_stats (msb, lsb, total) VALUES (?, ?, ?)
+            ON CONFLICT (msb, lsb) DO UPDATE SET total = total + excluded.total""";
+    private static final String DELETE = "DELETE FROM xp_stats WHERE msb = ? AND lsb = ?";
+    private static final String SELECT_TOTAL = "SELECT total FROM xp_stats WHERE msb = ? AND lsb = ?";
+    private static final String SELECT_TOP =
+            "SELECT msb, lsb, total FROM xp_stats ORDER BY total DESC, msb, lsb LIMIT ?";
+    // Entries ahead of (total, msb, lsb) in SELECT_TOP's order
+    private static final String COUNT_AHEAD = """
+            SELECT COUNT(*) FROM xp_stats
+            WHERE total > ? OR (total = ? AND (msb < ? OR (msb = ? AND lsb < ?)))""";
+
+    private final File dbFile;
+    private final File dataFolder;
+    private final Logger logger;
+    private final long flushIntervalNanos;
+
+    /** Increments not yet written. The only structure the deposit path touches. */
+    private final XPStatsStore pending = new XPStatsStore();
+
+    /** Guards {@link #resets} and the hand-off from {@link #pending} to a flush. */
+    private final Object resetLock = new Object();
+    /** Players reset since the last flush, as (msb, lsb) pairs. */
+    private long[] resets = new long[8];
+    private int resetCount;
+
+    /** Guards the connection, its statements and {@link #batch}. Held for a whole flush or read. */
+    private final Object dbLock = new Object();
+    private Connection connection;
+    private PreparedStatement upsert;
+    private PreparedStatement delete;
+    /** Increments taken from {@link #pending} for the current flush, as (msb, lsb, delta) triples. */
+    private long[] batch = new long[3 * 64];
+    private int batchLength;
+    private long rowCountAt;
+
+    private volatile long rowCount;
+    /** Written under {@code dbLock}. */
+    private volatile long ioBytes;
+    private volatile boolean running;
+    private Thread writer;
+
+    public SqlStatsStore(File dataFolder, int flushIntervalMillis, Logger logger) {
+        this.dataFolder = dataFolder;
+        this.dbFile = new File(dataFolder, "stats.db");
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.logger = logger;
+    }
+
+    /**
+     * Opens {@code stats.db} and creates the schema. Returns false, having logged why, if the
+     * driver is missing or the database cannot be opened; the caller then uses another backend.
+     */
+    public boolean open() {
+        try {
+            Class.forName(DRIVER);
+        } catch (ClassNotFoundException e) {
+            logger.warning("SQLite driver not found on this server");
+            return false;
+        }
+        synchronized (dbLock) {
+            try {
+                if (!dataFolder.isDirectory() && !dataFolder.mkdirs()) {
+                    throw new SQLException("cannot create " + dataFolder);
+                }
+                connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
+                try (Statement st = connection.createStatement()) {
+                    // WAL lets commits append instead of rewriting pages in place
+                    st.execute("PRAGMA journal_mode=WAL");
+                    st.execute("PRAGMA synchronous=NORMAL");
+                    st.execute(CREATE_TABLE);
+                    st.execute(CREATE_INDEX);
+                }
+                upsert = connection.prepareStatement(UPSERT);
+                delete = connection.prepareStatement(DELETE);
+                return true;
+            } catch (SQLException e) {
+                logger.warning("Failed to open " + dbFile.getName() + ": " + e.getMessage());
+                closeQuietly();
+                return false;
+            }
+        }
+    }
+
+    /** Imports the journal on first use, then starts the writer thread. Requires {@link #open}. */
+    @Override
+    public void load() {
+        synchronized (dbLock) {
+            refreshRowCount();
+            if (rowCount == 0) importJournal();
+        }
+        running = true;
+        writer = new Thread(this::runWriter, "XPOptimizer Stats Writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public boolean save() {
+        synchronized (dbLock) {
+            return flushLocked();
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        Thread w = writer;
+        if (w != null) {
+            LockSupport.unpark(w);
+            try {
+                w.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (dbLock) {
+            flushLocked();
+            closeQuietly();
+        }
+    }
+
+    @Override
+    public Backend backend() {
+        return Backend.SQLITE;
+    }
+
+    @Override
+    public boolean blockingReads() {
+        return true;
+    }
+
+    @Override
+    public void add(UUID id, long amount) {
+        pending.add(id, amount);
+    }
+
+    @Override
+    public long get(UUID id) {
+        synchronized (dbLock) {
+            flushLocked();
+            if (connection == null) return 0;
+            try (PreparedStatement st = connection.prepareStatement(SELECT_TOTAL)) {
+                st.setLong(1, id.getMostSignificantBits());
+                st.setLong(2, id.getLeastSignificantBits());
+                try (ResultSet rs = st.executeQuery()) {
+                    return rs.next() ? rs.getLong(1) : 0;
+                }
+            } catch (SQLException e) {
+                logger.warning("Failed to read XP stats: " + e.getMessage());
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Drops the player's unwritten increments and queues the row's deletion. The next flush runs
+     * deletions before upserts, so increments that arrive after the reset survive it.
+     */
+    @Override
+    public void reset(UUID id) {
+        synchronized (resetLock) {
+            pending.remove(id);
+            if (resetCount + 2 > resets.length) resets = Arrays.copyOf(resets, resets.length * 2);
+            resets[resetCount++] = id.getMostSignificantBits();
+            resets[resetCount++] = id.getLeastSignificantBits();
+        }
+    }
+
+    @Override
+    public long size() {
+        return rowCount;
+    }
+
+    @Override
+    public int pendingWrites() {
+        return pending.size();
+    }
+
+    @Override
+    public long ioBytes() {
+        return ioBytes;
+    }
+
+    @Override
+    public List<XPLeaderboard.Ranked> top(int count) {
+        synchronized (dbLock) {
+            flushLocked();
+            if (connection == null) return List.of();
+            try (PreparedStatement st = connection.prepareStatement(SELECT_TOP)) {
+                st.setInt(1, count);
+                List<XPLeaderboard.Ranked> top = new ArrayList<>(count);
+                try (ResultSet rs = st.executeQuery()) {
+                    while (rs.next()) {
+                        top.add(new XPLeaderboard.Ranked(top.size() + 1,
+                                new UUID(rs.getLong(1), rs.getLong(2)), rs.getLong(3)));
+                    }
+                }
+                return top;
+            } catch (SQLException e) {
+                logger.warning("Failed to read XP leaderboard: " + e.getMessage());
+                return List.of();
+            }
+        }
+    }
+
+    @Override
+    public int rankOf(UUID id) {
+        synchronized (dbLock) {
+            long total = get(id);
+            if (total <= 0 || connection == null) return 0;
+            long msb = id.getMostSignificantBits();
+            long lsb = id.getLeastSignificantBits();
+            try (PreparedStatement st = connection.prepareStatement(COUNT_AHEAD)) {
+                st.setLong(1, total);
+                st.setLong(2, total);
+                st.setLong(3, msb);
+                st.setLong(4, msb);
+                st.setLong(5, lsb);
+                try (ResultSet rs = st.executeQuery()) {
+                    return rs.next() ? (int) Math.min(rs.getLong(1) + 1, Integer.MAX_VALUE) : 0;
+                }
+            } catch (SQLException e) {
+                logger.warning("Failed to read XP rank: " + e.getMessage());
+                return 0;
+            }
+        }
+    }
+
+    /** Streams every row to the visitor. Holds the database for the whole scan. */
+    @Override
+    public void forEach(XPStatsStore.EntryVisitor visitor) {
+        synchronized (dbLock) {
+            flushLocked();
+            if (connection == null) return;
+            try (Statement st = connection.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT msb, lsb, total FROM xp_stats")) {
+                while (rs.next()) visitor.visit(rs.getLong(1), rs.getLong(2), rs.getLong(3));
+            } catch (SQLException e) {
+                logger.warning("Failed to read XP stats: " + e.getMessage());
+            }
+        }
+    }
+
+    // --- Writer ---
+
+    private void runWriter() {
+        while (running) {
+            LockSupport.parkNanos(this, flushIntervalNanos);
+            if (!running) break;
+            synchronized (dbLock) {
+                flushLocked();
+            }
+        }
+    }
+
+    /**
+     * Writes pending resets and increments in one transaction. Returns false if the flush failed
+     * and was queued again, or there is no database. Caller holds {@link #dbLock}.
+     */
+    private boolean flushLocked() {
+        if (connection == null) return false;
+
+        long[] deletes;
+        synchronized (resetLock) {
+            deletes = resetCount == 0 ? null : Arrays.copyOf(resets, resetCount);
+            resetCount = 0;
+            batchLength = 0;
+            pending.drainAll(this::stage);
+        }
+        if (deletes == null && batchLength == 0) {
+            maybeRefreshRowCount();
+            return true;
+        }
+
+        boolean written = false;
+        try {
+            connection.setAutoCommit(false);
+            if (deletes != null) {
+                for (int i = 0; i < deletes.length; i += 2) {
+                    delete.setLong(1, deletes[i]);
+                    delete.setLong(2, deletes[i + 1]);
+                    delete.addBatch();
+                }
+                delete.executeBatch();
+            }
+            upsertStaged();
+            connection.commit();
+            ioBytes += ((deletes != null ? deletes.length / 2 : 0) + batchLength / 3) * (long) ROW_BYTES;
+            written = true;
+        } catch (SQLException e) {
+            logger.warning("Failed to write XP stats, retrying next flush: " + e.getMessage());
+            try {
+                delete.clearBatch();
+                upsert.clearBatch();
+                connection.rollback();
+            } catch (SQLException ignored) {}
+            requeue(deletes);
+        } finally {
+            endTransaction();
+        }
+        maybeRefreshRowCount();
+        return written;
+    }
+
+    private void stage(long msb, long lsb, long delta) {
+        if (batchLength + 3 > batch.length) batch = Arrays.copyOf(batch, batch.length * 2);
+        batch[batchLength++] = msb;
+        batch[batchLength++] = lsb;
+        batch[batchLength++] = delta;
+    }
+
+    /**
+     * Puts a failed flush back. Staged increments all postdate the staged resets, so replaying
+     * deletions first stays correct; increments for a player reset since the snapshot are dropped,
+     * as that reset would have dropped them had they still been pending.
+     */
+    private void requeue(long[] deletes) {
+        synchronized (resetLock) {
+            int resetSinceSnapshot = resetCount;
+            for (int i = 0; i < batchLength; i += 3) {
+                if (!containsPair(resets, resetSinceSnapshot, batch[i], batch[i + 1])) {
+                    pending.add(batch[i], batch[i + 1], batch[i + 2]);
+                }
+            }
+            if (deletes != null) {
+                if (resetCount + deletes.length > resets.length) {
+                    resets = Arrays.copyOf(resets, Math.max(resets.length * 2, resetCount + deletes.length));
+                }
+                System.arraycopy(deletes, 0, resets, resetCount, deletes.length);
+                resetCount += deletes.length;
+            }
+        }
+        batchLength = 0;
+    }
+
+    private static boolean containsPair(long[] pairs, int length, long msb, long lsb) {
+        for (int i = 0; i < length; i += 2) {
+            if (pairs[i] == msb && pairs[i + 1] == lsb) return true;
+        }
+        return false;
+    }
+
+    private void maybeRefreshRowCount() {
+        if (System.nanoTime() - rowCountAt >= ROW_COUNT_REFRESH_NANOS) refreshRowCount();
+    }
+
+    /** COUNT(*) walks the whole table in SQLite, so {@link #size} reports a cached value. */
+    private void refreshRowCount() {
+        rowCountAt = System.nanoTime();
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM xp_stats")) {
+            if (rs.next()) rowCount = rs.getLong(1);
+        } catch (SQLException e) {
+            logger.warning("Failed to count XP stats: " + e.getMessage());
+        }
+    }
+
+    /** One-time migration from the binary journal when switching to this backend. */
+    private void importJournal() {
+        XPStatsStore legacy = new XPStatsStore();
+        new StatsJournal(dataFolder, logger).load(legacy);
+        if (legacy.size() == 0) return;
+
+        batchLength = 0;
+        legacy.forEach(this::stage);
+        int imported = batchLength / 3;
+        try {
+            connection.setAutoCommit(false);
+            upsertStaged();
+            connection.commit();
+            logger.info("Imported " + imported + " XP totals from the stats journal into " + dbFile.getName());
+        } catch (SQLException e) {
+            logger.warning("Failed to import XP stats: " + e.getMessage());
+            try {
+                upsert.clearBatch();
+                connection.rollback();
+            } catch (SQLException ignored) {}
+        } finally {
+            endTransaction();
+        }
+        batchLength = 0;
+        refreshRowCount();
+    }
+
+    /** Adds each staged delta to its row, creating rows as needed. Caller commits. */
+    private void upsertStaged() throws SQLException {
+        for (int i = 0, n = 0; i < batchLength; i += 3) {
+            upsert.setLong(1, batch[i]);
+            upsert.setLong(2, batch[i + 1]);
+            upsert.setLong(3, batch[i + 2]);
+            upsert.addBatch();
+            if (++n % BATCH_SIZE == 0) upsert.executeBatch();
+        }
+        upsert.executeBatch();
+    }
+
+    /** Returns the connection to autocommit, so reads between flushes hold no transaction open. */
+    private void endTransaction() {
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException ignored) {}
+    }
+
+    private void closeQuietly() {
+        try {
+            if (connection != null) connection.close();
+        } catch (SQLException ignored) {}
+        connection = null;
+        upsert = null;
+        delete = null;
+    }
+}
@@ -0,0 +1,347 @@
+package com.xpoptimizer.stats;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Binary persistence for {@link XPStatsStore}: a compacted snapshot plus an append-only journal.
+ * <p>
+ * Each save appends one CRC-checked frame holding only the entries changed since the last save,
+ * as absolute totals, so replay is idempotent. Once the journal outgrows the snapshot, the whole
+ * store is streamed to a temp file that is atomically renamed over the snapshot, and the journal
+ * starts over. The journal header carries the generation of the snapshot it extends, so a crash
+ * between those two renames never replays stale frames. A torn final frame fails its CRC and is
+ * cut off on the next load.
+ *
+ * <pre>
+ * stats.snapshot: int magic, long generation, long count, count * (long msb, long lsb, long total), int crc
+ * stats.journal:  int magic, long generation, then frames of int count, count * entry, int crc
+ * </pre>
+ * A journal entry whose total is {@link XPStatsStore#ABSENT} records a reset.
+ * <p>
+ * A snapshot that fails its format or checksum checks is moved aside as
+ * {@code stats.snapshot.corrupt} before anything can compact over it, and the journal is replayed
+ * on its own. If the files cannot be read at all, saving is disabled until the next start so the
+ * data on disk is never replaced by a partial store.
+ */
+public final class StatsJournal {
+
+    private static final int SNAPSHOT_MAGIC = 0x58505331; // "XPS1"
+    private static final int JOURNAL_MAGIC = 0x58504A31;  // "XPJ1"
+    private static final int ENTRY_BYTES = 24;
+    private static final int SNAPSHOT_HEADER_BYTES = 4 + 8 + 8;
+    private static final int JOURNAL_HEADER_BYTES = 4 + 8;
+    private static final int IO_CHUNK_BYTES = ENTRY_BYTES * 43_690; // ~1 MiB, whole entries only
+    private static final long MIN_COMPACT_BYTES = 4L << 20;
+    private static final Type LEGACY_TYPE = new TypeToken<Map<String, Long>>() {}.getType();
+
+    private final Path snapshotFile;
+    private final Path journalFile;
+    private final Path legacyFile;
+    private final Logger logger;
+    private final CRC32 crc = new CRC32();
+
+    private long generation;
+    private long snapshotBytes;
+    private volatile long ioBytes;
+    private boolean compactRequested;
+    /** Set when loading failed for a reason other than a damaged file; nothing is written then. */
+    private boolean loadFailed;
+    /** Set when the snapshot was moved aside; the journal is then replayed whatever its generation. */
+    private boolean snapshotDamaged;
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    public StatsJournal(File dataFolder, Logger logger) {
+        Path dir = dataFolder.toPath();
+        this.snapshotFile = dir.resolve("stats.snapshot");
+        this.journalFile = dir.resolve("stats.journal");
+        this.legacyFile = dir.resolve("stats.json");
+        this.logger = logger;
+    }
+
+    /** Replays snapshot and journal into {@code store}, importing a legacy stats.json if present. */
+    public synchronized void load(XPStatsStore store) {
+        try {
+            if (Files.exists(snapshotFile)) {
+                readSnapshot(store);
+            } else if (Files.exists(legacyFile)) {
+                importLegacy(store);
+                return;
+            }
+            if (Files.exists(journalFile)) replayJournal(store);
+        } catch (IOException e) {
+            loadFailed = true;
+            logger.severe("Failed to load XP stats: " + e.getMessage()
+                    + "; XP stats will not be saved until the plugin is restarted with readable files");
+        }
+    }
+
+    /**
+     * Appends everything changed since the last save, compacting instead if the journal is large.
+     * Returns false if nothing could be written; the next save then writes a full snapshot.
+     */
+    public synchronized boolean save(XPStatsStore store) {
+        if (loadFailed) return false;
+        try {
+            Files.createDirectories(snapshotFile.getParent());
+            if (compactRequested || journalSize() > Math.max(MIN_COMPACT_BYTES, snapshotBytes)) {
+                compact(store);
+            } else {
+                appendDirty(store);
+            }
+            return true;
+        } catch (IOException e) {
+            // The dirty set is already drained; a full snapshot next time is the only safe recovery
+            compactRequested = true;
+            logger.warning("Failed to save XP stats: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /** Bytes read and written since startup. */
+    public long ioBytes() {
+        return ioBytes;
+    }
+
+    // --- Snapshot ---
+
+    private void readSnapshot(XPStatsStore store) throws IOException {
+        String damage = loadSnapshot(store);
+        if (damage == null) return;
+        Path aside = snapshotFile.resolveSibling("stats.snapshot.corrupt");
+        Files.move(snapshotFile, aside, StandardCopyOption.REPLACE_EXISTING);
+        snapshotDamaged = true;
+        compactRequested = true;
+        logger.severe("stats.snapshot " + damage + "; moved it to " + aside.getFileName()
+                + " and loaded only the journal. Restore it from a backup to recover older totals.");
+    }
+
+    /** Loads the snapshot, or returns what is wrong with it without applying anything. */
+    private String loadSnapshot(XPStatsStore store) throws IOException {
+        try (FileChannel ch = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            long size = ch.size();
+            ByteBuffer header = readFully(ch, 0, SNAPSHOT_HEADER_BYTES);
+            if (header == null || header.getInt() != SNAPSHOT_MAGIC) return "has an unknown format";
+            long gen = header.getLong();
+            long count = header.getLong();
+            if (count < 0 || SNAPSHOT_HEADER_BYTES + count * ENTRY_BYTES + 4 != size) return "is truncated";
+
+            // Validate before applying anything, so a damaged file never half-loads
+            crc.reset();
+            long pos = SNAPSHOT_HEADER_BYTES;
+            long end = SNAPSHOT_HEADER_BYTES + count * ENTRY_BYTES;
+            while (pos < end) {
+                int len = (int) Math.min(IO_CHUNK_BYTES, end - pos);
+                crc.update(readFully(ch, pos, len));
+                pos += len;
+            }
+            ByteBuffer trailer = readFully(ch, end, 4);
+            if ((int) crc.getValue() != trailer.getInt()) return "failed its checksum";
+
+            pos = SNAPSHOT_HEADER_BYTES;
+            while (pos < end) {
+                int len = (int) Math.min(IO_CHUNK_BYTES, end - pos);
+                ByteBuffer chunk = readFully(ch, pos, len);
+                while (chunk.hasRemaining()) {
+                    store.put(new UUID(chunk.getLong(), chunk.getLong()), chunk.getLong());
+                }
+                pos += len;
+            }
+            generation = gen;
+            snapshotBytes = size;
+            return null;
+        }
+    }
+
+    private void compact(XPStatsStore store) throws IOException {
+        // Drain first: anything changed after this point is dirty again and lands in the new journal
+        store.drainDirty((msb, lsb, total) -> {});
+        compactRequested = false;
+
+        long nextGeneration = generation + 1;
+        Path tmp = snapshotFile.resolveSibling("stats.snapshot.tmp");
+        long count = 0;
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long pos = SNAPSHOT_HEADER_BYTES;
+            crc.reset();
+            // One stripe at a time: copy under the stripe lock, write with no lock held
+            for (int stripe = 0; stripe < store.stripeCount(); stripe++) {
+                buffer.clear();
+                store.forEachInStripe(stripe, this::bufferEntry);
+                buffer.flip();
+                count += buffer.remaining() / ENTRY_BYTES;
+                crc.update(buffer.duplicate());
+                pos += writeFully(ch, pos, buffer);
+            }
+
+            ByteBuffer trailer = ByteBuffer.allocate(4).putInt((int) crc.getValue()).flip();
+            writeFully(ch, pos, trailer);
+            ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER_BYTES)
+                    .putInt(SNAPSHOT_MAGIC).putLong(nextGeneration).putLong(count).flip();
+            writeFully(ch, 0, header);
+            ch.force(true);
+            snapshotBytes = pos + 4;
+        }
+        Files.move(tmp, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        generation = nextGeneration;
+        writeEmptyJournal();
+    }
+
+    // --- Journal ---
+
+    private void appendDirty(XPStatsStore store) throws IOException {
+        buffer.clear();
+        buffer.position(4);
+        store.drainDirty(this::bufferEntry);
+        int bodyBytes = buffer.position() - 4;
+        if (bodyBytes == 0) return;
+
+        if (buffer.remaining() < 4) growBuffer();
+        buffer.putInt(0, bodyBytes / ENTRY_BYTES);
+        crc.reset();
+        crc.update(buffer.slice(4, bodyBytes));
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+
+        if (!Files.exists(journalFile)) writeEmptyJournal();
+        ioBytes += buffer.remaining();
+        try (FileChannel ch = FileChannel.open(journalFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) ch.write(buffer);
+            ch.force(false);
+        }
+    }
+
+    private void replayJournal(XPStatsStore store) throws IOException {
+        try (FileChannel ch = FileChannel.open(journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = readFully(ch, 0, JOURNAL_HEADER_BYTES);
+            if (header == null || header.getInt() != JOURNAL_MAGIC) {
+                logger.warning("Ignoring unreadable stats.journal");
+                compactRequested = true;
+                return;
+            }
+            long journalGeneration = header.getLong();
+            if (snapshotDamaged) {
+                // Its frames hold absolute totals, the newest data left; continue its generation
+                generation = journalGeneration;
+            } else if (journalGeneration != generation) {
+                // Left over from before the last compaction; its frames are already in the snapshot
+                compactRequested = true;
+                return;
+            }
+
+            long size = ch.size();
+            long pos = JOURNAL_HEADER_BYTES;
+            int frames = 0;
+            while (pos + 4 <= size) {
+                int count = readFully(ch, pos, 4).getInt();
+                long bodyBytes = (long) count * ENTRY_BYTES;
+                if (count <= 0 || pos + 4 + bodyBytes + 4 > size) break;
+                ByteBuffer body = readFully(ch, pos + 4, (int) bodyBytes + 4);
+                crc.reset();
+                crc.update(body.slice(0, (int) bodyBytes));
+                if ((int) crc.getValue() != body.getInt((int) bodyBytes)) break;
+
+                for (int i = 0; i < count; i++) {
+                    UUID id = new UUID(body.getLong(), body.getLong());
+                    long total = body.getLong();
+                    if (total == XPStatsStore.ABSENT) {
+                        store.remove(id);
+                    } else {
+                        store.put(id, total);
+                    }
+                }
+                pos += 4 + bodyBytes + 4;
+                frames++;
+            }
+            if (pos < size) {
+                logger.warning("Discarding " + (size - pos) + " bytes of incomplete stats.journal after " + frames + " frames");
+                ch.truncate(pos);
+                ch.force(true);
+            }
+        }
+        // Replayed removals mark keys dirty; they are already durable
+        store.drainDirty((msb, lsb, total) -> {});
+    }
+
+    private void writeEmptyJournal() throws IOException {
+        Path tmp = journalFile.resolveSibling("stats.journal.tmp");
+        ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_BYTES).putInt(JOURNAL_MAGIC).putLong(generation).flip();
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(ch, 0, header);
+            ch.force(true);
+        }
+        Files.move(tmp, journalFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private long journalSize() throws IOException {
+        return Files.exists(journalFile) ? Files.size(journalFile) : 0L;
+    }
+
+    // --- Buffers ---
+
+    private void bufferEntry(long msb, long lsb, long total) {
+        if (buffer.remaining() < ENTRY_BYTES) growBuffer();
+        buffer.putLong(msb).putLong(lsb).putLong(total);
+    }
+
+    private void growBuffer() {
+        ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        bigger.put(buffer);
+        buffer = bigger;
+    }
+
+    /** Reads exactly {@code len} bytes at {@code pos}, or returns null at end of file. */
+    private ByteBuffer readFully(FileChannel ch, long pos, int len) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(len);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, pos + buf.position()) < 0) break;
+        }
+        ioBytes += buf.position();
+        return buf.hasRemaining() ? null : buf.flip();
+    }
+
+    private int writeFully(FileChannel ch, long pos, ByteBuffer buf) throws IOException {
+        int len = buf.remaining();
+        ioBytes += len;
+        while (buf.hasRemaining()) {
+            ch.write(buf, pos + (len - buf.remaining()));
+        }
+        return len;
+    }
+
+    // --- Legacy stats.json ---
+
+    private void importLegacy(XPStatsStore store) throws IOException {
+        try (Reader reader = Files.newBufferedReader(legacyFile, StandardCharsets.UTF_8)) {
+            Map<String, Long> raw = new Gson().fromJson(reader, LEGACY_TYPE);
+            if (raw != null) {
+                raw.forEach((key, value) -> {
+                    try {
+                        store.put(UUID.fromString(key), value);
+                    } catch (IllegalArgumentException e) {
+                        logger.warning("Skipping invalid UUID in stats.json: " + key);
+                    }
+                });
+            }
+        }
+        Files.createDirectories(snapshotFile.getParent());
+        compact(store);
+        Files.move(legacyFile, legacyFile.resolveSibling("stats.json.migrated"), StandardCopyOption.REPLACE_EXISTING);
+        logger.info("Migrated stats.json to the binary stats.snapshot format.");
+    }
+}
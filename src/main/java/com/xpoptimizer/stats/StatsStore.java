@@ -0,0 +1,58 @@
+package com.xpoptimizer.stats;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Lifetime XP totals and the leaderboard over them, independent of where they are kept.
+ * <p>
+ * {@link #add} runs on the deposit path, on any thread, and must never block. Reads may block
+ * when {@link #blockingReads()} is true; callers then run them off the main thread.
+ */
+public interface StatsStore {
+
+    enum Backend { JOURNAL, SQLITE, SHARDED }
+
+    /** The backend this store implements; may differ from the configured one after a fallback. */
+    Backend backend();
+
+    /** Loads or opens the backing storage. Called once on enable. */
+    void load();
+
+    /**
+     * Persists pending changes. Called from the auto-save task and on disable. Returns false if
+     * anything could not be written; it is kept and retried by the next save.
+     */
+    boolean save();
+
+    /** Releases the backing storage after a final {@link #save}. */
+    void close();
+
+    boolean blockingReads();
+
+    void add(UUID id, long amount);
+
+    long get(UUID id);
+
+    void reset(UUID id);
+
+    /** Number of players with stats. Database backends may return a recent count. */
+    long size();
+
+    /** Changes accepted but not yet persisted, for metrics. */
+    int pendingWrites();
+
+    /**
+     * Bytes read from and written to storage since startup, for profiling. The SQLITE backend
+     * counts the row payloads it hands to the database, not the pages the database writes.
+     */
+    long ioBytes();
+
+    /** Returns the {@code count} highest totals, best first. */
+    List<XPLeaderboard.Ranked> top(int count);
+
+    /** Returns the player's 1-based leaderboard position, or 0 if it has no stats. */
+    int rankOf(UUID id);
+
+    void forEach(XPStatsStore.EntryVisitor visitor);
+}
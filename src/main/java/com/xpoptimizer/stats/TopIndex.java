@@ -0,0 +1,162 @@
+package com.xpoptimizer.stats;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The highest totals of a store too large to rank in memory, kept in sorted parallel arrays in
+ * {@link XPLeaderboard} order (total descending, then UUID).
+ * <p>
+ * The index always holds the exact top {@link #size()} entries. Totals only grow, so an entry
+ * ahead of the last one is inserted and the last one dropped when full. Removing a member (a
+ * reset) of a full index loses knowledge of who comes next, which clears {@link #exhaustive()}:
+ * the owner then refills it with {@link #rebuildFrom} on its next pass. Not thread-safe.
+ */
+final class TopIndex {
+
+    private final int capacity;
+    private final long[] msbs;
+    private final long[] lsbs;
+    private final long[] totals;
+    private int size;
+    /** True when the index holds every entry of the store, so anything may be appended. */
+    private boolean exhaustive = true;
+
+    TopIndex(int capacity) {
+        this.capacity = capacity;
+        this.msbs = new long[capacity];
+        this.lsbs = new long[capacity];
+        this.totals = new long[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean exhaustive() {
+        return exhaustive;
+    }
+
+    /** True when removals left it short of entries it can no longer name. */
+    boolean needsRebuild() {
+        return !exhaustive && size < capacity;
+    }
+
+    /** Applies a player's new total, or {@link XPStatsStore#ABSENT} for a removal. Returns true if the index changed. */
+    boolean update(long msb, long lsb, long total) {
+        int at = indexOf(msb, lsb);
+        boolean wasFull = size == capacity;
+        if (at >= 0) {
+            if (total != XPStatsStore.ABSENT && totals[at] == total) return false;
+            System.arraycopy(msbs, at + 1, msbs, at, size - at - 1);
+            System.arraycopy(lsbs, at + 1, lsbs, at, size - at - 1);
+            System.arraycopy(totals, at + 1, totals, at, size - at - 1);
+            size--;
+        }
+        boolean inserted = total != XPStatsStore.ABSENT && total > 0 && offer(msb, lsb, total);
+        // A full index that lost a member no longer knows who comes next
+        if (at >= 0 && !inserted && wasFull) exhaustive = false;
+        return at >= 0 || inserted;
+    }
+
+    /** Inserts a non-member if it belongs in the index. */
+    private boolean offer(long msb, long lsb, long total) {
+        boolean afterLast = size == 0 || compare(total, msb, lsb, size - 1) > 0;
+        if (afterLast && (size == capacity || !exhaustive)) return false;
+        if (size == capacity) {
+            size--;
+            exhaustive = false;
+        }
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(total, msb, lsb, mid) > 0) lo = mid + 1; else hi = mid;
+        }
+        System.arraycopy(msbs, lo, msbs, lo + 1, size - lo);
+        System.arraycopy(lsbs, lo, lsbs, lo + 1, size - lo);
+        System.arraycopy(totals, lo, totals, lo + 1, size - lo);
+        msbs[lo] = msb;
+        lsbs[lo] = lsb;
+        totals[lo] = total;
+        size++;
+        return true;
+    }
+
+    /** Returns the 1-based rank of a member, or 0 if the player is not in the index. */
+    int rankOf(long msb, long lsb) {
+        return indexOf(msb, lsb) + 1;
+    }
+
+    List<XPLeaderboard.Ranked> top(int k) {
+        int n = Math.min(k, size);
+        List<XPLeaderboard.Ranked> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(new XPLeaderboard.Ranked(i + 1, new UUID(msbs[i], lsbs[i]), totals[i]));
+        }
+        return result;
+    }
+
+    /** Every entry of the owning store, visited in any order. */
+    interface Source {
+        void forEach(XPStatsStore.EntryVisitor visitor);
+    }
+
+    /** Refills from a full scan of the store. */
+    void rebuildFrom(Source source) {
+        size = 0;
+        exhaustive = true;
+        source.forEach((msb, lsb, total) -> {
+            if (total > 0) offer(msb, lsb, total);
+        });
+    }
+
+    // --- Persistence ---
+
+    int encodedBytes() {
+        return 4 + 1 + size * 24;
+    }
+
+    void writeTo(ByteBuffer buf) {
+        buf.putInt(size);
+        buf.put((byte) (exhaustive ? 1 : 0));
+        for (int i = 0; i < size; i++) {
+            buf.putLong(msbs[i]);
+            buf.putLong(lsbs[i]);
+            buf.putLong(totals[i]);
+        }
+    }
+
+    /** Replaces the contents; false (leaving it empty and not exhaustive) if the data does not fit. */
+    boolean readFrom(ByteBuffer buf) {
+        size = 0;
+        exhaustive = false;
+        int count = buf.getInt();
+        boolean wasExhaustive = buf.get() != 0;
+        if (count < 0 || count > capacity || buf.remaining() < count * 24) return false;
+        for (int i = 0; i < count; i++) {
+            msbs[i] = buf.getLong();
+            lsbs[i] = buf.getLong();
+            totals[i] = buf.getLong();
+        }
+        size = count;
+        exhaustive = wasExhaustive;
+        return true;
+    }
+
+    private int indexOf(long msb, long lsb) {
+        for (int i = 0; i < size; i++) {
+            if (msbs[i] == msb && lsbs[i] == lsb) return i;
+        }
+        return -1;
+    }
+
+    /** Negative if (total, msb, lsb) sorts before entry {@code i}, as in {@link XPLeaderboard}. */
+    private int compare(long total, long msb, long lsb, int i) {
+        if (total != totals[i]) return total > totals[i] ? -1 : 1;
+        if (msb != msbs[i]) return msb < msbs[i] ? -1 : 1;
+        if (lsb != lsbs[i]) return lsb < lsbs[i] ? -1 : 1;
+        return 0;
+    }
+}
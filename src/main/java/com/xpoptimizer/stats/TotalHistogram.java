@@ -0,0 +1,40 @@
+package com.xpoptimizer.stats;
+
+/**
+ * How many players hold each total, counted in log-linear buckets, so a rank beyond the
+ * {@link TopIndex} costs a pass over a few thousand counters instead of a scan of every shard.
+ * <p>
+ * Each power of two is split into {@value #SUB_BUCKETS} buckets, so players are only ranked
+ * approximately against others within about 3% of their total; totals below
+ * {@value #SUB_BUCKETS} are exact. Not thread-safe.
+ */
+final class TotalHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final long[] counts = new long[64 * SUB_BUCKETS];
+
+    void add(long total) {
+        if (total > 0) counts[bucketOf(total)]++;
+    }
+
+    void remove(long total) {
+        if (total > 0) counts[bucketOf(total)]--;
+    }
+
+    /** Estimated 1-based rank: everyone in a higher bucket, plus half of the others in this one. */
+    long rankOf(long total) {
+        int bucket = bucketOf(total);
+        long ahead = 0;
+        for (int i = counts.length - 1; i > bucket; i--) ahead += counts[i];
+        return ahead + Math.max(0, counts[bucket] - 1) / 2 + 1;
+    }
+
+    /** Bucket of a positive total; larger totals never map to a lower bucket. */
+    static int bucketOf(long total) {
+        int exponent = 63 - Long.numberOfLeadingZeros(total);
+        long mantissa = exponent >= SUB_BITS ? total >>> (exponent - SUB_BITS) : total << (SUB_BITS - exponent);
+        return exponent * SUB_BUCKETS + (int) (mantissa & (SUB_BUCKETS - 1));
+    }
+}
@@ -0,0 +1,117 @@
+package com.xpoptimizer.stats;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Persistence for {@link XPWindowStats}. The whole table is small (only players active in the
+ * last {@value XPWindowStats#DAYS} days), so each save rewrites it to a temp file that replaces
+ * {@code stats-windows.dat} atomically, and only when something changed.
+ *
+ * <pre>
+ * int magic, then per entry: byte 1, long msb, long lsb, int lastDay, DAYS * int bucket;
+ * then byte 0, int crc of everything before it
+ * </pre>
+ */
+public final class WindowStatsFile {
+
+    private static final int FILE_MAGIC = 0x58505731; // "XPW1"
+
+    private final Path file;
+    private final Logger logger;
+
+    public WindowStatsFile(File dataFolder, Logger logger) {
+        this.file = dataFolder.toPath().resolve("stats-windows.dat");
+        this.logger = logger;
+    }
+
+    public synchronized void load(XPWindowStats stats) {
+        if (!Files.exists(file)) return;
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file)), crc))) {
+            if (in.readInt() != FILE_MAGIC) {
+                logger.warning("Ignoring stats-windows.dat with an unknown format");
+                return;
+            }
+            // Validate the whole file before applying it, so a damaged file never half-loads
+            int count = 0;
+            while (in.readByte() == 1) {
+                in.skipNBytes(8 + 8 + 4 + XPWindowStats.DAYS * 4);
+                count++;
+            }
+            int expected = (int) crc.getValue();
+            if (in.readInt() != expected) {
+                logger.warning("Ignoring stats-windows.dat: checksum mismatch");
+                return;
+            }
+            readEntries(stats, count);
+        } catch (IOException e) {
+            logger.warning("Failed to load windowed XP stats: " + e.getMessage());
+        }
+    }
+
+    private void readEntries(XPWindowStats stats, int count) throws IOException {
+        int[] buckets = new int[XPWindowStats.DAYS];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            in.readInt();
+            for (int n = 0; n < count; n++) {
+                in.readByte();
+                long msb = in.readLong(), lsb = in.readLong();
+                int lastDay = in.readInt();
+                for (int d = 0; d < buckets.length; d++) buckets[d] = in.readInt();
+                stats.put(msb, lsb, lastDay, buckets);
+            }
+        }
+    }
+
+    /**
+     * Rewrites the file if anything changed since the last save. Returns false if the write
+     * failed. Safe to call off the main thread.
+     */
+    public synchronized boolean save(XPWindowStats stats) {
+        // Taken first: a change racing with the write marks it dirty again for the next save
+        if (!stats.takeDirty()) return true;
+
+        Path tmp = file.resolveSibling("stats-windows.dat.tmp");
+        CRC32 crc = new CRC32();
+        try {
+            Files.createDirectories(file.getParent());
+            try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp)), crc))) {
+                out.writeInt(FILE_MAGIC);
+                // Each stripe is copied to memory under its lock and written to disk after releasing it
+                ByteArrayOutputStream stripeBytes = new ByteArrayOutputStream(64 * 1024);
+                DataOutputStream stripeOut = new DataOutputStream(stripeBytes);
+                for (int stripe = 0; stripe < stats.stripeCount(); stripe++) {
+                    stripeBytes.reset();
+                    stats.forEachInStripe(stripe, (msb, lsb, lastDay, buckets, offset) -> {
+                        try {
+                            stripeOut.writeByte(1);
+                            stripeOut.writeLong(msb);
+                            stripeOut.writeLong(lsb);
+                            stripeOut.writeInt(lastDay);
+                            for (int d = 0; d < XPWindowStats.DAYS; d++) stripeOut.writeInt(buckets[offset + d]);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e); // in-memory stream; cannot happen
+                        }
+                    });
+                    stripeBytes.writeTo(out);
+                }
+                out.writeByte(0);
+                out.flush();
+                out.writeInt((int) crc.getValue());
+            }
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException e) {
+            stats.markDirty();
+            logger.warning("Failed to save windowed XP stats: " + e.getMessage());
+            return false;
+        }
+    }
+}
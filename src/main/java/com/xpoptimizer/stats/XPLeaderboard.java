@@ -0,0 +1,327 @@
+package com.xpoptimizer.stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Order-statistic treap over every player's total, kept in step with {@link XPStatsStore}.
+ * <p>
+ * Nodes live in parallel primitive arrays and are ordered by total descending, then UUID, so each
+ * key is unique and an entry can be found again from its previous total without a side map.
+ * Subtree sizes make "top K" cost O(K + log n) and "rank of" cost O(log n).
+ * <p>
+ * Changes do not touch the treap when they happen. {@link #onChange} only records them in one of
+ * several striped pending tables, coalesced per player, so deposits on different threads never
+ * share a lock. Reads and {@link #applyPending} fold the pending changes in, in one batch.
+ */
+public final class XPLeaderboard implements XPStatsStore.ChangeListener {
+
+    public record Ranked(int rank, UUID playerId, long total) {}
+
+    /** Node 0 is the null sentinel; its size stays 0 so size lookups need no branch. */
+    private static final int NIL = 0;
+
+    private static final int PENDING_BITS = 6;
+    private static final int PENDING_STRIPES = 1 << PENDING_BITS;
+
+    /**
+     * Players changed since the last apply, open-addressed. {@code oldTotals} is the total the
+     * treap holds for the player, {@code newTotals} the latest one.
+     */
+    private static final class Pending {
+        long[] msbs = new long[16];
+        long[] lsbs = new long[16];
+        long[] oldTotals = new long[16];
+        long[] newTotals = new long[16];
+        boolean[] used = new boolean[16];
+        int size;
+    }
+
+    private final Pending[] pending = new Pending[PENDING_STRIPES];
+
+    // Changes copied out of one pending stripe, applied after its lock is released (guarded by this)
+    private long[] batch = new long[64];
+
+    private long[] totals = new long[64];
+    private long[] msbs = new long[64];
+    private long[] lsbs = new long[64];
+    private int[] left = new int[64];
+    private int[] right = new int[64];
+    private int[] sizes = new int[64];
+    private int[] priorities = new int[64];
+    private int root = NIL;
+    private int highWater = 1;
+    private int freeHead = NIL;
+    private int seed = 0x2545F491;
+
+    // Outputs of split(), valid right after a call
+    private int splitLeft, splitRight;
+
+    public XPLeaderboard() {
+        for (int i = 0; i < PENDING_STRIPES; i++) pending[i] = new Pending();
+    }
+
+    /** Records the change for the next apply. Takes only the player's pending stripe lock. */
+    @Override
+    public void onChange(long msb, long lsb, long oldTotal, long newTotal) {
+        int h = hash(msb, lsb);
+        Pending p = pending[h & (PENDING_STRIPES - 1)];
+        synchronized (p) {
+            int mask = p.used.length - 1;
+            int i = (h >>> PENDING_BITS) & mask;
+            while (p.used[i]) {
+                if (p.msbs[i] == msb && p.lsbs[i] == lsb) {
+                    // The treap still holds the first old total; only the latest new one matters
+                    p.newTotals[i] = newTotal;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            p.used[i] = true;
+            p.msbs[i] = msb;
+            p.lsbs[i] = lsb;
+            p.oldTotals[i] = oldTotal;
+            p.newTotals[i] = newTotal;
+            if (++p.size * 3 > p.used.length * 2) growPending(p);
+        }
+    }
+
+    /**
+     * Folds every pending change into the treap. Reads do this themselves; the auto-save calls it
+     * too so the pending tables stay small when nobody reads.
+     */
+    public synchronized void applyPending() {
+        for (Pending p : pending) {
+            int n;
+            synchronized (p) {
+                if (p.size == 0) continue;
+                n = p.size;
+                if (batch.length < n * 4) batch = new long[Integer.highestOneBit(n * 4) << 1];
+                int k = 0;
+                boolean[] used = p.used;
+                for (int i = 0; i < used.length; i++) {
+                    if (!used[i]) continue;
+                    batch[k++] = p.msbs[i];
+                    batch[k++] = p.lsbs[i];
+                    batch[k++] = p.oldTotals[i];
+                    batch[k++] = p.newTotals[i];
+                }
+                if (used.length > 1024) {
+                    p.msbs = new long[16];
+                    p.lsbs = new long[16];
+                    p.oldTotals = new long[16];
+                    p.newTotals = new long[16];
+                    p.used = new boolean[16];
+                } else {
+                    Arrays.fill(used, false);
+                }
+                p.size = 0;
+            }
+            // Treap work happens outside the stripe lock, so deposits are never held up by it
+            for (int k = 0; k < n * 4; k += 4) {
+                long msb = batch[k], lsb = batch[k + 1], oldTotal = batch[k + 2], newTotal = batch[k + 3];
+                if (oldTotal == newTotal) continue;
+                if (oldTotal != XPStatsStore.ABSENT) root = erase(root, oldTotal, msb, lsb);
+                if (newTotal != XPStatsStore.ABSENT) root = insert(root, allocate(newTotal, msb, lsb));
+            }
+        }
+    }
+
+    public synchronized int size() {
+        applyPending();
+        return sizes[root];
+    }
+
+    /** Returns the {@code k} highest totals, best first. */
+    public synchronized List<Ranked> top(int k) {
+        applyPending();
+        int n = Math.min(k, sizes[root]);
+        List<Ranked> result = new ArrayList<>(n);
+        if (n == 0) return result;
+
+        // Iterative in-order walk; the stack only ever holds one root-to-leaf path
+        int[] stack = new int[64];
+        int depth = 0;
+        int node = root;
+        while (result.size() < n) {
+            while (node != NIL) {
+                if (depth == stack.length) stack = Arrays.copyOf(stack, depth * 2);
+                stack[depth++] = node;
+                node = left[node];
+            }
+            node = stack[--depth];
+            result.add(new Ranked(result.size() + 1, new UUID(msbs[node], lsbs[node]), totals[node]));
+            node = right[node];
+        }
+        return result;
+    }
+
+    /** Returns the 1-based rank of the entry with this total, or 0 if it is not on the board. */
+    public synchronized int rankOf(UUID id, long total) {
+        applyPending();
+        long msb = id.getMostSignificantBits(), lsb = id.getLeastSignificantBits();
+        int before = 0;
+        int node = root;
+        while (node != NIL) {
+            int c = compare(total, msb, lsb, node);
+            if (c == 0) return before + sizes[left[node]] + 1;
+            if (c < 0) {
+                node = left[node];
+            } else {
+                before += sizes[left[node]] + 1;
+                node = right[node];
+            }
+        }
+        return 0;
+    }
+
+    // --- Treap internals (caller holds the monitor) ---
+
+    /** Orders by total descending, then by UUID bits ascending. */
+    private int compare(long total, long msb, long lsb, int node) {
+        if (total != totals[node]) return total > totals[node] ? -1 : 1;
+        if (msb != msbs[node]) return msb < msbs[node] ? -1 : 1;
+        if (lsb != lsbs[node]) return lsb < lsbs[node] ? -1 : 1;
+        return 0;
+    }
+
+    private int insert(int t, int x) {
+        if (t == NIL) return x;
+        if (priorities[x] > priorities[t]) {
+            split(t, totals[x], msbs[x], lsbs[x]);
+            left[x] = splitLeft;
+            right[x] = splitRight;
+            update(x);
+            return x;
+        }
+        if (compare(totals[x], msbs[x], lsbs[x], t) < 0) {
+            left[t] = insert(left[t], x);
+        } else {
+            right[t] = insert(right[t], x);
+        }
+        update(t);
+        return t;
+    }
+
+    private int erase(int t, long total, long msb, long lsb) {
+        if (t == NIL) return NIL;
+        int c = compare(total, msb, lsb, t);
+        if (c == 0) {
+            int merged = merge(left[t], right[t]);
+            release(t);
+            return merged;
+        }
+        if (c < 0) {
+            left[t] = erase(left[t], total, msb, lsb);
+        } else {
+            right[t] = erase(right[t], total, msb, lsb);
+        }
+        update(t);
+        return t;
+    }
+
+    /** Splits {@code t} into keys ordered before the given key and keys at or after it. */
+    private void split(int t, long total, long msb, long lsb) {
+        if (t == NIL) {
+            splitLeft = splitRight = NIL;
+            return;
+        }
+        if (compare(total, msb, lsb, t) > 0) {
+            split(right[t], total, msb, lsb);
+            right[t] = splitLeft;
+            update(t);
+            splitLeft = t;
+        } else {
+            split(left[t], total, msb, lsb);
+            left[t] = splitRight;
+            update(t);
+            splitRight = t;
+        }
+    }
+
+    private int merge(int a, int b) {
+        if (a == NIL) return b;
+        if (b == NIL) return a;
+        if (priorities[a] > priorities[b]) {
+            right[a] = merge(right[a], b);
+            update(a);
+            return a;
+        }
+        left[b] = merge(a, left[b]);
+        update(b);
+        return b;
+    }
+
+    private void update(int t) {
+        sizes[t] = 1 + sizes[left[t]] + sizes[right[t]];
+    }
+
+    private int allocate(long total, long msb, long lsb) {
+        int node;
+        if (freeHead != NIL) {
+            node = freeHead;
+            freeHead = left[node];
+        } else {
+            if (highWater == totals.length) grow();
+            node = highWater++;
+        }
+        totals[node] = total;
+        msbs[node] = msb;
+        lsbs[node] = lsb;
+        left[node] = NIL;
+        right[node] = NIL;
+        sizes[node] = 1;
+        // xorshift: cheap, and good enough to keep the expected depth logarithmic
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        priorities[node] = seed;
+        return node;
+    }
+
+    private void release(int node) {
+        sizes[node] = 0;
+        left[node] = freeHead;
+        freeHead = node;
+    }
+
+    private static void growPending(Pending p) {
+        long[] oldMsbs = p.msbs, oldLsbs = p.lsbs, oldOld = p.oldTotals, oldNew = p.newTotals;
+        boolean[] oldUsed = p.used;
+        int capacity = oldUsed.length * 2;
+        p.msbs = new long[capacity];
+        p.lsbs = new long[capacity];
+        p.oldTotals = new long[capacity];
+        p.newTotals = new long[capacity];
+        p.used = new boolean[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldUsed.length; j++) {
+            if (!oldUsed[j]) continue;
+            int i = (hash(oldMsbs[j], oldLsbs[j]) >>> PENDING_BITS) & mask;
+            while (p.used[i]) i = (i + 1) & mask;
+            p.used[i] = true;
+            p.msbs[i] = oldMsbs[j];
+            p.lsbs[i] = oldLsbs[j];
+            p.oldTotals[i] = oldOld[j];
+            p.newTotals[i] = oldNew[j];
+        }
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = (msb ^ Long.rotateLeft(lsb, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 29));
+    }
+
+    private void grow() {
+        int capacity = totals.length * 2;
+        totals = Arrays.copyOf(totals, capacity);
+        msbs = Arrays.copyOf(msbs, capacity);
+        lsbs = Arrays.copyOf(lsbs, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        priorities = Arrays.copyOf(priorities, capacity);
+    }
+}
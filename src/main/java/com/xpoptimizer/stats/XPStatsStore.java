@@ -0,0 +1,322 @@
+package com.xpoptimizer.stats;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Lifetime XP totals keyed by player UUID, stored without boxing.
+ * <p>
+ * Entries are spread over a fixed set of stripes, each an open-addressed table of three parallel
+ * {@code long} arrays (UUID high bits, UUID low bits, total). A stripe is locked only for the few
+ * instructions of a probe, so updates from different threads rarely meet and never allocate.
+ */
+public final class XPStatsStore {
+
+    @FunctionalInterface
+    public interface EntryVisitor {
+        void visit(long msb, long lsb, long total);
+    }
+
+    /** Stand-in for "no entry" in {@link ChangeListener} callbacks. */
+    public static final long ABSENT = Long.MIN_VALUE;
+
+    /**
+     * Observes every change to a total. Called with the entry's stripe locked, so calls for one
+     * player arrive in order. Implementations must not call back into the store, and must not
+     * take a lock shared by all stripes, or the striping is lost.
+     */
+    @FunctionalInterface
+    public interface ChangeListener {
+        void onChange(long msb, long lsb, long oldTotal, long newTotal);
+    }
+
+    private static final int STRIPE_BITS = 6;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+    private static final int INITIAL_STRIPE_CAPACITY = 16;
+
+    private static final class Stripe {
+        long[] msbs = new long[INITIAL_STRIPE_CAPACITY];
+        long[] lsbs = new long[INITIAL_STRIPE_CAPACITY];
+        long[] totals = new long[INITIAL_STRIPE_CAPACITY];
+        boolean[] used = new boolean[INITIAL_STRIPE_CAPACITY];
+        boolean[] dirty = new boolean[INITIAL_STRIPE_CAPACITY];
+        int size;
+        /** Keys changed since the last drain, as (msb, lsb) pairs. A key may appear twice. */
+        long[] dirtyKeys = new long[8];
+        int dirtyCount;
+    }
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final ChangeListener listener;
+
+    public XPStatsStore() {
+        this(null);
+    }
+
+    public XPStatsStore(ChangeListener listener) {
+        this.listener = listener;
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Stripe();
+    }
+
+    /** Adds {@code amount} to the player's total and returns the new total. */
+    public long add(UUID id, long amount) {
+        return add(id.getMostSignificantBits(), id.getLeastSignificantBits(), amount);
+    }
+
+    public long add(long msb, long lsb, long amount) {
+        int h = hash(msb, lsb);
+        Stripe s = stripes[h & (STRIPES - 1)];
+        synchronized (s) {
+            int i = find(s, msb, lsb, h);
+            if (i >= 0) {
+                long old = s.totals[i];
+                long total = old + amount;
+                s.totals[i] = total;
+                markDirty(s, i, msb, lsb);
+                if (listener != null) listener.onChange(msb, lsb, old, total);
+                return total;
+            }
+            i = insert(s, ~i, msb, lsb, amount, h);
+            markDirty(s, i, msb, lsb);
+            if (listener != null) listener.onChange(msb, lsb, ABSENT, amount);
+            return amount;
+        }
+    }
+
+    /**
+     * Sets the player's total, replacing any existing value. Used when loading from disk, so the
+     * entry is not marked dirty.
+     */
+    public void put(UUID id, long total) {
+        long msb = id.getMostSignificantBits(), lsb = id.getLeastSignificantBits();
+        int h = hash(msb, lsb);
+        Stripe s = stripes[h & (STRIPES - 1)];
+        synchronized (s) {
+            int i = find(s, msb, lsb, h);
+            long old = ABSENT;
+            if (i >= 0) {
+                old = s.totals[i];
+                s.totals[i] = total;
+            } else {
+                insert(s, ~i, msb, lsb, total, h);
+            }
+            if (listener != null) listener.onChange(msb, lsb, old, total);
+        }
+    }
+
+    public long get(UUID id) {
+        long msb = id.getMostSignificantBits(), lsb = id.getLeastSignificantBits();
+        int h = hash(msb, lsb);
+        Stripe s = stripes[h & (STRIPES - 1)];
+        synchronized (s) {
+            int i = find(s, msb, lsb, h);
+            return i >= 0 ? s.totals[i] : 0L;
+        }
+    }
+
+    /** Removes the player and returns the total it had, or 0 if absent. */
+    public long remove(UUID id) {
+        long msb = id.getMostSignificantBits(), lsb = id.getLeastSignificantBits();
+        int h = hash(msb, lsb);
+        Stripe s = stripes[h & (STRIPES - 1)];
+        synchronized (s) {
+            int i = find(s, msb, lsb, h);
+            if (i < 0) return 0L;
+            long old = s.totals[i];
+            if (!s.dirty[i]) appendDirtyKey(s, msb, lsb);
+            shiftBack(s, i);
+            s.size--;
+            if (listener != null) listener.onChange(msb, lsb, old, ABSENT);
+            return old;
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                size += s.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Visits every entry, one stripe at a time with that stripe locked. The view is consistent per
+     * stripe, not globally. Visitors must be quick and must not call back into this store.
+     */
+    public void forEach(EntryVisitor visitor) {
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                boolean[] used = s.used;
+                for (int i = 0; i < used.length; i++) {
+                    if (used[i]) visitor.visit(s.msbs[i], s.lsbs[i], s.totals[i]);
+                }
+            }
+        }
+    }
+
+    public int stripeCount() {
+        return STRIPES;
+    }
+
+    /**
+     * Visits the entries of one stripe with only that stripe locked. Lets callers do slow work,
+     * such as disk writes, between stripes instead of while holding a lock.
+     */
+    public void forEachInStripe(int stripe, EntryVisitor visitor) {
+        Stripe s = stripes[stripe];
+        synchronized (s) {
+            boolean[] used = s.used;
+            for (int i = 0; i < used.length; i++) {
+                if (used[i]) visitor.visit(s.msbs[i], s.lsbs[i], s.totals[i]);
+            }
+        }
+    }
+
+    /**
+     * Visits every entry changed since the previous drain and clears the dirty state. Removed
+     * entries are reported with {@link #ABSENT} as the total. Cost is proportional to the number
+     * of changes. The same locking rules as {@link #forEach} apply.
+     */
+    public void drainDirty(EntryVisitor visitor) {
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                if (s.dirtyCount == 0) continue;
+                long[] keys = s.dirtyKeys;
+                for (int k = 0; k < s.dirtyCount; k += 2) {
+                    long msb = keys[k], lsb = keys[k + 1];
+                    int i = find(s, msb, lsb, hash(msb, lsb));
+                    if (i >= 0) {
+                        // A key re-added after removal is listed twice; report it once
+                        if (!s.dirty[i]) continue;
+                        s.dirty[i] = false;
+                        visitor.visit(msb, lsb, s.totals[i]);
+                    } else {
+                        visitor.visit(msb, lsb, ABSENT);
+                    }
+                }
+                s.dirtyCount = 0;
+                if (keys.length > 1024) s.dirtyKeys = new long[8];
+            }
+        }
+    }
+
+    /**
+     * Visits every entry and empties the store, one stripe at a time. Each stripe is visited and
+     * cleared under one lock hold, so a concurrent {@link #add} lands either in what is visited or
+     * in what remains, never in neither. The change listener is not told; this is for handing
+     * coalesced increments to a writer, not for removing players.
+     */
+    public void drainAll(EntryVisitor visitor) {
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                if (s.size == 0) continue;
+                boolean[] used = s.used;
+                for (int i = 0; i < used.length; i++) {
+                    if (used[i]) visitor.visit(s.msbs[i], s.lsbs[i], s.totals[i]);
+                }
+                Arrays.fill(s.used, false);
+                Arrays.fill(s.dirty, false);
+                s.size = 0;
+                s.dirtyCount = 0;
+            }
+        }
+    }
+
+    /** Number of changes waiting for {@link #drainDirty}, counting repeated keys. */
+    public int dirtyCount() {
+        int count = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                count += s.dirtyCount / 2;
+            }
+        }
+        return count;
+    }
+
+    // --- Table internals (caller holds the stripe lock) ---
+
+    private static void markDirty(Stripe s, int slot, long msb, long lsb) {
+        if (s.dirty[slot]) return;
+        s.dirty[slot] = true;
+        appendDirtyKey(s, msb, lsb);
+    }
+
+    private static void appendDirtyKey(Stripe s, long msb, long lsb) {
+        if (s.dirtyCount + 2 > s.dirtyKeys.length) s.dirtyKeys = Arrays.copyOf(s.dirtyKeys, s.dirtyKeys.length * 2);
+        s.dirtyKeys[s.dirtyCount++] = msb;
+        s.dirtyKeys[s.dirtyCount++] = lsb;
+    }
+
+    /** Returns the slot of the key, or {@code ~insertionSlot} if absent. */
+    private static int find(Stripe s, long msb, long lsb, int h) {
+        int mask = s.used.length - 1;
+        int i = (h >>> STRIPE_BITS) & mask;
+        while (s.used[i]) {
+            if (s.msbs[i] == msb && s.lsbs[i] == lsb) return i;
+            i = (i + 1) & mask;
+        }
+        return ~i;
+    }
+
+    /** Inserts at {@code slot} and returns where the entry ended up (it moves if the table grows). */
+    private static int insert(Stripe s, int slot, long msb, long lsb, long total, int h) {
+        s.used[slot] = true;
+        s.dirty[slot] = false;
+        s.msbs[slot] = msb;
+        s.lsbs[slot] = lsb;
+        s.totals[slot] = total;
+        // Keep the load factor at or below 2/3 so probe chains stay short
+        if (++s.size * 3 > s.used.length * 2) {
+            rehash(s, s.used.length * 2);
+            return find(s, msb, lsb, h);
+        }
+        return slot;
+    }
+
+    private static void shiftBack(Stripe s, int hole) {
+        int mask = s.used.length - 1;
+        int i = hole;
+        while (true) {
+            i = (i + 1) & mask;
+            if (!s.used[i]) break;
+            int home = (hash(s.msbs[i], s.lsbs[i]) >>> STRIPE_BITS) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                s.msbs[hole] = s.msbs[i];
+                s.lsbs[hole] = s.lsbs[i];
+                s.totals[hole] = s.totals[i];
+                s.dirty[hole] = s.dirty[i];
+                hole = i;
+            }
+        }
+        s.used[hole] = false;
+        s.dirty[hole] = false;
+    }
+
+    private static void rehash(Stripe s, int capacity) {
+        long[] oldMsbs = s.msbs, oldLsbs = s.lsbs, oldTotals = s.totals;
+        boolean[] oldUsed = s.used, oldDirty = s.dirty;
+        s.msbs = new long[capacity];
+        s.lsbs = new long[capacity];
+        s.totals = new long[capacity];
+        s.used = new boolean[capacity];
+        s.dirty = new boolean[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldUsed.length; j++) {
+            if (!oldUsed[j]) continue;
+            int i = (hash(oldMsbs[j], oldLsbs[j]) >>> STRIPE_BITS) & mask;
+            while (s.used[i]) i = (i + 1) & mask;
+            s.used[i] = true;
+            s.msbs[i] = oldMsbs[j];
+            s.lsbs[i] = oldLsbs[j];
+            s.totals[i] = oldTotals[j];
+            s.dirty[i] = oldDirty[j];
+        }
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = (msb ^ Long.rotateLeft(lsb, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 29));
+    }
+}
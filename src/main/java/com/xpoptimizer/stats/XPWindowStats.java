@@ -0,0 +1,355 @@
+package com.xpoptimizer.stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * XP collected per player per day over the last {@value #DAYS} days, for rolling leaderboards.
+ * <p>
+ * Each player owns a ring of {@value #DAYS} {@code int} buckets indexed by epoch day, plus the day
+ * it was last written. Buckets are rotated lazily: a write clears only the days skipped since the
+ * player's last write, and reads ignore days outside the ring, so nothing ever walks all players
+ * at midnight. That is {@value #DAYS} * 4 + 20 bytes of table space per player. Storage is striped
+ * like {@link XPStatsStore}.
+ */
+public final class XPWindowStats {
+
+    public enum Window {
+        DAY(1), WEEK(7), MONTH(30);
+
+        private final int days;
+
+        Window(int days) {
+            this.days = days;
+        }
+
+        public int days() {
+            return days;
+        }
+    }
+
+    @FunctionalInterface
+    public interface EntryVisitor {
+        /** {@code buckets} is indexed by {@code day % DAYS} and is only valid during the call. */
+        void visit(long msb, long lsb, int lastDay, int[] buckets, int offset);
+    }
+
+    public static final int DAYS = 30;
+
+    private static final int STRIPE_BITS = 6;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+    private static final int INITIAL_STRIPE_CAPACITY = 16;
+
+    private static final class Stripe {
+        long[] msbs = new long[INITIAL_STRIPE_CAPACITY];
+        long[] lsbs = new long[INITIAL_STRIPE_CAPACITY];
+        int[] lastDays = new int[INITIAL_STRIPE_CAPACITY];
+        int[] buckets = new int[INITIAL_STRIPE_CAPACITY * DAYS];
+        boolean[] used = new boolean[INITIAL_STRIPE_CAPACITY];
+        int size;
+    }
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private volatile int today;
+    private volatile boolean dirty;
+
+    public XPWindowStats(int today) {
+        this.today = today;
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Stripe();
+    }
+
+    /** Advances the current day. Cheap; call it from any periodic task. */
+    public void setToday(int epochDay) {
+        today = epochDay;
+    }
+
+    public int today() {
+        return today;
+    }
+
+    /** Returns whether anything changed since the last call, and clears the flag. */
+    public boolean takeDirty() {
+        if (!dirty) return false;
+        dirty = false;
+        return true;
+    }
+
+    public void markDirty() {
+        dirty = true;
+    }
+
+    public void add(UUID id, int amount) {
+        long msb = id.getMostSignificantBits(), lsb = id.getLeastSignificantBits();
+        int h = hash(msb, lsb);
+        Stripe s = stripes[h & (STRIPES - 1)];
+        int day = today;
+        synchronized (s) {
+            int i = find(s, msb, lsb, h);
+            if (i < 0) i = insert(s, ~i, msb, lsb, day, h);
+            rotate(s, i, day);
+            // The clock may have stepped back (zone change); keep the write only if still in the ring
+            if (s.lastDays[i] - day >= DAYS) return;
+            int b = i * DAYS + day % DAYS;
+            s.buckets[b] = (int) Math.min((long) s.buckets[b] + amount, Integer.MAX_VALUE);
+        }
+        dirty = true;
+    }
+
+    /** XP the player collected within the window, counting today as its last day. */
+    public long get(UUID id, Window window) {
+        long msb = id.getMostSignificantBits(), lsb = id.getLeastSignificantBits();
+        int h = hash(msb, lsb);
+        Stripe s = stripes[h & (STRIPES - 1)];
+        synchronized (s) {
+            int i = find(s, msb, lsb, h);
+            return i >= 0 ? sum(s.buckets, i * DAYS, s.lastDays[i], today, window.days) : 0L;
+        }
+    }
+
+    public void remove(UUID id) {
+        long msb = id.getMostSignificantBits(), lsb = id.getLeastSignificantBits();
+        int h = hash(msb, lsb);
+        Stripe s = stripes[h & (STRIPES - 1)];
+        synchronized (s) {
+            int i = find(s, msb, lsb, h);
+            if (i < 0) return;
+            shiftBack(s, i);
+            s.size--;
+        }
+        dirty = true;
+    }
+
+    /** Restores an entry read from disk. Not marked dirty. */
+    public void put(long msb, long lsb, int lastDay, int[] buckets) {
+        int h = hash(msb, lsb);
+        Stripe s = stripes[h & (STRIPES - 1)];
+        synchronized (s) {
+            int i = find(s, msb, lsb, h);
+            if (i < 0) i = insert(s, ~i, msb, lsb, lastDay, h);
+            s.lastDays[i] = lastDay;
+            System.arraycopy(buckets, 0, s.buckets, i * DAYS, DAYS);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                size += s.size;
+            }
+        }
+        return size;
+    }
+
+    public int stripeCount() {
+        return STRIPES;
+    }
+
+    /**
+     * Visits one stripe with only that stripe locked, first dropping players with nothing inside
+     * the ring any more. Lets a save both prune and write without a separate full pass. Pruning
+     * can shift an entry from the start of the table to the end, so an entry may be visited twice;
+     * replaying both copies on load gives the same result.
+     */
+    public void forEachInStripe(int stripe, EntryVisitor visitor) {
+        Stripe s = stripes[stripe];
+        int day = today;
+        synchronized (s) {
+            for (int i = 0; i < s.used.length; i++) {
+                // Backward shifting can move a later entry into this slot, so re-check it
+                while (s.used[i] && day - s.lastDays[i] >= DAYS) {
+                    shiftBack(s, i);
+                    s.size--;
+                }
+                if (s.used[i]) visitor.visit(s.msbs[i], s.lsbs[i], s.lastDays[i], s.buckets, i * DAYS);
+            }
+        }
+    }
+
+    /**
+     * Returns the {@code k} highest totals for the window, best first. Scans every player, one
+     * stripe at a time, keeping a bounded heap; run it off the main thread.
+     */
+    public List<XPLeaderboard.Ranked> top(Window window, int k) {
+        long[] totals = new long[k];
+        long[] msbs = new long[k];
+        long[] lsbs = new long[k];
+        int[] heapSize = {0};
+        int day = today;
+
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                for (int i = 0; i < s.used.length; i++) {
+                    if (!s.used[i]) continue;
+                    long total = sum(s.buckets, i * DAYS, s.lastDays[i], day, window.days);
+                    if (total <= 0) continue;
+                    offer(totals, msbs, lsbs, heapSize, k, total, s.msbs[i], s.lsbs[i]);
+                }
+            }
+        }
+
+        // Pop the min-heap worst first, filling the result from the back
+        int n = heapSize[0];
+        XPLeaderboard.Ranked[] ranked = new XPLeaderboard.Ranked[n];
+        for (int r = n; r > 0; r--) {
+            ranked[r - 1] = new XPLeaderboard.Ranked(r, new UUID(msbs[0], lsbs[0]), totals[0]);
+            int last = --heapSize[0];
+            totals[0] = totals[last];
+            msbs[0] = msbs[last];
+            lsbs[0] = lsbs[last];
+            siftDown(totals, msbs, lsbs, last, 0);
+        }
+        return new ArrayList<>(Arrays.asList(ranked));
+    }
+
+    // --- Bucket internals ---
+
+    /** Clears the buckets for days skipped since the entry's last write. Caller holds the lock. */
+    private static void rotate(Stripe s, int i, int day) {
+        int last = s.lastDays[i];
+        if (day <= last) return;
+        int base = i * DAYS;
+        if (day - last >= DAYS) {
+            Arrays.fill(s.buckets, base, base + DAYS, 0);
+        } else {
+            for (int d = last + 1; d <= day; d++) s.buckets[base + d % DAYS] = 0;
+        }
+        s.lastDays[i] = day;
+    }
+
+    private static long sum(int[] buckets, int base, int lastDay, int day, int days) {
+        long sum = 0;
+        // Only days still held in the ring count: (lastDay - DAYS, lastDay]
+        int from = Math.max(day - days + 1, lastDay - DAYS + 1);
+        int to = Math.min(day, lastDay);
+        for (int d = from; d <= to; d++) sum += buckets[base + d % DAYS];
+        return sum;
+    }
+
+    // --- Bounded min-heap ordered worst first (lowest total, then highest UUID) ---
+
+    private static void offer(long[] totals, long[] msbs, long[] lsbs, int[] heapSize, int k,
+                              long total, long msb, long lsb) {
+        int n = heapSize[0];
+        if (n < k) {
+            totals[n] = total;
+            msbs[n] = msb;
+            lsbs[n] = lsb;
+            heapSize[0] = n + 1;
+            // Sift up
+            int i = n;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!worse(totals, msbs, lsbs, i, parent)) break;
+                swap(totals, msbs, lsbs, i, parent);
+                i = parent;
+            }
+            return;
+        }
+        if (k == 0 || !better(total, msb, lsb, totals[0], msbs[0], lsbs[0])) return;
+        totals[0] = total;
+        msbs[0] = msb;
+        lsbs[0] = lsb;
+        siftDown(totals, msbs, lsbs, n, 0);
+    }
+
+    private static void siftDown(long[] totals, long[] msbs, long[] lsbs, int n, int i) {
+        while (true) {
+            int l = 2 * i + 1, r = l + 1, worst = i;
+            if (l < n && worse(totals, msbs, lsbs, l, worst)) worst = l;
+            if (r < n && worse(totals, msbs, lsbs, r, worst)) worst = r;
+            if (worst == i) return;
+            swap(totals, msbs, lsbs, i, worst);
+            i = worst;
+        }
+    }
+
+    private static boolean worse(long[] totals, long[] msbs, long[] lsbs, int a, int b) {
+        return better(totals[b], msbs[b], lsbs[b], totals[a], msbs[a], lsbs[a]);
+    }
+
+    /** Same order as {@link XPLeaderboard}: total descending, then UUID bits ascending. */
+    private static boolean better(long total, long msb, long lsb, long otherTotal, long otherMsb, long otherLsb) {
+        if (total != otherTotal) return total > otherTotal;
+        if (msb != otherMsb) return msb < otherMsb;
+        return lsb < otherLsb;
+    }
+
+    private static void swap(long[] totals, long[] msbs, long[] lsbs, int a, int b) {
+        long t = totals[a]; totals[a] = totals[b]; totals[b] = t;
+        long m = msbs[a]; msbs[a] = msbs[b]; msbs[b] = m;
+        long l = lsbs[a]; lsbs[a] = lsbs[b]; lsbs[b] = l;
+    }
+
+    // --- Table internals (caller holds the stripe lock) ---
+
+    private static int find(Stripe s, long msb, long lsb, int h) {
+        int mask = s.used.length - 1;
+        int i = (h >>> STRIPE_BITS) & mask;
+        while (s.used[i]) {
+            if (s.msbs[i] == msb && s.lsbs[i] == lsb) return i;
+            i = (i + 1) & mask;
+        }
+        return ~i;
+    }
+
+    private static int insert(Stripe s, int slot, long msb, long lsb, int day, int h) {
+        s.used[slot] = true;
+        s.msbs[slot] = msb;
+        s.lsbs[slot] = lsb;
+        s.lastDays[slot] = day;
+        Arrays.fill(s.buckets, slot * DAYS, slot * DAYS + DAYS, 0);
+        if (++s.size * 3 > s.used.length * 2) {
+            rehash(s, s.used.length * 2);
+            return find(s, msb, lsb, h);
+        }
+        return slot;
+    }
+
+    private static void shiftBack(Stripe s, int hole) {
+        int mask = s.used.length - 1;
+        int i = hole;
+        while (true) {
+            i = (i + 1) & mask;
+            if (!s.used[i]) break;
+            int home = (hash(s.msbs[i], s.lsbs[i]) >>> STRIPE_BITS) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                s.msbs[hole] = s.msbs[i];
+                s.lsbs[hole] = s.lsbs[i];
+                s.lastDays[hole] = s.lastDays[i];
+                System.arraycopy(s.buckets, i * DAYS, s.buckets, hole * DAYS, DAYS);
+                hole = i;
+            }
+        }
+        s.used[hole] = false;
+    }
+
+    private static void rehash(Stripe s, int capacity) {
+        long[] oldMsbs = s.msbs, oldLsbs = s.lsbs;
+        int[] oldLastDays = s.lastDays, oldBuckets = s.buckets;
+        boolean[] oldUsed = s.used;
+        s.msbs = new long[capacity];
+        s.lsbs = new long[capacity];
+        s.lastDays = new int[capacity];
+        s.buckets = new int[capacity * DAYS];
+        s.used = new boolean[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldUsed.length; j++) {
+            if (!oldUsed[j]) continue;
+            int i = (hash(oldMsbs[j], oldLsbs[j]) >>> STRIPE_BITS) & mask;
+            while (s.used[i]) i = (i + 1) & mask;
+            s.used[i] = true;
+            s.msbs[i] = oldMsbs[j];
+            s.lsbs[i] = oldLsbs[j];
+            s.lastDays[i] = oldLastDays[j];
+            System.arraycopy(oldBuckets, j * DAYS, s.buckets, i * DAYS, DAYS);
+        }
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = (msb ^ Long.rotateLeft(lsb, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 29));
+    }
+}
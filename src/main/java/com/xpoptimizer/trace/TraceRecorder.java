@@ -0,0 +1,183 @@
+package com.xpoptimizer.trace;
+
+import com.xpoptimizer.scheduler.IoExecutor;
+import org.bukkit.GameMode;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records where orbs drop and where players stand, for replay by the load simulator
+ * ({@code ./gradlew simulate}). A trace is a gzipped text file, one record per line:
+ * <pre>
+ * # xpoptimizer-trace 1
+ * W &lt;world&gt; &lt;name&gt;                                  first use of a world
+ * P &lt;tick&gt; &lt;player&gt; &lt;world&gt; &lt;x&gt; &lt;y&gt; &lt;z&gt; &lt;spectator&gt;   every {@link #SAMPLE_TICKS}
+ * O &lt;tick&gt; &lt;world&gt; &lt;x&gt; &lt;y&gt; &lt;z&gt; &lt;xp&gt;                 every orb or captured drop
+ * </pre>
+ * Ticks count from the start of the recording; players and worlds are numbered in order of first
+ * sight, so a trace holds no player names or UUIDs.
+ * <p>
+ * Records are appended to an in-memory buffer (under this object's lock, so region threads may
+ * record concurrently) and handed to the {@link IoExecutor} once per sample; only the I/O thread
+ * touches the file.
+ */
+public final class TraceRecorder {
+
+    public static final String HEADER = "# xpoptimizer-trace 1";
+    /** Ticks between player position samples; also how often the buffer is written out. */
+    public static final int SAMPLE_TICKS = 20;
+
+    private static final DateTimeFormatter FILE_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final File directory;
+    private final IoExecutor io;
+    private final Logger logger;
+
+    private volatile boolean active;
+    private long startTick;
+    private long endTick;
+    private long orbs;
+    private StringBuilder buffer = new StringBuilder();
+    private final Map<World, Integer> worldIds = new IdentityHashMap<>();
+    private final Map<UUID, Integer> playerIds = new HashMap<>();
+    /** Written on the I/O thread only. */
+    private Writer out;
+
+    public TraceRecorder(File dataFolder, IoExecutor io, Logger logger) {
+        this.directory = new File(dataFolder, "traces");
+        this.io = io;
+        this.logger = logger;
+    }
+
+    public boolean active() {
+        return active;
+    }
+
+    /** Starts a recording of {@code seconds} and returns its file, or null if one is already running. */
+    public synchronized File start(long tick, int seconds) {
+        if (active) return null;
+        File file = new File(directory, "trace-" + LocalDateTime.now().format(FILE_NAME) + ".txt.gz");
+        startTick = tick;
+        endTick = tick + seconds * 20L;
+        orbs = 0;
+        worldIds.clear();
+        playerIds.clear();
+        buffer.setLength(0);
+        buffer.append(HEADER).append('\n');
+        io.execute(() -> open(file));
+        active = true;
+        return file;
+    }
+
+    /** Records one orb, or one drop captured before it became an orb. */
+    public synchronized void orb(World world, double x, double y, double z, int xp, long tick) {
+        if (!active) return;
+        int w = worldId(world);
+        buffer.append("O ").append(tick - startTick).append(' ').append(w);
+        coordinates(x, y, z).append(' ').append(xp).append('\n');
+        orbs++;
+    }
+
+    /**
+     * Records every player's position and writes out the buffer. Called every
+     * {@link #SAMPLE_TICKS}; returns false once the recording has run its length and should stop.
+     */
+    public synchronized boolean sample(Collection<? extends Player> players, long tick) {
+        if (!active) return false;
+        long t = tick - startTick;
+        for (Player player : players) {
+            int w = worldId(player.getWorld());
+            Integer id = playerIds.get(player.getUniqueId());
+            if (id == null) {
+                id = playerIds.size();
+                playerIds.put(player.getUniqueId(), id);
+            }
+            buffer.append("P ").append(t).append(' ').append(id).append(' ').append(w);
+            coordinates(player.getX(), player.getY(), player.getZ())
+                    .append(player.getGameMode() == GameMode.SPECTATOR ? " 1" : " 0").append('\n');
+        }
+        flush();
+        return tick < endTick;
+    }
+
+    /** Ends the recording and returns the number of orbs in it; 0 if none was running. */
+    public synchronized long stop() {
+        if (!active) return 0;
+        active = false;
+        flush();
+        io.execute(this::close);
+        return orbs;
+    }
+
+    private int worldId(World world) {
+        Integer id = worldIds.get(world);
+        if (id == null) {
+            id = worldIds.size();
+            worldIds.put(world, id);
+            buffer.append("W ").append(id).append(' ').append(world.getName()).append('\n');
+        }
+        return id;
+    }
+
+    /** Appends " x y z" to two decimals, enough to place an orb within its block. */
+    private StringBuilder coordinates(double x, double y, double z) {
+        return buffer.append(' ').append(Math.round(x * 100) / 100.0)
+                .append(' ').append(Math.round(y * 100) / 100.0)
+                .append(' ').append(Math.round(z * 100) / 100.0);
+    }
+
+    private void flush() {
+        if (buffer.isEmpty()) return;
+        String chunk = buffer.toString();
+        buffer = new StringBuilder(Math.max(256, chunk.length()));
+        io.execute(() -> write(chunk));
+    }
+
+    private void open(File file) {
+        try {
+            Files.createDirectories(directory.toPath());
+            out = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(Files.newOutputStream(file.toPath())), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to create trace " + file.getName(), e);
+        }
+    }
+
+    private void write(String chunk) {
+        if (out == null) return;
+        try {
+            out.write(chunk);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to write trace; the rest of it is dropped", e);
+            close();
+        }
+    }
+
+    private void close() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to finish trace", e);
+        }
+        out = null;
+    }
+}
@@ -0,0 +1,72 @@
+package com.xpoptimizer.sim;
+
+import java.util.Arrays;
+
+/**
+ * Log-linear histogram of nanosecond latencies: exact below 64 ns, then 32 buckets per power of
+ * two (within about 3%). Fixed size, so recording never allocates and the simulator's own
+ * bookkeeping stays out of the allocation and GC figures it reports.
+ */
+final class FineLatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS;
+
+    private final long[] counts = new long[64 * SUB];
+    private long count;
+    private long sum;
+    private long max;
+
+    void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts[bucket(nanos)]++;
+        count++;
+        sum += nanos;
+        if (nanos > max) max = nanos;
+    }
+
+    void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    long count() {
+        return count;
+    }
+
+    /** Total of every recorded latency. */
+    long sum() {
+        return sum;
+    }
+
+    long max() {
+        return max;
+    }
+
+    /** The latency at quantile {@code q} (0.5, 0.99, ...), as the middle of its bucket. */
+    long percentile(double q) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * count));
+        long seen = 0;
+        for (int b = 0; b < counts.length; b++) {
+            seen += counts[b];
+            if (seen >= rank) return Math.min(max, middle(b));
+        }
+        return max;
+    }
+
+    static int bucket(long v) {
+        if (v < SUB) return (int) v;
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        return (shift + 1) * SUB + (int) ((v >>> shift) & (SUB - 1));
+    }
+
+    private static long middle(int bucket) {
+        if (bucket < SUB) return bucket;
+        int shift = bucket / SUB - 1;
+        long lower = (long) (SUB + bucket % SUB) << shift;
+        return lower + ((1L << shift) - 1) / 2;
+    }
+}
@@ -0,0 +1,63 @@
+package com.xpoptimizer.sim;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counts GC pauses while the simulation is measuring, from the collectors' end-of-collection
+ * notifications. Beans that report concurrent cycles rather than pauses ("G1 Concurrent GC",
+ * "ZGC Cycles", "Shenandoah Cycles") are skipped.
+ */
+final class GcMonitor implements NotificationListener {
+
+    private volatile boolean measuring;
+    private long pauses;
+    private long totalMillis;
+    private long maxMillis;
+
+    GcMonitor() {
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            String name = bean.getName();
+            if (name.contains("Concurrent") || name.contains("Cycles")) continue;
+            if (bean instanceof NotificationEmitter emitter) emitter.addNotificationListener(this, null, null);
+        }
+    }
+
+    void start() {
+        synchronized (this) {
+            pauses = 0;
+            totalMillis = 0;
+            maxMillis = 0;
+        }
+        measuring = true;
+    }
+
+    void stop() {
+        measuring = false;
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (!measuring || !notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        long millis = info.getGcInfo().getDuration();
+        synchronized (this) {
+            pauses++;
+            totalMillis += millis;
+            maxMillis = Math.max(maxMillis, millis);
+        }
+    }
+
+    synchronized String describe() {
+        return "%d pauses, %d ms total, %d ms max".formatted(pauses, totalMillis, maxMillis);
+    }
+}
@@ -0,0 +1,269 @@
+package com.xpoptimizer.sim;
+
+import com.destroystokyo.paper.event.server.ServerTickEndEvent;
+import com.xpoptimizer.XPOptimizerPlugin;
+import org.bukkit.GameMode;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.entity.EntitySpawnEvent;
+import org.bukkit.plugin.RegisteredListener;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.ServerMock;
+import org.mockbukkit.mockbukkit.entity.ExperienceOrbMock;
+import org.mockbukkit.mockbukkit.entity.PlayerMock;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Headless load simulator: loads the plugin into a MockBukkit server, feeds it a generated orb
+ * storm or a recorded trace, and reports throughput, per-event latency percentiles, allocation per
+ * event and GC pauses. Run with {@code ./gradlew simulate --args="..."}; {@code --help} lists the
+ * options.
+ * <p>
+ * Spawn and tick-end events go straight to the registered handlers, as the server's event bus
+ * does, so the timings cover the plugin's own listeners and not MockBukkit's event bookkeeping.
+ * Everything else (orb entities, players, scheduled tasks) is MockBukkit's, so absolute numbers
+ * run somewhat below a real server; compare modes and loads against each other.
+ */
+public final class OrbStormSimulator {
+
+    private static final String USAGE = """
+            Usage: simulate [options]
+              --trace <file>         replay a trace from /xpstats trace instead of generating load
+              --players <n>          players online (default 200)
+              --farms <n>            farms the orbs drop around (default 8)
+              --farm-share <0..1>    share of players standing at a farm (default 0.5)
+              --spread <blocks>      width of the map players and farms are spread over (default 2048)
+              --orbs <n>             orbs per tick (default 500)
+              --burst-period <ticks> drop a period's orbs all at once, every this many ticks (default 1)
+              --stray <0..1>         share of orbs dropping away from every farm (default 0.05)
+              --ticks <n>            ticks to generate, warm-up included (default 6000)
+              --warmup <ticks>       ticks run before measuring (default 600)
+              --seed <n>             random seed (default 42)
+              --base-mspt <ms>       server tick time added to the plugin's for load shedding (default 0)
+              --config <file>        config.yml to run with, instead of the default
+              --set <key>=<value>    override one config key, e.g. --set deposit-mode=BATCHED (repeatable)
+            Settings fixed at startup (stats backend, cluster) keep their defaults.
+            """;
+
+    private final ServerMock server;
+    private final XPOptimizerPlugin plugin;
+    private final RegisteredListener[] spawnHandlers;
+    private final RegisteredListener[] tickEndHandlers;
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final Map<String, World> worlds = new HashMap<>();
+    private final Map<Integer, PlayerMock> players = new HashMap<>();
+
+    private final FineLatencyHistogram orbLatency = new FineLatencyHistogram();
+    private final FineLatencyHistogram tickEndLatency = new FineLatencyHistogram();
+    private long allocatedBytes;
+    /** Plugin time spent in the current tick, handed to the load shedder as the tick's duration. */
+    private long tickNanos;
+
+    private OrbStormSimulator(ServerMock server, XPOptimizerPlugin plugin) {
+        this.server = server;
+        this.plugin = plugin;
+        this.spawnHandlers = EntitySpawnEvent.getHandlerList().getRegisteredListeners();
+        this.tickEndHandlers = ServerTickEndEvent.getHandlerList().getRegisteredListeners();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> sets = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--help") || !arg.startsWith("--") || i + 1 >= args.length) {
+                System.out.print(USAGE);
+                return;
+            }
+            String value = args[++i];
+            if (arg.equals("--set")) {
+                sets.add(value);
+            } else {
+                options.put(arg.substring(2), value);
+            }
+        }
+
+        Scenario scenario = options.containsKey("trace")
+                ? new TraceScenario(new File(options.get("trace")))
+                : new SyntheticScenario(
+                        intOption(options, "players", 200),
+                        intOption(options, "farms", 8),
+                        doubleOption(options, "farm-share", 0.5),
+                        doubleOption(options, "spread", 2048),
+                        intOption(options, "orbs", 500),
+                        intOption(options, "burst-period", 1),
+                        doubleOption(options, "stray", 0.05),
+                        intOption(options, "ticks", 6000),
+                        intOption(options, "seed", 42));
+        int warmup = intOption(options, "warmup", 600);
+        double baseMspt = doubleOption(options, "base-mspt", 0);
+
+        ServerMock server = MockBukkit.mock();
+        try (scenario) {
+            XPOptimizerPlugin plugin = MockBukkit.load(XPOptimizerPlugin.class);
+            configure(plugin, options.get("config"), sets);
+            new OrbStormSimulator(server, plugin).run(scenario, warmup, baseMspt);
+        } finally {
+            MockBukkit.unmock();
+        }
+    }
+
+    /** Writes the requested config over the plugin's and reloads it. */
+    private static void configure(XPOptimizerPlugin plugin, String configFile, List<String> sets) throws IOException {
+        File target = new File(plugin.getDataFolder(), "config.yml");
+        YamlConfiguration yaml = YamlConfiguration.loadConfiguration(configFile != null ? new File(configFile) : target);
+        for (String set : sets) {
+            int eq = set.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("--set expects key=value, got '" + set + "'");
+            yaml.set(set.substring(0, eq), parseValue(set.substring(eq + 1)));
+        }
+        yaml.save(target);
+        plugin.reloadPluginConfig();
+    }
+
+    private static Object parseValue(String raw) {
+        if (raw.equalsIgnoreCase("true") || raw.equalsIgnoreCase("false")) return Boolean.parseBoolean(raw);
+        try {
+            return Integer.parseInt(raw);
+        } catch (NumberFormatException ignored) {}
+        try {
+            return Double.parseDouble(raw);
+        } catch (NumberFormatException ignored) {}
+        return raw;
+    }
+
+    private void run(Scenario scenario, int warmup, double baseMspt) throws IOException {
+        GcMonitor gc = new GcMonitor();
+        Driver driver = new Driver();
+        long measuredTicks = 0;
+        long wallStart = System.nanoTime();
+
+        for (long tick = 0; ; tick++) {
+            if (tick == warmup) {
+                orbLatency.reset();
+                tickEndLatency.reset();
+                allocatedBytes = 0;
+                measuredTicks = 0;
+                System.gc();
+                gc.start();
+                wallStart = System.nanoTime();
+            }
+
+            // Scheduled tasks run at the start of a tick, entities (and so orb spawns) after them
+            server.getScheduler().performOneTick();
+            tickNanos = 0;
+            if (!scenario.tick(tick, driver)) break;
+
+            ServerTickEndEvent end = new ServerTickEndEvent((int) tick, baseMspt + tickNanos / 1e6, 0);
+            long a0 = threads.getCurrentThreadAllocatedBytes();
+            long t0 = System.nanoTime();
+            dispatch(tickEndHandlers, end);
+            long t1 = System.nanoTime();
+            allocatedBytes += threads.getCurrentThreadAllocatedBytes() - a0;
+            tickEndLatency.record(t1 - t0);
+            measuredTicks++;
+        }
+        long wallNanos = System.nanoTime() - wallStart;
+        gc.stop();
+
+        report(scenario, measuredTicks, wallNanos, gc);
+    }
+
+    private void report(Scenario scenario, long ticks, long wallNanos, GcMonitor gc) {
+        long events = orbLatency.count();
+        long pluginNanos = orbLatency.sum() + tickEndLatency.sum();
+        System.out.println("XPOptimizer orb-storm simulation");
+        System.out.println("  scenario:    " + scenario.describe());
+        System.out.printf("  measured:    %d ticks, %d orb events, %.1f s wall%n", ticks, events, wallNanos / 1e9);
+        System.out.printf("  throughput:  %.0f events/s wall, %.0f events/s plugin time%n",
+                events / (wallNanos / 1e9), pluginNanos > 0 ? events / (pluginNanos / 1e9) : 0.0);
+        System.out.println("  orb event:   " + latencies(orbLatency));
+        System.out.println("  tick end:    " + latencies(tickEndLatency));
+        System.out.printf("  allocation:  %.1f B/event (tick end included)%n",
+                events > 0 ? (double) allocatedBytes / events : 0.0);
+        System.out.println("  gc:          " + gc.describe());
+        System.out.println("  load tier:   " + plugin.getLoadShedder().tier()
+                + " (" + plugin.getLoadShedder().changes() + " changes)");
+
+        if (!plugin.getXPConfig().metricsEnabled()) return;
+        System.out.println("Plugin metrics:");
+        for (Map.Entry<String, String> row : plugin.getMetrics().snapshot().describe(plugin.getMetricGauges())) {
+            System.out.println("  " + row.getKey() + ": " + row.getValue());
+        }
+    }
+
+    private static String latencies(FineLatencyHistogram h) {
+        return "p50 %s  p99 %s  p999 %s  max %s".formatted(
+                duration(h.percentile(0.5)), duration(h.percentile(0.99)),
+                duration(h.percentile(0.999)), duration(h.max()));
+    }
+
+    private static String duration(long nanos) {
+        if (nanos < 10_000) return nanos + " ns";
+        if (nanos < 10_000_000) return "%.1f us".formatted(nanos / 1e3);
+        return "%.1f ms".formatted(nanos / 1e6);
+    }
+
+    private static void dispatch(RegisteredListener[] handlers, Event event) {
+        for (RegisteredListener handler : handlers) {
+            try {
+                handler.callEvent(event);
+            } catch (EventException e) {
+                throw new IllegalStateException("Listener failed", e.getCause());
+            }
+        }
+    }
+
+    private final class Driver implements Scenario.Driver {
+
+        @Override
+        public void player(int id, String world, double x, double y, double z, boolean spectator) {
+            PlayerMock player = players.computeIfAbsent(id, i -> server.addPlayer());
+            GameMode mode = spectator ? GameMode.SPECTATOR : GameMode.SURVIVAL;
+            if (player.getGameMode() != mode) player.setGameMode(mode);
+            player.teleport(new Location(world(world), x, y, z));
+        }
+
+        @Override
+        public void orb(String world, double x, double y, double z, int xp) {
+            // Built outside the timed section: on a server the orb exists before its event fires
+            ExperienceOrbMock orb = new ExperienceOrbMock(server, UUID.randomUUID(), xp);
+            orb.setLocation(new Location(world(world), x, y, z));
+            EntitySpawnEvent event = new EntitySpawnEvent(orb);
+
+            long a0 = threads.getCurrentThreadAllocatedBytes();
+            long t0 = System.nanoTime();
+            dispatch(spawnHandlers, event);
+            long t1 = System.nanoTime();
+            allocatedBytes += threads.getCurrentThreadAllocatedBytes() - a0;
+            orbLatency.record(t1 - t0);
+            tickNanos += t1 - t0;
+        }
+
+        private World world(String name) {
+            return worlds.computeIfAbsent(name, server::addSimpleWorld);
+        }
+    }
+
+    private static int intOption(Map<String, String> options, String key, int def) {
+        String value = options.get(key);
+        return value != null ? Integer.parseInt(value) : def;
+    }
+
+    private static double doubleOption(Map<String, String> options, String key, double def) {
+        String value = options.get(key);
+        return value != null ? Double.parseDouble(value) : def;
+    }
+}
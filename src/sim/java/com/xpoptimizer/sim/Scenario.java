@@ -0,0 +1,25 @@
+package com.xpoptimizer.sim;
+
+import java.io.IOException;
+
+/** A source of player positions and orb spawns, played one tick at a time. */
+interface Scenario extends AutoCloseable {
+
+    /** Receives what happens in a tick; the simulator turns it into server state and events. */
+    interface Driver {
+        /** Places player {@code id} (created on first use) at the given point. */
+        void player(int id, String world, double x, double y, double z, boolean spectator);
+
+        /** Spawns an orb and dispatches its spawn event, timed. */
+        void orb(String world, double x, double y, double z, int xp);
+    }
+
+    /** One line describing the scenario for the report. */
+    String describe();
+
+    /** Plays {@code tick}. Returns false once the scenario has nothing left, before touching the driver. */
+    boolean tick(long tick, Driver driver) throws IOException;
+
+    @Override
+    default void close() throws IOException {}
+}
@@ -0,0 +1,109 @@
+package com.xpoptimizer.sim;
+
+import java.util.SplittableRandom;
+
+/**
+ * Generated load: players split between AFK spots at a few farms and wanderers spread over the
+ * map, with orbs dropping around the farms in steady ticks or periodic bursts (a grinder's kill
+ * wave). A share of the orbs lands away from every farm, where usually nobody is in range.
+ */
+final class SyntheticScenario implements Scenario {
+
+    private static final String WORLD = "world";
+    private static final double FARM_Y = 64;
+    /** Standard deviation of an orb's offset from its farm, in blocks. */
+    private static final double ORB_SPREAD = 3.0;
+    /** Wanderers take a step every this many ticks. */
+    private static final int WANDER_TICKS = 20;
+
+    private final int players;
+    private final int orbsPerTick;
+    private final int burstPeriod;
+    private final double farmShare;
+    private final double strayShare;
+    private final double spread;
+    private final long ticks;
+    private final SplittableRandom random;
+    private final double[] farmX;
+    private final double[] farmZ;
+    private final double[] playerX;
+    private final double[] playerZ;
+
+    SyntheticScenario(int players, int farms, double farmShare, double spread, int orbsPerTick,
+                      int burstPeriod, double strayShare, long ticks, long seed) {
+        this.players = players;
+        this.orbsPerTick = orbsPerTick;
+        this.burstPeriod = Math.max(1, burstPeriod);
+        this.farmShare = farmShare;
+        this.strayShare = strayShare;
+        this.spread = spread;
+        this.ticks = ticks;
+        this.random = new SplittableRandom(seed);
+        this.farmX = new double[Math.max(1, farms)];
+        this.farmZ = new double[farmX.length];
+        for (int i = 0; i < farmX.length; i++) {
+            farmX[i] = random.nextDouble(-spread / 2, spread / 2);
+            farmZ[i] = random.nextDouble(-spread / 2, spread / 2);
+        }
+        this.playerX = new double[players];
+        this.playerZ = new double[players];
+    }
+
+    @Override
+    public String describe() {
+        return "synthetic: %d players, %d farms (%.0f%% of players at them), %d orbs/tick%s, %.0f%% stray"
+                .formatted(players, farmX.length, farmShare * 100, orbsPerTick,
+                        burstPeriod > 1 ? " in bursts every " + burstPeriod + " ticks" : "", strayShare * 100);
+    }
+
+    @Override
+    public boolean tick(long tick, Driver driver) {
+        if (tick >= ticks) return false;
+        if (tick == 0) placePlayers(driver);
+        else if (tick % WANDER_TICKS == 0) wander(driver);
+
+        if (tick % burstPeriod == 0) {
+            int orbs = orbsPerTick * burstPeriod;
+            for (int i = 0; i < orbs; i++) spawnOrb(driver);
+        }
+        return true;
+    }
+
+    private void placePlayers(Driver driver) {
+        int atFarms = (int) Math.round(players * farmShare);
+        for (int i = 0; i < players; i++) {
+            if (i < atFarms) {
+                int farm = i % farmX.length;
+                playerX[i] = farmX[farm] + random.nextDouble(-6, 6);
+                playerZ[i] = farmZ[farm] + random.nextDouble(-6, 6);
+            } else {
+                playerX[i] = random.nextDouble(-spread / 2, spread / 2);
+                playerZ[i] = random.nextDouble(-spread / 2, spread / 2);
+            }
+            // One in twenty watches in spectator mode, which collection must skip
+            driver.player(i, WORLD, playerX[i], FARM_Y, playerZ[i], i % 20 == 19);
+        }
+    }
+
+    private void wander(Driver driver) {
+        for (int i = (int) Math.round(players * farmShare); i < players; i++) {
+            playerX[i] += random.nextDouble(-8, 8);
+            playerZ[i] += random.nextDouble(-8, 8);
+            driver.player(i, WORLD, playerX[i], FARM_Y, playerZ[i], i % 20 == 19);
+        }
+    }
+
+    private void spawnOrb(Driver driver) {
+        double x, z;
+        if (random.nextDouble() < strayShare) {
+            x = random.nextDouble(-spread / 2, spread / 2);
+            z = random.nextDouble(-spread / 2, spread / 2);
+        } else {
+            int farm = random.nextInt(farmX.length);
+            x = farmX[farm] + random.nextGaussian() * ORB_SPREAD;
+            z = farmZ[farm] + random.nextGaussian() * ORB_SPREAD;
+        }
+        // Mob kills drop 1 to 7 XP
+        driver.orb(WORLD, x, FARM_Y + random.nextDouble(2), z, 1 + random.nextInt(7));
+    }
+}
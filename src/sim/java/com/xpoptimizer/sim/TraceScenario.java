@@ -0,0 +1,104 @@
+package com.xpoptimizer.sim;
+
+import com.xpoptimizer.trace.TraceRecorder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Replays a trace written by {@link TraceRecorder} ({@code /xpstats trace}), tick by tick. Every
+ * recorded drop is replayed as an orb spawn, including drops captured in {@code capture-mode:
+ * SOURCE} before they became orbs.
+ */
+final class TraceScenario implements Scenario {
+
+    private final File file;
+    private final BufferedReader reader;
+    private final Map<Integer, String> worlds = new HashMap<>();
+    /** The next record, read ahead to see its tick; null at the end of the trace. */
+    private String[] pending;
+    private int lineNumber;
+
+    TraceScenario(File file) throws IOException {
+        this.file = file;
+        InputStream in = Files.newInputStream(file.toPath());
+        if (file.getName().endsWith(".gz")) in = new GZIPInputStream(in);
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+
+        String header = reader.readLine();
+        lineNumber = 1;
+        if (!TraceRecorder.HEADER.equals(header)) {
+            reader.close();
+            throw new IOException(file + " is not an XPOptimizer trace (expected '" + TraceRecorder.HEADER + "')");
+        }
+        pending = next();
+    }
+
+    @Override
+    public String describe() {
+        return "trace: " + file.getName();
+    }
+
+    @Override
+    public boolean tick(long tick, Driver driver) throws IOException {
+        if (pending == null) return false;
+        while (pending != null && Long.parseLong(pending[1]) <= tick) {
+            String[] r = pending;
+            if (r[0].equals("P")) {
+                driver.player(Integer.parseInt(r[2]), world(r[3]), Double.parseDouble(r[4]),
+                        Double.parseDouble(r[5]), Double.parseDouble(r[6]), r[7].equals("1"));
+            } else {
+                driver.orb(world(r[2]), Double.parseDouble(r[3]), Double.parseDouble(r[4]),
+                        Double.parseDouble(r[5]), Integer.parseInt(r[6]));
+            }
+            pending = next();
+        }
+        return true;
+    }
+
+    /** Reads up to the next P or O record, taking W records on the way. */
+    private String[] next() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] r = line.split(" ");
+            switch (r[0]) {
+                case "W" -> worlds.put(Integer.parseInt(r[1]), r[2]);
+                case "P" -> {
+                    if (r.length == 8) return r;
+                    throw malformed(line);
+                }
+                case "O" -> {
+                    if (r.length == 7) return r;
+                    throw malformed(line);
+                }
+                default -> throw malformed(line);
+            }
+        }
+        return null;
+    }
+
+    private String world(String id) throws IOException {
+        String name = worlds.get(Integer.parseInt(id));
+        if (name == null) throw new IOException(file.getName() + ":" + lineNumber + ": undeclared world " + id);
+        return name;
+    }
+
+    private IOException malformed(String line) {
+        return new IOException(file.getName() + ":" + lineNumber + ": malformed record '" + line + "'");
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
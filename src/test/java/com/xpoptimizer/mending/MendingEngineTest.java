@@ -0,0 +1,175 @@
+package com.xpoptimizer.mending;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Parity of {@link MendingEngine#repair(MendingEngine.Mendables, int, RandomGenerator)} with a
+ * direct port of vanilla's {@code ExperienceOrb.repairPlayerItems}.
+ */
+class MendingEngineTest {
+
+    /** Damage per equipment slot, exposed the way the engine's cached candidates are. */
+    private static final class Gear implements MendingEngine.Mendables {
+        final int[] damage;
+        final int[] slots;
+        int count;
+
+        Gear(int... damage) {
+            this.damage = damage.clone();
+            this.slots = new int[damage.length];
+            for (int slot = 0; slot < damage.length; slot++) {
+                if (damage[slot] > 0) slots[count++] = slot;
+            }
+        }
+
+        @Override
+        public int count() {
+            return count;
+        }
+
+        @Override
+        public int damage(int i) {
+            return damage[slots[i]];
+        }
+
+        @Override
+        public void setDamage(int i, int damage) {
+            this.damage[slots[i]] = damage;
+        }
+
+        @Override
+        public void remove(int i) {
+            slots[i] = slots[--count];
+        }
+    }
+
+    /**
+     * {@code ExperienceOrb.repairPlayerItems}: a uniformly random damaged item from the equipment
+     * walk, {@code modifyDurabilityToRepairFromXp} with Mending's factor of 2, then recursion on
+     * the rest.
+     */
+    private static int vanillaRepair(int[] damage, int value, RandomGenerator random) {
+        List<Integer> damaged = new ArrayList<>();
+        for (int slot = 0; slot < damage.length; slot++) {
+            if (damage[slot] > 0) damaged.add(slot);
+        }
+        if (damaged.isEmpty()) return value;
+
+        int slot = damaged.get(random.nextInt(damaged.size()));
+        int durability = Math.max(0, (int) (value * 2.0f));
+        int repaired = Math.min(durability, damage[slot]);
+        damage[slot] -= repaired;
+        if (repaired > 0) {
+            int left = value - repaired * value / durability;
+            if (left > 0) return vanillaRepair(damage, left, random);
+        }
+        return 0;
+    }
+
+    @Test
+    void durabilityFromXpDoublesInFloat() {
+        assertEquals(0, MendingEngine.durabilityFromXp(0));
+        assertEquals(2, MendingEngine.durabilityFromXp(1));
+        assertEquals(14, MendingEngine.durabilityFromXp(7));
+        assertEquals(4_000, MendingEngine.durabilityFromXp(2_000));
+        // 2^24 + 1 is not a float; vanilla rounds it before doubling
+        assertEquals(33_554_432, MendingEngine.durabilityFromXp(16_777_217));
+    }
+
+    @Test
+    void leftoverXpRoundsLikeVanilla() {
+        assertEquals(0, MendingEngine.leftoverXp(10, 20, 20));
+        assertEquals(8, MendingEngine.leftoverXp(10, 5, 20));
+        assertEquals(3, MendingEngine.leftoverXp(3, 1, 6));
+        assertEquals(2, MendingEngine.leftoverXp(3, 3, 6));
+        assertEquals(1, MendingEngine.leftoverXp(1, 1, 2));
+    }
+
+    @Test
+    void noDamagedItemsKeepsAllXp() {
+        Gear gear = new Gear(0, 0, 0);
+        assertEquals(25, MendingEngine.repair(gear, 25, new SplittableRandom(1)));
+        assertEquals(25, vanillaRepair(new int[3], 25, new SplittableRandom(1)));
+    }
+
+    @Test
+    void singleItemMatchesVanillaExactly() {
+        SplittableRandom cases = new SplittableRandom(42);
+        for (int n = 0; n < 100_000; n++) {
+            int xp = 1 + cases.nextInt(2_000);
+            int damage = 1 + cases.nextInt(3_000);
+
+            Gear gear = new Gear(0, damage, 0);
+            int[] vanilla = {0, damage, 0};
+            int left = MendingEngine.repair(gear, xp, new SplittableRandom(n));
+            int vanillaLeft = vanillaRepair(vanilla, xp, new SplittableRandom(n));
+
+            String at = "xp=" + xp + " damage=" + damage;
+            assertEquals(vanillaLeft, left, at);
+            assertEquals(vanilla[1], gear.damage[1], at);
+        }
+    }
+
+    @Test
+    void itemChangedSinceScanIsSkipped() {
+        Gear gear = new Gear(50, 50);
+        gear.damage[0] = 0; // repaired or swapped out without an event
+        assertEquals(0, MendingEngine.repair(gear, 10, new SplittableRandom(3)));
+        assertEquals(30, gear.damage[1]);
+        assertEquals(1, gear.count);
+    }
+
+    /**
+     * With several items the random picks differ draw by draw, so compare the distribution: mean
+     * damage left per slot and mean XP left must agree within sampling noise.
+     */
+    @Test
+    void multipleItemsMatchVanillaDistribution() {
+        int[] start = {120, 45, 9, 0, 300, 1};
+        int xp = 40;
+        int trials = 200_000;
+        int outputs = start.length + 1;
+
+        double[] sum = new double[outputs], sumSq = new double[outputs];
+        double[] vanillaSum = new double[outputs], vanillaSumSq = new double[outputs];
+        SplittableRandom random = new SplittableRandom(7);
+        SplittableRandom vanillaRandom = new SplittableRandom(8);
+        for (int t = 0; t < trials; t++) {
+            Gear gear = new Gear(start);
+            int left = MendingEngine.repair(gear, xp, random);
+            int[] vanilla = start.clone();
+            int vanillaLeft = vanillaRepair(vanilla, xp, vanillaRandom);
+
+            for (int slot = 0; slot < start.length; slot++) {
+                accumulate(sum, sumSq, slot, gear.damage[slot]);
+                accumulate(vanillaSum, vanillaSumSq, slot, vanilla[slot]);
+            }
+            accumulate(sum, sumSq, start.length, left);
+            accumulate(vanillaSum, vanillaSumSq, start.length, vanillaLeft);
+        }
+
+        for (int i = 0; i < outputs; i++) {
+            double mean = sum[i] / trials, vanillaMean = vanillaSum[i] / trials;
+            double variance = sumSq[i] / trials - mean * mean;
+            double vanillaVariance = vanillaSumSq[i] / trials - vanillaMean * vanillaMean;
+            // Five standard errors of the difference, plus a little for slots that never vary
+            double tolerance = 5 * Math.sqrt((variance + vanillaVariance) / trials) + 1e-9;
+            String what = i < start.length ? "damage of slot " + i : "xp left";
+            assertTrue(Math.abs(mean - vanillaMean) <= tolerance,
+                    what + ": engine " + mean + ", vanilla " + vanillaMean + ", tolerance " + tolerance);
+        }
+    }
+
+    private static void accumulate(double[] sum, double[] sumSq, int i, double value) {
+        sum[i] += value;
+        sumSq[i] += value * value;
+    }
+}